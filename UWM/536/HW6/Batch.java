@@ -0,0 +1,348 @@
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// **********************************************************************
+// The Batch class compiles many files in one JVM, several at a time.  It
+// is started by
+//
+//     java P6 -batch [-workers N] [-out DIR] [P6 options] INPUT...
+//
+// where each INPUT is a .cm file, a directory (every .cm file under it,
+// in name order) or @LIST (the files named in LIST, one per line).  The
+// P6 options (-O, -g LEVEL, -cache DIR, ...) apply to every file; -vm and
+// -jvmrun are refused.  foo.cm is compiled to foo.s (foo.class with
+// -jvm) next to it, or with -out, in DIR (files found in a directory keep
+// their path below it).
+//
+// The compiler keeps its state in static fields, so each of the N worker
+// threads (by default, one per processor) loads a copy of the compiler
+// of its own with a class loader of its own, and runs P6.compile on it.
+// What a compile prints goes to a buffer of the worker's, and is printed
+// once the file is done, in input order, so files never interleave.  A
+// file that fails, even with an exception, just fails: the rest are still
+// compiled.  At the end comes a table with each file's result and time,
+// and the exit status is 0 only if every file compiled.
+// **********************************************************************
+
+public class Batch {
+    // P6 options that take a value
+    private static final List<String> VALUE_OPTIONS =
+        Arrays.asList("-g", "-j", "-cache");
+
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private Path outDir = null;
+    private List<String> options = new ArrayList<String>();
+    private List<Job> jobs = new ArrayList<Job>();
+
+    // where System.err and System.out go on each worker thread, and on
+    // the threads that a compile starts (for P6 -pipe)
+    private static final ThreadLocal<OutputStream> capture =
+        new InheritableThreadLocal<OutputStream>();
+
+    // P6.compile of each worker's copy of the compiler
+    private static final ThreadLocal<Method> compiler =
+        new ThreadLocal<Method>() {
+            protected Method initialValue() {
+                try {
+                    return loadCompiler();
+                } catch (ReflectiveOperationException | IOException ex) {
+                    throw new IllegalStateException(
+                        "cannot load the compiler: " + ex, ex);
+                }
+            }
+        };
+
+    public static void main(String[] args) {
+        Batch batch = new Batch();
+        try {
+            batch.parseArgs(args);
+        } catch (IllegalArgumentException | IOException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("usage: java P6 -batch [-workers N] "
+                               + "[-out DIR] [P6 options] INPUT...");
+            System.exit(-1);
+        }
+        System.exit(batch.run() ? 0 : 1);
+    }
+
+    private void parseArgs(String[] args) throws IOException {
+        int k = 0;
+        for (; k < args.length && args[k].startsWith("-"); k++) {
+            String arg = args[k];
+            if (arg.equals("-workers") && k + 1 < args.length) {
+                try {
+                    workers = Integer.parseInt(args[++k]);
+                } catch (NumberFormatException ex) {
+                    workers = 0;
+                }
+                if (workers < 1) {
+                    throw new IllegalArgumentException(
+                        "-workers needs a positive number");
+                }
+            } else if (arg.equals("-out") && k + 1 < args.length) {
+                outDir = Paths.get(args[++k]);
+            } else if (arg.equals("-vm") || arg.equals("-jvmrun")) {
+                throw new IllegalArgumentException(
+                    arg + " cannot be used in batch mode");
+            } else {
+                options.add(arg);
+                if (VALUE_OPTIONS.contains(arg) && k + 1 < args.length) {
+                    options.add(args[++k]);
+                }
+            }
+        }
+        if (k == args.length) {
+            throw new IllegalArgumentException("no input files");
+        }
+
+        String extension = options.contains("-jvm") ? ".class" : ".s";
+        for (; k < args.length; k++) {
+            if (args[k].startsWith("@")) {
+                Path list = Paths.get(args[k].substring(1));
+                for (String line : Files.readAllLines(list)) {
+                    if (!line.trim().isEmpty()) {
+                        addFile(Paths.get(line.trim()), null, extension);
+                    }
+                }
+            } else {
+                Path input = Paths.get(args[k]);
+                if (Files.isDirectory(input)) {
+                    addDirectory(input, extension);
+                } else {
+                    addFile(input, null, extension);
+                }
+            }
+        }
+    }
+
+    private void addDirectory(Path dir, String extension) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        addTree(dir, files, extension);
+    }
+
+    // add the .cm files in files, and under those that are directories,
+    // whose output paths are relative to root
+    private void addTree(Path root, List<Path> files, String extension)
+            throws IOException {
+        for (Path file : files) {
+            if (Files.isDirectory(file)) {
+                List<Path> children = new ArrayList<Path>();
+                try (DirectoryStream<Path> stream =
+                         Files.newDirectoryStream(file)) {
+                    for (Path child : stream) {
+                        children.add(child);
+                    }
+                }
+                Collections.sort(children);
+                addTree(root, children, extension);
+            } else if (file.getFileName().toString().endsWith(".cm")) {
+                addFile(file, root.relativize(file), extension);
+            }
+        }
+    }
+
+    // add a job for input; relative is its path below the directory it was
+    // found in, or null if it was named itself
+    private void addFile(Path input, Path relative, String extension)
+            throws IOException {
+        String name = input.getFileName().toString();
+        if (name.endsWith(".cm")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        name += extension;
+
+        Path output;
+        if (outDir == null) {
+            output = input.resolveSibling(name);
+        } else if (relative == null) {
+            output = outDir.resolve(name);
+        } else {
+            output = outDir.resolve(relative).resolveSibling(name);
+        }
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        jobs.add(new Job(input, output));
+    }
+
+    /**
+     * Compile every file, print the messages of each and then the table.
+     * Returns true if every file compiled.
+     */
+    public boolean run() {
+        PrintStream err = System.err;
+        PrintStream out = System.out;
+        System.setErr(new PrintStream(new Demux(err), true));
+        System.setOut(new PrintStream(new Demux(out), true));
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Job>> done = new ArrayList<Future<Job>>();
+        for (Job job : jobs) {
+            done.add(pool.submit(job));
+        }
+        int failed = 0;
+        try {
+            for (Future<Job> future : done) {
+                Job job = join(future);
+                if (job.messages.size() > 0) {
+                    err.println("== " + job.input);
+                    err.print(job.messages.toString(StandardCharsets.UTF_8));
+                }
+                if (job.result != P6.RESULT_CORRECT) {
+                    failed++;
+                }
+            }
+        } finally {
+            pool.shutdown();
+            System.setErr(err);
+            System.setOut(out);
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        int width = 4;
+        for (Job job : jobs) {
+            width = Math.max(width, job.input.toString().length());
+        }
+        String format = "%-" + width + "s  %-22s %8s%n";
+        out.printf(format, "file", "result", "ms");
+        for (Job job : jobs) {
+            out.printf(format, job.input, job.describe(), job.millis);
+        }
+        out.printf("%d files: %d compiled, %d failed, %d ms on %d workers%n",
+                   jobs.size(), jobs.size() - failed, failed, millis,
+                   workers);
+        return failed == 0;
+    }
+
+    private static Job join(Future<Job> future) {
+        while (true) {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                // keep waiting
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+    }
+
+    // a class loader over the class path whose parent is the platform
+    // loader, so the compiler's classes are loaded again, and P6.compile
+    // in it
+    private static Method loadCompiler()
+            throws ReflectiveOperationException, IOException {
+        String[] path = System.getProperty("java.class.path")
+            .split(File.pathSeparator);
+        URL[] urls = new URL[path.length];
+        for (int k = 0; k < path.length; k++) {
+            urls[k] = Paths.get(path[k]).toUri().toURL();
+        }
+        ClassLoader loader = new URLClassLoader(
+            urls, ClassLoader.getPlatformClassLoader());
+        return loader.loadClass("P6").getMethod("compile", String[].class);
+    }
+
+    // **********************************************************************
+    // One file to compile, and how that went.
+    // **********************************************************************
+
+    private class Job implements Callable<Job> {
+        private Path input;
+        private Path output;
+
+        private int result = P6.RESULT_OTHER_ERROR;
+        private String error = null;   // an exception, if one stopped it
+        private ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        private long millis;
+
+        Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public Job call() {
+            List<String> args = new ArrayList<String>(options);
+            args.add(input.toString());
+            args.add(output.toString());
+
+            long start = System.nanoTime();
+            capture.set(messages);
+            try {
+                Object code = compiler.get().invoke(
+                    null, (Object)args.toArray(new String[0]));
+                result = (Integer)code;
+            } catch (InvocationTargetException ex) {
+                error = ex.getCause().toString();
+            } catch (ReflectiveOperationException | RuntimeException
+                     | StackOverflowError ex) {
+                error = ex.toString();
+            } finally {
+                capture.remove();
+            }
+            millis = (System.nanoTime() - start) / 1000000;
+            if (error != null) {
+                PrintStream p = new PrintStream(messages, true,
+                                                StandardCharsets.UTF_8);
+                p.println("internal error: " + error);
+            }
+            return this;
+        }
+
+        String describe() {
+            if (error != null) {
+                return "internal error";
+            }
+            switch (result) {
+            case P6.RESULT_CORRECT:             return "ok";
+            case P6.RESULT_SYNTAX_ERROR:        return "syntax error";
+            case P6.RESULT_TYPE_ERROR:          return "type error";
+            case P6.RESULT_NAME_ANALYSIS_ERROR: return "name analysis error";
+            case P6.RESULT_CODEGEN_ERROR:       return "codegen error";
+            default:                            return "error";
+            }
+        }
+    }
+
+    // **********************************************************************
+    // An OutputStream that writes to the capture buffer of the current
+    // thread, or, on threads without one, to where System.err or
+    // System.out went before.
+    // **********************************************************************
+
+    private static class Demux extends OutputStream {
+        private OutputStream other;
+
+        Demux(OutputStream other) {
+            this.other = other;
+        }
+
+        private OutputStream target() {
+            OutputStream target = capture.get();
+            return target != null ? target : other;
+        }
+
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+}
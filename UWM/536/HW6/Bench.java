@@ -0,0 +1,290 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+import java_cup.runtime.*;
+
+/**
+ * Bench
+ *
+ * Times each phase of the compiler on generated C-- programs of several
+ * sizes and reports the average time and heap allocation per run.
+ *
+ * All arguments are optional:
+ *    -phase NAME   only run this phase (lex, parse, name, type, codegen,
+ *                  tac or all)
+ *    -size NAME    only use this input size (small, medium or large)
+ *    -warmup SECS  seconds of untimed runs before measuring (default 1)
+ *    -time SECS    seconds of measured runs (default 2)
+ *    -j N          scan on N threads in the lex phase (see ChunkedScan);
+ *                  the allocation of the other threads is not counted
+ *
+ * Every phase after lex needs the phases before it; those are run
+ * before each measured run but are not counted in its time or
+ * allocation.  "all" is the whole of P6.process (without the peephole
+ * pass), end to end.  Generated code is thrown away rather than written
+ * to a file.
+ *
+ * Allocation is measured with the per-thread allocation counter of the
+ * HotSpot ThreadMXBean; on JVMs without one it is reported as n/a.
+ */
+public class Bench {
+    private static final String[] PHASES = {
+        "lex", "parse", "name", "type", "codegen", "tac", "all"
+    };
+    private static final String[] SIZES = { "small", "medium", "large" };
+    private static final int[] FUNCTIONS = { 5, 200, 5000 };
+
+    // nesting depth of the parenthesized expression in each function
+    private static final int DEPTH = 32;
+
+    private static com.sun.management.ThreadMXBean threads = null;
+
+    // where generated code goes
+    private static final WritableByteChannel DISCARD =
+        Channels.newChannel(OutputStream.nullOutputStream());
+
+    private double warmupSecs = 1;
+    private double timeSecs = 2;
+    private int jobs = 1;
+    private ExecutorService pool = null;
+
+    // per measured run: time and bytes allocated in the phase itself
+    private long phaseNanos;
+    private long phaseBytes;
+    private long startNanos;
+    private long startBytes;
+
+    public static void main(String[] args) throws Exception {
+        Bench bench = new Bench();
+        List<String> phases = Arrays.asList(PHASES);
+        List<String> sizes = Arrays.asList(SIZES);
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-phase") && k + 1 < args.length) {
+                phases = Collections.singletonList(args[++k]);
+            } else if (args[k].equals("-size") && k + 1 < args.length) {
+                sizes = Collections.singletonList(args[++k]);
+            } else if (args[k].equals("-warmup") && k + 1 < args.length) {
+                bench.warmupSecs = Double.parseDouble(args[++k]);
+            } else if (args[k].equals("-time") && k + 1 < args.length) {
+                bench.timeSecs = Double.parseDouble(args[++k]);
+            } else if (args[k].equals("-j") && k + 1 < args.length) {
+                bench.jobs = Integer.parseInt(args[++k]);
+                bench.pool = Executors.newFixedThreadPool(bench.jobs);
+            } else {
+                System.err.println("unknown option " + args[k]);
+                System.exit(-1);
+            }
+        }
+        for (String phase : phases) {
+            if (!Arrays.asList(PHASES).contains(phase)) {
+                System.err.println("unknown phase " + phase);
+                System.exit(-1);
+            }
+        }
+
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean)bean;
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            } else {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+
+        System.out.printf("%-8s %-7s %8s %8s %12s %12s %12s%n", "phase",
+                          "size", "lines", "runs", "ms/run", "lines/s",
+                          "KB/run");
+        for (String size : sizes) {
+            int index = Arrays.asList(SIZES).indexOf(size);
+            if (index < 0) {
+                System.err.println("unknown size " + size);
+                System.exit(-1);
+            }
+            String source = generate(FUNCTIONS[index]);
+            int lines = countLines(source);
+            for (String phase : phases) {
+                bench.measure(phase, size, source, lines);
+            }
+        }
+        if (bench.pool != null) {
+            bench.pool.shutdown();
+        }
+    }
+
+    // **********************************************************************
+    // measurement
+    // **********************************************************************
+
+    private void measure(String phase, String size, String source,
+                         int lines) throws Exception {
+        long warmupEnd = System.nanoTime() + (long)(warmupSecs * 1e9);
+        do {
+            runOnce(phase, source);
+        } while (System.nanoTime() < warmupEnd);
+
+        long totalNanos = 0;
+        long totalBytes = 0;
+        int runs = 0;
+        long end = System.nanoTime() + (long)(timeSecs * 1e9);
+        do {
+            runOnce(phase, source);
+            totalNanos += phaseNanos;
+            totalBytes += phaseBytes;
+            runs++;
+        } while (runs < 3 || System.nanoTime() < end);
+
+        double msPerRun = totalNanos / 1e6 / runs;
+        String kb = threads == null ? "n/a"
+                    : String.format("%.1f", totalBytes / 1024.0 / runs);
+        System.out.printf("%-8s %-7s %8d %8d %12.3f %12.0f %12s%n", phase,
+                          size, lines, runs, msPerRun,
+                          lines / (msPerRun / 1000), kb);
+    }
+
+    /**
+     * Run the phases up to and including phase on source, setting
+     * phaseNanos and phaseBytes to what phase alone cost.
+     */
+    private void runOnce(String phase, String source) throws Exception {
+        if (ErrMsg.getErr()) {
+            throw new IllegalStateException("generated program has errors");
+        }
+        if (phase.equals("lex")) {
+            start();
+            new Yylex(source.toCharArray(), source.length())
+                .scanAll(pool, jobs);
+            stop();
+            return;
+        }
+        if (phase.equals("all")) {
+            start();
+            ProgramNode root = parse(source);
+            root.nameAnalysis();
+            root.typeCheck();
+            root.constantFold();
+            root.codeGen();
+            Codegen.flush();
+            stop();
+            return;
+        }
+
+        boolean timed = phase.equals("parse");
+        if (timed) start();
+        ProgramNode root = parse(source);
+        if (timed) { stop(); return; }
+
+        timed = phase.equals("name");
+        if (timed) start();
+        root.nameAnalysis();
+        if (timed) { stop(); return; }
+
+        timed = phase.equals("type");
+        if (timed) start();
+        root.typeCheck();
+        if (timed) { stop(); return; }
+
+        root.constantFold();
+        start();
+        if (phase.equals("tac")) {
+            new TacSelector().select(root.lower());
+        } else {
+            root.codeGen();
+        }
+        Codegen.flush();
+        stop();
+    }
+
+    private static ProgramNode parse(String source) throws Exception {
+        parser P = new parser(new Yylex(source.toCharArray(),
+                                        source.length()).scanAll());
+        Symbol cfgRoot = P.parse();
+        return (ProgramNode)cfgRoot.value;
+    }
+
+    private void start() {
+        Codegen.out = DISCARD;
+        startBytes = allocated();
+        startNanos = System.nanoTime();
+    }
+
+    private void stop() {
+        phaseNanos = System.nanoTime() - startNanos;
+        phaseBytes = allocated() - startBytes;
+    }
+
+    private static long allocated() {
+        if (threads == null) {
+            return 0;
+        }
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // **********************************************************************
+    // input generation
+    // **********************************************************************
+
+    /**
+     * A valid C-- program of n functions plus main.  Each function has a
+     * few locals, a loop, an if-else, string output, a call to the
+     * previous function and one deeply nested expression.
+     */
+    static String generate(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("int count;\n");
+        sb.append("bool flag;\n\n");
+        for (int k = 0; k < n; k++) {
+            sb.append("int f").append(k).append("(int a, int b) {\n");
+            sb.append("    int x;\n");
+            sb.append("    int y;\n");
+            sb.append("    bool c;\n");
+            sb.append("    x = a * 3 + b - ").append(k).append(";\n");
+            sb.append("    y = (x + 1) * (x - 2) / 3;\n");
+            sb.append("    c = x < y && !(a == b) || y >= 0;\n");
+            sb.append("    while (x > 0) {\n");
+            sb.append("        x = x - 1;\n");
+            sb.append("        y = y + x;\n");
+            sb.append("        if (c) {\n");
+            sb.append("            count++;\n");
+            sb.append("        } else {\n");
+            sb.append("            y--;\n");
+            sb.append("        }\n");
+            sb.append("    }\n");
+            sb.append("    x = ");
+            for (int d = 0; d < DEPTH; d++) {
+                sb.append("(");
+            }
+            sb.append("a");
+            for (int d = 0; d < DEPTH; d++) {
+                sb.append(d % 2 == 0 ? " + " : " * ").append(d + 1).append(")");
+            }
+            sb.append(";\n");
+            sb.append("    cout << \"f").append(k).append("\\n\";\n");
+            if (k > 0) {
+                sb.append("    return f").append(k - 1).append("(x, y) + y;\n");
+            } else {
+                sb.append("    return x + y;\n");
+            }
+            sb.append("}\n\n");
+        }
+        sb.append("void main() {\n");
+        sb.append("    cout << f").append(n - 1).append("(1, 2);\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static int countLines(String s) {
+        int lines = 0;
+        for (int k = 0; k < s.length(); k++) {
+            if (s.charAt(k) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
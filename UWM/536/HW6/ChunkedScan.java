@@ -0,0 +1,123 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// **********************************************************************
+// The ChunkedScan class scans a large file in pieces on several threads,
+// for Yylex.scanAll(pool, chunks), and stitches the pieces' tokens into
+// one TokenBuffer, which is the same as scanning the file in one go
+// would give.
+//
+// The file is cut just after newlines.  No token, comment or string
+// literal (even an unterminated one) can span a newline, and a newline
+// only resets the char number, so a scanner started just after one, with
+// yyline 0 and char number 1, finds the same tokens as one that scanned
+// everything before it.  Only their line numbers are off, by the number
+// of lines before the piece; append adds that back.  Lines are counted as
+// JLex counts them: a \r, or a \n that does not follow a \r, ends one.
+//
+// Each piece has a scanner, a TokenBuffer, a char number and a Names pool
+// of its own, so the threads share nothing while they scan.  append maps
+// each piece's ids to the program's pool, piece by piece and in order of
+// first use, so every name gets the id it would have had.  Messages from
+// the scanner are kept in each piece's TokenBuffer, so they are still
+// reported in order, as the parser gets to them.
+// **********************************************************************
+
+public class ChunkedScan {
+    // files smaller than two pieces of this many chars are not cut up
+    private static final int MIN_CHUNK = 1 << 16;
+
+    /**
+     * Scan text[0] through text[length - 1], in up to chunks pieces at
+     * once on pool (or in one piece, if pool is null).
+     */
+    public static TokenBuffer scan(char[] text, int length,
+                                   ExecutorService pool, int chunks)
+            throws IOException {
+        chunks = Math.min(chunks, length / MIN_CHUNK);
+        if (pool == null || chunks < 2) {
+            return Yylex.scanRange(text, 0, length, Names.program());
+        }
+
+        List<Future<Chunk>> done = new ArrayList<Future<Chunk>>();
+        int from = 0;
+        for (int k = 1; k <= chunks && from < length; k++) {
+            int to = (int)((long)length * k / chunks);
+            while (to < length && (to <= from || text[to - 1] != '\n')) {
+                to++;
+            }
+            done.add(pool.submit(new Chunk(text, from, to)));
+            from = to;
+        }
+
+        TokenBuffer tokens = new TokenBuffer(length / 4);
+        int lines = 0;
+        for (Future<Chunk> future : done) {
+            Chunk chunk = join(future);
+            int[] ids = new int[chunk.names.count()];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = Names.intern(chunk.names.get(id));
+            }
+            tokens.append(chunk.tokens, lines, ids);
+            lines += chunk.lines;
+        }
+        tokens.setText(text);
+        return tokens;
+    }
+
+    private static Chunk join(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // **********************************************************************
+    // One piece of the file, text[from] through text[to - 1], and its
+    // tokens, names and number of lines once it is scanned.
+    // **********************************************************************
+
+    private static class Chunk implements Callable<Chunk> {
+        private char[] text;
+        private int from;
+        private int to;
+
+        private TokenBuffer tokens;
+        private Names names = new Names();
+        private int lines;
+
+        Chunk(char[] text, int from, int to) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Chunk call() throws IOException {
+            tokens = Yylex.scanRange(text, from, to, names);
+            boolean lastWasCr = false;
+            for (int k = from; k < to; k++) {
+                char c = text[k];
+                if (c == '\r' || (c == '\n' && !lastWasCr)) {
+                    lines++;
+                }
+                lastWasCr = c == '\r';
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+import java.io.*;
+import java.util.*;
+
+// **********************************************************************
+// The ClassFile class builds a JVM class file: a constant pool, static
+// fields and methods, written out by toBytes.
+//
+// Class files are version 49 (Java 5), the last version that does not
+// need StackMapTable attributes, so method code can branch freely
+// without the writer having to compute stack maps.  Constant pool
+// entries are shared: asking for the same constant twice gives the same
+// index.
+//
+// The code of a method is assembled with a ClassFile.Code, which
+// resolves branches to labels once the method is finished.
+// **********************************************************************
+
+public class ClassFile {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int MAJOR_VERSION = 49;
+
+    // constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private String name;
+
+    // the constant pool, as bytes, and the index of each constant in it
+    private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private DataOutputStream pool = new DataOutputStream(poolBytes);
+    private Map<String, Integer> constants = new HashMap<String, Integer>();
+    private int poolSize = 1;
+
+    private ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int numFields = 0;
+
+    private ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int numMethods = 0;
+
+    /**
+     * A public class called name (in internal form, with slashes) that
+     * extends Object.
+     */
+    public ClassFile(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // **********************************************************************
+    // the constant pool
+    // **********************************************************************
+
+    public int utf8(String s) {
+        Integer index = constants.get("U" + s);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(s);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);   // cannot happen
+        }
+        return add("U" + s);
+    }
+
+    public int integer(int value) {
+        Integer index = constants.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+        write(CONSTANT_INTEGER);
+        write4(value);
+        return add("I" + value);
+    }
+
+    public int classRef(String className) {
+        Integer index = constants.get("C" + className);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(className);
+        write(CONSTANT_CLASS);
+        write2(nameIndex);
+        return add("C" + className);
+    }
+
+    public int string(String s) {
+        Integer index = constants.get("S" + s);
+        if (index != null) {
+            return index;
+        }
+        int utf8Index = utf8(s);
+        write(CONSTANT_STRING);
+        write2(utf8Index);
+        return add("S" + s);
+    }
+
+    public int fieldRef(String owner, String field, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, field, descriptor);
+    }
+
+    public int methodRef(String owner, String method, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, method, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String member,
+                          String descriptor) {
+        String key = tag + owner + "." + member + ":" + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        int classIndex = classRef(owner);
+        int natIndex = nameAndType(member, descriptor);
+        write(tag);
+        write2(classIndex);
+        write2(natIndex);
+        return add(key);
+    }
+
+    private int nameAndType(String member, String descriptor) {
+        String key = "N" + member + ":" + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(member);
+        int descIndex = utf8(descriptor);
+        write(CONSTANT_NAME_AND_TYPE);
+        write2(nameIndex);
+        write2(descIndex);
+        return add(key);
+    }
+
+    private int add(String key) {
+        constants.put(key, poolSize);
+        return poolSize++;
+    }
+
+    private void write(int b) {
+        poolBytes.write(b);
+    }
+
+    private void write2(int v) {
+        poolBytes.write(v >> 8);
+        poolBytes.write(v);
+    }
+
+    private void write4(int v) {
+        write2(v >>> 16);
+        write2(v & 0xffff);
+    }
+
+    // **********************************************************************
+    // members
+    // **********************************************************************
+
+    public void addField(int access, String field, String descriptor)
+            throws IOException {
+        fields.writeShort(access);
+        fields.writeShort(utf8(field));
+        fields.writeShort(utf8(descriptor));
+        fields.writeShort(0);   // no attributes
+        numFields++;
+    }
+
+    /**
+     * Add a method whose body is code, which must be finished.
+     */
+    public void addMethod(int access, String method, String descriptor,
+                          Code code) throws IOException {
+        int codeName = utf8("Code");
+        methods.writeShort(access);
+        methods.writeShort(utf8(method));
+        methods.writeShort(utf8(descriptor));
+        methods.writeShort(1);  // one attribute: Code
+        methods.writeShort(codeName);
+        methods.writeInt(12 + code.length());
+        methods.writeShort(code.getMaxStack());
+        methods.writeShort(code.getMaxLocals());
+        methods.writeInt(code.length());
+        methods.write(code.getBytes(), 0, code.length());
+        methods.writeShort(0);  // no exception table
+        methods.writeShort(0);  // no attributes
+        numMethods++;
+    }
+
+    /**
+     * The class file, ready to write out or load.
+     */
+    public byte[] toBytes() throws IOException {
+        int thisIndex = classRef(name);
+        int superIndex = classRef("java/lang/Object");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(MAJOR_VERSION);
+        out.writeShort(poolSize);
+        poolBytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_SUPER);
+        out.writeShort(thisIndex);
+        out.writeShort(superIndex);
+        out.writeShort(0);  // no interfaces
+        out.writeShort(numFields);
+        fieldBytes.writeTo(out);
+        out.writeShort(numMethods);
+        methodBytes.writeTo(out);
+        out.writeShort(0);  // no attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // **********************************************************************
+    // The Code class assembles the bytecode of one method.  Labels are
+    // small ints from newLabel; a branch to a label that is not placed
+    // yet is patched when the label is placed.
+    // **********************************************************************
+
+    public static class Code {
+        // opcodes used by JvmGenerator
+        public static final int ICONST_0 = 0x03;
+        public static final int ICONST_1 = 0x04;
+        public static final int BIPUSH = 0x10;
+        public static final int SIPUSH = 0x11;
+        public static final int LDC_W = 0x13;
+        public static final int ILOAD = 0x15;
+        public static final int AALOAD = 0x32;
+        public static final int ISTORE = 0x36;
+        public static final int AASTORE = 0x53;
+        public static final int POP = 0x57;
+        public static final int DUP = 0x59;
+        public static final int IADD = 0x60;
+        public static final int ISUB = 0x64;
+        public static final int IMUL = 0x68;
+        public static final int IDIV = 0x6c;
+        public static final int INEG = 0x74;
+        public static final int IXOR = 0x82;
+        public static final int IFEQ = 0x99;
+        public static final int IFNE = 0x9a;
+        public static final int IF_ICMPEQ = 0x9f;
+        public static final int IF_ICMPNE = 0xa0;
+        public static final int IF_ICMPLT = 0xa1;
+        public static final int IF_ICMPGE = 0xa2;
+        public static final int IF_ICMPGT = 0xa3;
+        public static final int IF_ICMPLE = 0xa4;
+        public static final int GOTO = 0xa7;
+        public static final int IRETURN = 0xac;
+        public static final int RETURN = 0xb1;
+        public static final int GETSTATIC = 0xb2;
+        public static final int PUTSTATIC = 0xb3;
+        public static final int INVOKEVIRTUAL = 0xb6;
+        public static final int INVOKESTATIC = 0xb8;
+        public static final int ANEWARRAY = 0xbd;
+        public static final int WIDE = 0xc4;
+
+        private byte[] bytes = new byte[256];
+        private int len = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+
+        // label -> its offset, or -1 if not placed yet
+        private int[] labels = new int[16];
+        private int numLabels = 0;
+
+        // branches waiting for their label: offset of the branch opcode,
+        // offset of its operand, and the label
+        private List<int[]> fixups = new ArrayList<int[]>();
+
+        public int length() { return len; }
+        public byte[] getBytes() { return bytes; }
+        public int getMaxStack() { return maxStack; }
+        public int getMaxLocals() { return maxLocals; }
+
+        /**
+         * Note that the method needs at least n stack slots.
+         */
+        public void stack(int n) {
+            maxStack = Math.max(maxStack, n);
+        }
+
+        /**
+         * Note that the method uses local slots 0 through n - 1.
+         */
+        public void locals(int n) {
+            maxLocals = Math.max(maxLocals, n);
+        }
+
+        public void op(int opcode) {
+            put(opcode);
+        }
+
+        /**
+         * An opcode with a two-byte operand, such as a constant pool
+         * index.
+         */
+        public void op2(int opcode, int operand) {
+            put(opcode);
+            put(operand >> 8);
+            put(operand);
+        }
+
+        /**
+         * Push the int constant value; pool supplies large ones.
+         */
+        public void pushInt(int value, ClassFile pool) {
+            if (value >= -1 && value <= 5) {
+                put(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                put(BIPUSH);
+                put(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op2(SIPUSH, value);
+            } else {
+                op2(LDC_W, pool.integer(value));
+            }
+        }
+
+        /**
+         * ILOAD or ISTORE of a local slot.
+         */
+        public void local(int opcode, int slot) {
+            locals(slot + 1);
+            if (slot < 256) {
+                put(opcode);
+                put(slot);
+            } else {
+                put(WIDE);
+                op2(opcode, slot);
+            }
+        }
+
+        public int newLabel() {
+            if (numLabels == labels.length) {
+                labels = Arrays.copyOf(labels, numLabels * 2);
+            }
+            labels[numLabels] = -1;
+            return numLabels++;
+        }
+
+        public void placeLabel(int label) {
+            labels[label] = len;
+        }
+
+        /**
+         * A branch instruction (IFEQ through GOTO) to label.
+         */
+        public void branch(int opcode, int label) {
+            fixups.add(new int[] { len, len + 1, label });
+            op2(opcode, 0);
+        }
+
+        /**
+         * Patch every branch now that all labels are placed.  Returns
+         * false if a branch is too long for a 16-bit offset.
+         */
+        public boolean finish() {
+            for (int[] fixup : fixups) {
+                int offset = labels[fixup[2]] - fixup[0];
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    return false;
+                }
+                bytes[fixup[1]] = (byte)(offset >> 8);
+                bytes[fixup[1] + 1] = (byte)offset;
+            }
+            fixups.clear();
+            return true;
+        }
+
+        private void put(int b) {
+            if (len == bytes.length) {
+                bytes = Arrays.copyOf(bytes, len * 2);
+            }
+            bytes[len++] = (byte)b;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.*;
+
+// **********************************************************************
+// The CmmRuntime class is the input and output library for C-- programs
+// compiled to JVM classes by JvmGenerator.  Output is buffered, and is
+// flushed when the program reads input or finishes.  Input is one
+// integer per line, as for syscall 5 under SPIM.
+// **********************************************************************
+
+public class CmmRuntime {
+    private static BufferedReader in =
+        new BufferedReader(new InputStreamReader(System.in));
+    private static PrintStream out = new PrintStream(
+        new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)),
+        false);
+
+    /**
+     * Use these streams for the input and output of programs run from
+     * now on.
+     */
+    public static void setStreams(InputStream input, PrintStream output) {
+        in = new BufferedReader(new InputStreamReader(input));
+        out = output;
+    }
+
+    public static void writeInt(int value) {
+        out.print(value);
+    }
+
+    public static void writeString(String s) {
+        out.print(s);
+    }
+
+    public static int readInt() {
+        out.flush();
+        return readInt(in);
+    }
+
+    /**
+     * The integer at the start of the next line of in, or 0 at end of
+     * input or if the line does not start with one (Vm reads with this
+     * too).
+     */
+    public static int readInt(BufferedReader in) {
+        try {
+            String line = in.readLine();
+            if (line == null) {
+                return 0;
+            }
+            line = line.trim();
+            int end = 0;
+            while (end < line.length() && (Character.isDigit(line.charAt(end))
+                   || (end == 0 && (line.charAt(0) == '-'
+                                    || line.charAt(0) == '+')))) {
+                end++;
+            }
+            return (int)Long.parseLong(line.substring(0, end));
+        } catch (IOException | NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    public static void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// **********************************************************************
+// The CodeCache class keeps the code generated for each function in a
+// directory, so that compiling the program again only has to generate
+// the functions that changed.
+//
+// An entry is a file named by a SHA-256 hash of everything that the
+// function's code depends on:
+//     the cache VERSION and the options that change the code (folding
+//     and the debug level)
+//     the source text from the function's name up to the name of the
+//     next declaration
+//     FnDeclNode.dependencies: the function's name and type, and the
+//     types of the globals and functions it refers to
+// The entry holds the function's Codegen.Context, whose labels are
+// placeholders, so it can be merged anywhere in the program, and its
+// warnings.  Each distinct string is stored once, and instructions refer
+// to strings by index.  If those mention line numbers (any debug level but
+// DEBUG_NONE, or any warning), the entry is only used for a function
+// that starts on the same line.  Functions with errors are not cached.
+//
+// An entry is written to a temporary file and then renamed, so a reader
+// never sees part of one.  An entry that cannot be read is a miss.  To
+// clear the cache, delete the directory.
+// **********************************************************************
+
+public class CodeCache {
+    // change whenever the generated code or the entry format changes
+    private static final int VERSION = 2;
+
+    private Path dir;
+    private String source;
+    private String options;
+
+    // where each line of source starts
+    private int[] lineStarts;
+
+    private AtomicInteger hits = new AtomicInteger();
+    private AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * A cache in dir (created if need be) for compiling the program whose
+     * text is source, as the scanner read it, with the given options.
+     */
+    public CodeCache(Path dir, String source, String options)
+            throws IOException {
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.source = source;
+        this.options = options;
+
+        // only \n starts a new line for the scanner's char numbers
+        int lines = 1;
+        for (int k = 0; k < source.length(); k++) {
+            if (source.charAt(k) == '\n') {
+                lines++;
+            }
+        }
+        lineStarts = new int[lines];
+        for (int k = 0, line = 1; k < source.length(); k++) {
+            if (source.charAt(k) == '\n') {
+                lineStarts[line++] = k + 1;
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The offset in source of the given line and char number (both
+     * numbered from 1, as the scanner numbers them).
+     */
+    public int offset(int line, int charNum) {
+        if (line > lineStarts.length) {
+            return source.length();
+        }
+        return Math.min(lineStarts[line - 1] + charNum - 1, source.length());
+    }
+
+    /**
+     * The key of fn, whose source is from offset from up to (but not
+     * including) offset to.
+     */
+    public String key(FnDeclNode fn, int from, int to) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);   // every JVM has it
+        }
+        update(md, VERSION + " " + options + "\n");
+        update(md, source.substring(from, Math.min(to, source.length())));
+        update(md, "\0");
+        update(md, fn.dependencies());
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+              .append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The code cached under key for a function that starts on line
+     * first, or null if there is none; the warnings cached with it are
+     * added to messages.
+     */
+    public Codegen.Context load(String key, int first, ErrMsg.Sink messages) {
+        Path file = dir.resolve(key);
+        if (!Files.exists(file)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != VERSION) {
+                misses.incrementAndGet();
+                return null;
+            }
+            boolean positional = in.get() != 0;
+            if (positional && in.getInt() != first) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            String[] strings = new String[in.getInt()];
+            for (int k = 0; k < strings.length; k++) {
+                int length = in.getInt();
+                strings[k] = new String(in.array(), in.position(), length,
+                                        StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+            List<String> labels = new ArrayList<String>();
+            for (int n = in.getInt(); n > 0; n--) {
+                int index = in.getInt();
+                labels.add(index < 0 ? null : strings[index]);
+            }
+            List<String> warnings = new ArrayList<String>();
+            for (int n = in.getInt(); n > 0; n--) {
+                warnings.add(strings[in.getInt()]);
+            }
+            List<Instr> code = new ArrayList<Instr>();
+            for (int n = in.getInt(); n > 0; n--) {
+                int kind = in.get();
+                String label = strings[in.getInt()];
+                String opcode = strings[in.getInt()];
+                String arg1 = strings[in.getInt()];
+                String arg2 = strings[in.getInt()];
+                String arg3 = strings[in.getInt()];
+                String comment = strings[in.getInt()];
+                int offset = in.getInt();
+                if (kind == Instr.INDEXED) {
+                    code.add(Instr.indexed(opcode, arg1, arg2, offset, comment));
+                } else {
+                    code.add(new Instr(kind, label, opcode, arg1, arg2, arg3,
+                                       comment));
+                }
+            }
+
+            for (String warning : warnings) {
+                messages.addWarning(warning);
+            }
+            hits.incrementAndGet();
+            return new Codegen.Context(code, labels);
+        } catch (IOException | RuntimeException ex) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Cache code, and the messages reported while generating it, under
+     * key, unless one of the messages is an error.  A function that
+     * cannot be cached is just generated again next time.
+     */
+    public void store(String key, int first, Codegen.Context code,
+                      ErrMsg.Sink messages) {
+        if (messages.hasErrors()) {
+            return;
+        }
+        boolean positional = Codegen.debugLevel != Codegen.DEBUG_NONE
+            || !messages.getMessages().isEmpty();
+
+        // the body of the entry, with strings as indexes into table
+        Map<String, Integer> table = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        Path temp = null;
+        try {
+            body.writeInt(code.getLabels().size());
+            for (String literal : code.getLabels()) {
+                body.writeInt(literal == null ? -1 : index(table, literal));
+            }
+            body.writeInt(messages.getMessages().size());
+            for (String message : messages.getMessages()) {
+                body.writeInt(index(table, message));
+            }
+            body.writeInt(code.getCode().size());
+            for (Instr instr : code.getCode()) {
+                body.writeByte(instr.kind());
+                body.writeInt(index(table, instr.label()));
+                body.writeInt(index(table, instr.opcode()));
+                body.writeInt(index(table, instr.arg1()));
+                body.writeInt(index(table, instr.arg2()));
+                body.writeInt(index(table, instr.arg3()));
+                body.writeInt(index(table, instr.comment()));
+                body.writeInt(instr.offset());
+            }
+
+            temp = Files.createTempFile(dir, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(VERSION);
+                out.writeBoolean(positional);
+                if (positional) {
+                    out.writeInt(first);
+                }
+                out.writeInt(table.size());
+                for (String string : table.keySet()) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                bodyBytes.writeTo(out);
+            }
+            Files.move(temp, dir.resolve(key),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException ex) {
+            // not cached
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    // nothing more we can do
+                }
+            }
+        }
+    }
+
+    private static int index(Map<String, Integer> table, String s) {
+        Integer index = table.get(s);
+        if (index == null) {
+            index = table.size();
+            table.put(s, index);
+        }
+        return index;
+    }
+
+    private static void update(MessageDigest md, String s) {
+        md.update(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
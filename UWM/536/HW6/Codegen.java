@@ -1,11 +1,14 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
 
 // **********************************************************************
 // The Codegen class provides constants and operations useful for code
 // generation.
 //
 // The constants are:
-//     Registers: FP, SP, RA, V0, V1, A0, T0, T1
+//     Registers: FP, SP, RA, V0, V1, A0, T0, T1, ZERO
 //     Values: TRUE, FALSE
 //
 // The operations include various "generate" methods to print nicely
@@ -19,11 +22,67 @@ import java.io.*;
 //     genLabel
 // and a method nextLabel to create and return a new label.
 //
+// Generated code is not written straight to out: each line is recorded
+// as an Instr in an in-memory buffer (one per function, see
+// beginFunction) so that later passes such as Peephole can rewrite it.
+// flush formats each buffer into a reusable byte buffer and writes it to
+// out in one go.
+//
+// How much of the source is echoed into the generated code as comments
+// is set by debugLevel:
+//     DEBUG_NONE   no comment lines at all (the default)
+//     DEBUG_LINE   structural comments and the source line of each
+//                  statement
+//     DEBUG_FULL   as DEBUG_LINE, plus the text of each statement
+// Statements emit their own echo with StmtNode.codeGenDebugInfo.
+//
+// String literals are pooled: stringLabel returns the same label for
+// every use of the same literal, and flush writes each literal once, in
+// a single data section after the code.
+//
+// Functions can be generated in parallel: a thread that calls begin
+// gets a Context of its own, which holds that function's code, its
+// temporary registers and its labels.  Since label numbers depend on
+// the order in which code is generated, a Context hands out placeholder
+// labels instead, and merge (called in source order, on the thread that
+// owns the buffers) gives them the numbers that a sequential run would
+// have, so the output does not depend on how the work was scheduled.
+//
+// Expression temporaries live in registers $t0-$t9, handed out by:
+//     getReg
+//     claimReg
+//     freeReg
+//     numFreeRegs
+//     saveRegs
+//     restoreRegs
+//
 // **********************************************************************
 
 public class Codegen {
     // file into which generated code is written
-    public static PrintWriter p = null;
+    public static WritableByteChannel out = null;
+
+    // generated code waiting to be flushed, one buffer per function
+    private static List<List<Instr>> buffers = new ArrayList<List<Instr>>();
+    private static List<Instr> current = null;
+
+    // emptied buffers, kept for reuse by beginFunction
+    private static List<List<Instr>> spare = new ArrayList<List<Instr>>();
+
+    // formatted bytes of one buffer on their way to out
+    private static AsmBuffer text = new AsmBuffer();
+
+    // string literal -> its label, in order of first use
+    private static Map<String, String> strings =
+        new LinkedHashMap<String, String>();
+
+    // debug information levels; see debugLevel
+    public static final int DEBUG_NONE = 0;
+    public static final int DEBUG_LINE = 1;
+    public static final int DEBUG_FULL = 2;
+
+    // how much source information to put in comments
+    public static int debugLevel = DEBUG_NONE;
 
     // values of true and false
     public static final String TRUE = "1";
@@ -38,15 +97,21 @@ public class Codegen {
     public static final String A0 = "$a0";
     public static final String T0 = "$t0";
     public static final String T1 = "$t1";
+    public static final String ZERO = "$zero";
 
-
-    // for pretty printing generated code
-    private static final int MAXLEN = 4;
+    // registers available to hold expression temporaries
+    private static final String[] TEMPS = {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9"
+    };
+    private static boolean[] tempInUse = new boolean[TEMPS.length];
 
 
     // for generating labels
     private static int currLabel = 0;
 
+    // the Context of a thread generating one function in parallel, if any
+    private static final ThreadLocal<Context> local = new ThreadLocal<Context>();
+
 
     // **********************************************************************
     // **********************************************************************
@@ -58,25 +123,15 @@ public class Codegen {
     // generateWithComment
     //    given:  op code, comment, and 0 to 3 string args
     //    do:     write nicely formatted code (ending with new line)
+    //    a line with no op code is a comment line, and is dropped when
+    //    debugLevel is DEBUG_NONE
     // **********************************************************************
     public static void generateWithComment(String opcode, String comment,
                                         String arg1, String arg2, String arg3) {
-        int space = MAXLEN - opcode.length() + 2;
-
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++)
-                p.print(" ");
-            p.print(arg1);
-            if (arg2 != "") {
-                p.print(", " + arg2);
-                if (arg3 != "")
-                    p.print(", " + arg3);
-            }
+        if (opcode.isEmpty() && debugLevel == DEBUG_NONE) {
+            return;
         }
-        if (comment != "")
-            p.print("\t\t#" + comment);
-        p.println();
+        emit(new Instr(Instr.OP, "", opcode, arg1, arg2, arg3, comment));
     }
 
     public static void generateWithComment(String opcode, String comment,
@@ -100,20 +155,7 @@ public class Codegen {
     // **********************************************************************
     public static void generate(String opcode, String arg1, String arg2,
                                 String arg3) {
-        int space = MAXLEN - opcode.length() + 2;
-
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++)
-                p.print(" ");
-            p.print(arg1);
-            if (arg2 != "") {
-                p.print(", " + arg2);
-                if (arg3 != "")
-                    p.print(", " + arg3);
-            }
-        }
-        p.println();
+        emit(new Instr(Instr.OP, "", opcode, arg1, arg2, arg3, ""));
     }
 
     public static void generate(String opcode, String arg1, String arg2) {
@@ -135,12 +177,7 @@ public class Codegen {
     // **********************************************************************
     public static void generate(String opcode, String arg1, String arg2,
                                 int arg3) {
-        int space = MAXLEN - opcode.length() + 2;
-
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++)
-            p.print(" ");
-        p.println(arg1 + ", " + arg2 + ", " + arg3);
+        generate(opcode, arg1, arg2, String.valueOf(arg3));
     }
 
     // **********************************************************************
@@ -149,12 +186,7 @@ public class Codegen {
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
     public static void generate(String opcode, String arg1, int arg2) {
-        int space = MAXLEN - opcode.length() + 2;
-
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++)
-            p.print(" ");
-        p.println(arg1 + ", " + arg2);
+        generate(opcode, arg1, String.valueOf(arg2), "");
     }
 
     // **********************************************************************
@@ -166,15 +198,7 @@ public class Codegen {
     // **********************************************************************
     public static void generateIndexed(String opcode, String arg1, String arg2,
                                        int arg3, String comment) {
-        int space = MAXLEN - opcode.length() + 2;
-
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++)
-            p.print(" ");
-        p.print(arg1 + ", " + arg3 + "(" + arg2 + ")");
-        if (comment != "")
-            p.print("\t#" + comment);
-        p.println();
+        emit(Instr.indexed(opcode, arg1, arg2, arg3, comment));
     }
 
     public static void generateIndexed(String opcode, String arg1, String arg2,
@@ -189,18 +213,7 @@ public class Codegen {
     // **********************************************************************
     public static void generateLabeled(String label, String opcode,
                                        String comment, String arg1) {
-        int space = MAXLEN - opcode.length() + 2;
-
-        p.print(label + ":");
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++)
-                p.print(" ");
-            p.print(arg1);
-        }
-        if (comment != "")
-            p.print("\t# " + comment);
-        p.println();
+        emit(new Instr(Instr.LABELED, label, opcode, arg1, "", "", comment));
     }
 
     public static void generateLabeled(String label, String opcode,
@@ -232,23 +245,588 @@ public class Codegen {
     //   generate: L:    # comment
     // **********************************************************************
     public static void genLabel(String label, String comment) {
-        p.print(label + ":");
-        if (comment != "")
-            p.print("\t\t" + "# " + comment);
-        p.println();
+        emit(new Instr(Instr.LABEL, label, "", "", "", "", comment));
     }
 
     public static void genLabel(String label) {
         genLabel(label, "");
     }
 
+    // **********************************************************************
+    // **********************************************************************
+    // INSTRUCTION BUFFERS
+    // **********************************************************************
+    // **********************************************************************
+
+    // **********************************************************************
+    // beginFunction
+    //    start a new buffer for the code of one function
+    // **********************************************************************
+    public static void beginFunction() {
+        if (local.get() != null) {
+            return;     // the Context is the buffer
+        }
+        if (spare.isEmpty()) {
+            current = new ArrayList<Instr>();
+        } else {
+            current = spare.remove(spare.size() - 1);
+        }
+        buffers.add(current);
+    }
+
+    // **********************************************************************
+    // endFunction
+    //    anything generated after this (e.g. globals) goes in a new buffer
+    // **********************************************************************
+    public static void endFunction() {
+        if (local.get() != null) {
+            return;
+        }
+        current = null;
+    }
+
+    // **********************************************************************
+    // getBuffers
+    //    the generated code that has not been flushed yet
+    // **********************************************************************
+    public static List<List<Instr>> getBuffers() {
+        return buffers;
+    }
+
+    // **********************************************************************
+    // stringLabel
+    //    given:  a string literal (with its quotes)
+    //    return: the label of its copy in the string pool
+    // **********************************************************************
+    public static String stringLabel(String literal) {
+        Context context = local.get();
+        if (context != null) {
+            return context.stringLabel(literal);
+        }
+        String label = strings.get(literal);
+        if (label == null) {
+            label = nextLabel();
+            strings.put(literal, label);
+        }
+        return label;
+    }
+
+    // **********************************************************************
+    // flush
+    //    write every buffer to out, in order, then the string pool, and
+    //    empty them; each buffer is written with a single write
+    // **********************************************************************
+    public static void flush() throws IOException {
+        for (List<Instr> buffer : buffers) {
+            text.reset();
+            for (Instr instr : buffer) {
+                instr.appendTo(text);
+            }
+            text.writeTo(out);
+            buffer.clear();
+            spare.add(buffer);
+        }
+        buffers.clear();
+        current = null;
+
+        if (!strings.isEmpty()) {
+            text.reset();
+            text.put("\t.data\n\t.align 2\n");
+            for (Map.Entry<String, String> entry : strings.entrySet()) {
+                text.put(entry.getValue()).put(":\t.asciiz ")
+                    .put(entry.getKey()).put('\n');
+            }
+            text.writeTo(out);
+            strings.clear();
+        }
+    }
+
+    // **********************************************************************
+    // reset
+    //    discard any code not flushed yet and start numbering labels
+    //    from 0 again, for compiling another file
+    // **********************************************************************
+    public static void reset() {
+        for (List<Instr> buffer : buffers) {
+            buffer.clear();
+            spare.add(buffer);
+        }
+        buffers.clear();
+        current = null;
+        strings.clear();
+        Arrays.fill(tempInUse, false);
+        currLabel = 0;
+        debugLevel = DEBUG_NONE;
+        out = null;
+    }
+
+    // **********************************************************************
+    // begin
+    //    give this thread a Context of its own: until end, everything
+    //    generated on it goes into the Context
+    // **********************************************************************
+    public static Context begin() {
+        Context context = new Context();
+        local.set(context);
+        return context;
+    }
+
+    // **********************************************************************
+    // end
+    //    go back to generating into the shared buffers
+    // **********************************************************************
+    public static void end() {
+        local.remove();
+    }
+
+    // **********************************************************************
+    // merge
+    //    given:  a finished Context
+    //    do:     number its labels as if its code had been generated
+    //            here, and add its code as the next buffer
+    // **********************************************************************
+    public static void merge(Context context) {
+        String[] names = new String[context.labels.size()];
+        for (int k = 0; k < names.length; k++) {
+            String literal = context.labels.get(k);
+            names[k] = literal == null ? nextLabel() : stringLabel(literal);
+        }
+        for (Instr instr : context.code) {
+            instr.relabel(names);
+        }
+        buffers.add(context.code);
+        current = null;
+    }
+
+    private static void emit(Instr instr) {
+        Context context = local.get();
+        if (context != null) {
+            context.code.add(instr);
+            return;
+        }
+        if (current == null) {
+            beginFunction();
+        }
+        current.add(instr);
+    }
+
+    // **********************************************************************
+    // **********************************************************************
+    // TEMPORARY REGISTERS
+    // **********************************************************************
+    // **********************************************************************
+
+    // **********************************************************************
+    // getReg
+    //    return a free temporary register and mark it in use
+    // **********************************************************************
+    public static String getReg() {
+        boolean[] inUse = tempInUse();
+        for (int k = 0; k < TEMPS.length; k++) {
+            if (!inUse[k]) {
+                inUse[k] = true;
+                return TEMPS[k];
+            }
+        }
+        throw new IllegalStateException("out of temporary registers");
+    }
+
+    // **********************************************************************
+    // claimReg
+    //    mark the given (currently free) temporary register in use
+    // **********************************************************************
+    public static void claimReg(String reg) {
+        boolean[] inUse = tempInUse();
+        int k = regIndex(reg);
+        if (inUse[k]) {
+            throw new IllegalStateException(reg + " is already in use");
+        }
+        inUse[k] = true;
+    }
+
+    // **********************************************************************
+    // freeReg
+    //    return the given temporary register to the pool
+    // **********************************************************************
+    public static void freeReg(String reg) {
+        tempInUse()[regIndex(reg)] = false;
+    }
+
+    // **********************************************************************
+    // numFreeRegs
+    //    how many temporaries can be allocated before we have to spill
+    // **********************************************************************
+    public static int numFreeRegs() {
+        int n = 0;
+        for (boolean used : tempInUse()) {
+            if (!used) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // **********************************************************************
+    // saveRegs
+    //    push every temporary that is in use (they are caller-saved, so
+    //    this has to happen before a jal) and mark them all free; returns
+    //    the saved registers for restoreRegs
+    // **********************************************************************
+    public static List<String> saveRegs() {
+        boolean[] inUse = tempInUse();
+        List<String> saved = new ArrayList<String>();
+        for (int k = 0; k < TEMPS.length; k++) {
+            if (inUse[k]) {
+                genPush(TEMPS[k]);
+                inUse[k] = false;
+                saved.add(TEMPS[k]);
+            }
+        }
+        return saved;
+    }
+
+    // **********************************************************************
+    // restoreRegs
+    //    pop the registers pushed by saveRegs and mark them in use again
+    // **********************************************************************
+    public static void restoreRegs(List<String> saved) {
+        for (int k = saved.size() - 1; k >= 0; k--) {
+            genPop(saved.get(k));
+            claimReg(saved.get(k));
+        }
+    }
+
+    private static boolean[] tempInUse() {
+        Context context = local.get();
+        return context == null ? tempInUse : context.tempInUse;
+    }
+
+    private static int regIndex(String reg) {
+        for (int k = 0; k < TEMPS.length; k++) {
+            if (TEMPS[k].equals(reg)) {
+                return k;
+            }
+        }
+        throw new IllegalArgumentException(reg + " is not a temporary");
+    }
+
     // **********************************************************************
     // Return a different label each time:
     //        L0 L1 L2, etc.
     // **********************************************************************
     public static String nextLabel() {
+        Context context = local.get();
+        if (context != null) {
+            return context.newLabel(null);
+        }
         Integer k = new Integer(currLabel++);
         String tmp = ".L" + k;
         return(tmp);
     }
+
+    // **********************************************************************
+    // The Context class is the code generation state of one function
+    // generated off the main thread.  Its labels are placeholders,
+    // PLACEHOLDER k PLACEHOLDER for its k-th label, that merge replaces;
+    // for each one, labels records the string literal it stands for, or
+    // null for a label from nextLabel.
+    // **********************************************************************
+
+    public static class Context {
+        static final char PLACEHOLDER = '\0';
+
+        private List<Instr> code = new ArrayList<Instr>();
+        private boolean[] tempInUse = new boolean[TEMPS.length];
+        private List<String> labels = new ArrayList<String>();
+        private Map<String, String> strings = new HashMap<String, String>();
+
+        Context() { }
+
+        // the code and labels of a function generated earlier
+        Context(List<Instr> code, List<String> labels) {
+            this.code = code;
+            this.labels = labels;
+        }
+
+        List<Instr> getCode() { return code; }
+        List<String> getLabels() { return labels; }
+
+        private String newLabel(String literal) {
+            labels.add(literal);
+            return PLACEHOLDER + String.valueOf(labels.size() - 1)
+                + PLACEHOLDER;
+        }
+
+        private String stringLabel(String literal) {
+            String label = strings.get(literal);
+            if (label == null) {
+                label = newLabel(literal);
+                strings.put(literal, label);
+            }
+            return label;
+        }
+    }
+}
+
+// **********************************************************************
+// The Instr class is one line of generated code, held in a Codegen buffer
+// until it is flushed.  Depending on its kind it prints as:
+//     OP         opcode arg1, arg2, arg3        #comment
+//     INDEXED    opcode arg1, offset(arg2)      #comment
+//     LABELED    label:  opcode arg1            # comment
+//     LABEL      label:                         # comment
+// An OP with an empty opcode is a comment line.
+// **********************************************************************
+
+class Instr {
+    public static final int OP = 0;
+    public static final int INDEXED = 1;
+    public static final int LABELED = 2;
+    public static final int LABEL = 3;
+
+    // for pretty printing generated code
+    private static final int MAXLEN = 4;
+
+    private int kind;
+    private String label;
+    private String opcode;
+    private String arg1, arg2, arg3;
+    private int offset;
+    private String comment;
+
+    public Instr(int kind, String label, String opcode, String arg1,
+                 String arg2, String arg3, String comment) {
+        this.kind = kind;
+        this.label = label;
+        this.opcode = opcode;
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.arg3 = arg3;
+        this.comment = comment;
+    }
+
+    /**
+     * An INDEXED instruction: opcode arg1, offset(arg2)
+     */
+    public static Instr indexed(String opcode, String arg1, String arg2,
+                                int offset, String comment) {
+        Instr instr = new Instr(INDEXED, "", opcode, arg1, arg2, "", comment);
+        instr.offset = offset;
+        return instr;
+    }
+
+    public int kind() { return kind; }
+    public String label() { return label; }
+    public String opcode() { return opcode; }
+    public String arg1() { return arg1; }
+    public String arg2() { return arg2; }
+    public String arg3() { return arg3; }
+    public String comment() { return comment; }
+
+    /**
+     * For INDEXED lines, the constant offset.
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Is this a comment line (no instruction and no label)?
+     */
+    public boolean isComment() {
+        return kind == OP && opcode.isEmpty();
+    }
+
+    /**
+     * Does this line define a label?
+     */
+    public boolean isLabel() {
+        return kind == LABEL || kind == LABELED;
+    }
+
+    /**
+     * Is this an instruction with the given opcode?
+     */
+    public boolean is(String op) {
+        return (kind == OP || kind == INDEXED) && opcode.equals(op);
+    }
+
+    /**
+     * Replace each placeholder label k (see Codegen.Context) in this line
+     * by names[k].
+     */
+    void relabel(String[] names) {
+        label = relabel(label, names);
+        arg1 = relabel(arg1, names);
+        arg2 = relabel(arg2, names);
+        arg3 = relabel(arg3, names);
+        comment = relabel(comment, names);
+    }
+
+    private static String relabel(String s, String[] names) {
+        int start = s.indexOf(Codegen.Context.PLACEHOLDER);
+        if (start < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        int from = 0;
+        while (start >= 0) {
+            int end = s.indexOf(Codegen.Context.PLACEHOLDER, start + 1);
+            sb.append(s, from, start);
+            sb.append(names[Integer.parseInt(s.substring(start + 1, end))]);
+            from = end + 1;
+            start = s.indexOf(Codegen.Context.PLACEHOLDER, from);
+        }
+        return sb.append(s, from, s.length()).toString();
+    }
+
+    /**
+     * Format this line, ending with a newline, onto the end of out.
+     */
+    public void appendTo(AsmBuffer out) {
+        if (kind == LABEL) {
+            out.put(label).put(':');
+            if (!comment.isEmpty())
+                out.put("\t\t# ").put(comment);
+            out.put('\n');
+            return;
+        }
+
+        int space = MAXLEN - opcode.length() + 2;
+        if (kind == LABELED)
+            out.put(label).put(':');
+        out.put('\t').put(opcode);
+        if (kind == INDEXED) {
+            out.pad(space).put(arg1).put(", ").put(offset)
+               .put('(').put(arg2).put(')');
+            if (!comment.isEmpty())
+                out.put("\t#").put(comment);
+        } else if (kind == LABELED) {
+            if (!arg1.isEmpty())
+                out.pad(space).put(arg1);
+            if (!comment.isEmpty())
+                out.put("\t# ").put(comment);
+        } else {
+            if (!arg1.isEmpty()) {
+                out.pad(space).put(arg1);
+                if (!arg2.isEmpty()) {
+                    out.put(", ").put(arg2);
+                    if (!arg3.isEmpty())
+                        out.put(", ").put(arg3);
+                }
+            }
+            if (!comment.isEmpty())
+                out.put("\t\t#").put(comment);
+        }
+        out.put('\n');
+    }
+}
+
+// **********************************************************************
+// The AsmBuffer class collects formatted assembly text as bytes in an
+// array that is reused (and only grown, never shrunk) from one flush to
+// the next, so that formatting allocates nothing in the common case.
+// Text is expected to be ASCII; anything else is encoded with the
+// platform's default charset.
+// **********************************************************************
+
+class AsmBuffer {
+    private byte[] bytes = new byte[1 << 16];
+    private int len = 0;
+
+    public void reset() {
+        len = 0;
+    }
+
+    public int length() {
+        return len;
+    }
+
+    public AsmBuffer put(char c) {
+        if (c >= 0x80) {
+            return put(String.valueOf(c));
+        }
+        room(1);
+        bytes[len++] = (byte)c;
+        return this;
+    }
+
+    public AsmBuffer put(String s) {
+        int n = s.length();
+        room(n);
+        for (int k = 0; k < n; k++) {
+            char c = s.charAt(k);
+            if (c >= 0x80) {
+                len -= k;   // start over on the slow path
+                return putEncoded(s);
+            }
+            bytes[len++] = (byte)c;
+        }
+        return this;
+    }
+
+    public AsmBuffer put(int n) {
+        if (n == Integer.MIN_VALUE) {
+            return put(String.valueOf(n));
+        }
+        room(11);
+        if (n < 0) {
+            bytes[len++] = '-';
+            n = -n;
+        }
+        int end = len + digits(n);
+        for (int k = end - 1; k >= len; k--) {
+            bytes[k] = (byte)('0' + n % 10);
+            n /= 10;
+        }
+        len = end;
+        return this;
+    }
+
+    /**
+     * Append n spaces (none if n is not positive).
+     */
+    public AsmBuffer pad(int n) {
+        if (n < 1) {
+            return this;
+        }
+        room(n);
+        for (int k = 0; k < n; k++) {
+            bytes[len++] = ' ';
+        }
+        return this;
+    }
+
+    /**
+     * Write everything appended since the last reset to ch.
+     */
+    public void writeTo(WritableByteChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 0, len);
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    private AsmBuffer putEncoded(String s) {
+        byte[] encoded = s.getBytes();
+        room(encoded.length);
+        System.arraycopy(encoded, 0, bytes, len, encoded.length);
+        len += encoded.length;
+        return this;
+    }
+
+    private static int digits(int n) {
+        int d = 1;
+        while (n >= 10) {
+            n /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    private void room(int n) {
+        if (len + n > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, len + n));
+        }
+    }
 }
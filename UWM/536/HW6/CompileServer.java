@@ -0,0 +1,134 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// **********************************************************************
+// The CompileServer class keeps the compiler loaded (and, after a few
+// files, JIT compiled), so that a build can compile many files without
+// starting a JVM for each one.  It is started by
+//
+//     java P6 -server             requests on stdin, replies on stdout
+//     java P6 -server SOCKET      requests on a Unix-domain socket
+//
+// A request is one line holding the arguments of a P6 command line,
+// separated by tabs (so file names may contain spaces).  Relative file
+// names are relative to the server's working directory.  The reply is a
+// line "RESULT LENGTH" followed by LENGTH bytes of UTF-8 text: RESULT is
+// the P6.RESULT_ code of the compile and the text is what P6 would have
+// printed to stderr.  For example:
+//
+//     printf 'in.cm\tout.s\n' | nc -U p6.sock
+//
+// Any number of clients may be connected, each sending any number of
+// requests, but the compiler keeps its state in static fields, so files
+// are compiled one at a time (P6.compile resets that state first).  -vm
+// and -jvmrun are refused, since the program's output would get mixed
+// up with the replies.  Empty lines are ignored.  The server stops at the
+// end of stdin; a socket server runs until it is killed, and then
+// removes the socket.
+// **********************************************************************
+
+public class CompileServer {
+    // held while compiling
+    private static final Object lock = new Object();
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("usage: java P6 -server [socket]");
+            System.exit(-1);
+        }
+        try {
+            if (args.length == 0) {
+                serve(System.in, System.out);
+            } else {
+                listen(Paths.get(args[0]));
+            }
+        } catch (IOException ex) {
+            System.err.println("compile server: " + ex.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Answer the requests read from input, until it ends.
+     */
+    public static void serve(InputStream input, OutputStream output)
+            throws IOException {
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(input, StandardCharsets.UTF_8));
+        OutputStream out = new BufferedOutputStream(output);
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            messages.reset();
+            int result = compile(line.split("\t"), messages);
+            out.write((result + " " + messages.size() + "\n")
+                      .getBytes(StandardCharsets.US_ASCII));
+            messages.writeTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Accept clients on a Unix-domain socket at path, serving each on a
+     * thread of its own, until the process is killed.
+     */
+    public static void listen(final Path path) throws IOException {
+        ServerSocketChannel server =
+            ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ex) {
+                    // nothing more we can do
+                }
+            }
+        });
+
+        while (true) {
+            final SocketChannel client = server.accept();
+            Thread thread = new Thread() {
+                public void run() {
+                    try (SocketChannel channel = client) {
+                        serve(Channels.newInputStream(channel),
+                              Channels.newOutputStream(channel));
+                    } catch (IOException ex) {
+                        // the client went away
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // compile one file, with everything the compiler prints going to
+    // messages
+    private static int compile(String[] args, ByteArrayOutputStream messages) {
+        synchronized (lock) {
+            PrintStream err = System.err;
+            PrintStream out = System.out;
+            PrintStream capture =
+                new PrintStream(messages, true, StandardCharsets.UTF_8);
+            System.setErr(capture);
+            System.setOut(capture);
+            try {
+                return P6.compile(args);
+            } catch (RuntimeException | StackOverflowError ex) {
+                capture.println("internal error: " + ex);
+                return P6.RESULT_OTHER_ERROR;
+            } finally {
+                capture.flush();
+                System.setErr(err);
+                System.setOut(out);
+            }
+        }
+    }
+}
@@ -1,11 +1,21 @@
+import java.util.*;
+
 /**
  * ErrMsg
  *
  * This class is used to generate warning and fatal error messages.
+ *
+ * A thread that checks or generates one function in parallel with others
+ * calls begin first, so that its messages are collected in a Sink instead
+ * of printed; report then prints them (in source order, on the main
+ * thread), so they come out as they would from a sequential run.
  */
 class ErrMsg {
 	private static boolean err = false;
 
+	// the Sink of a thread working on one function in parallel, if any
+	private static final ThreadLocal<Sink> local = new ThreadLocal<Sink>();
+
 	/**
 	 * Generates a fatal error message.
 	 * @param lineNum line number for error location
@@ -13,6 +23,12 @@ class ErrMsg {
 	 * @param msg associated message for error
 	 */
 	static void fatal(int lineNum, int charNum, String msg) {
+		Sink sink = local.get();
+		if (sink != null) {
+			sink.err = true;
+			sink.messages.add(lineNum + ":" + charNum + " ***ERROR*** " + msg);
+			return;
+		}
 		err = true;
 		System.err.println(lineNum + ":" + charNum + " ***ERROR*** " + msg);
 	}
@@ -24,6 +40,11 @@ class ErrMsg {
 	 * @param msg associated message for warning
 	 */
 	static void warn(int lineNum, int charNum, String msg) {
+		Sink sink = local.get();
+		if (sink != null) {
+			sink.messages.add(lineNum + ":" + charNum + " ***WARNING*** " + msg);
+			return;
+		}
 		System.err.println(lineNum + ":" + charNum + " ***WARNING*** " + msg);
 	}
 
@@ -34,4 +55,70 @@ class ErrMsg {
 		return err;
 	}
 
+	/**
+	 * Clears the err flag, for compiling another file.
+	 */
+	static void reset() {
+		err = false;
+	}
+
+	/**
+	 * Collect the messages of this thread in a new Sink until end.
+	 */
+	static Sink begin() {
+		Sink sink = new Sink();
+		local.set(sink);
+		return sink;
+	}
+
+	/**
+	 * Collect the messages of this thread in sink, with those it already
+	 * has, until end.
+	 */
+	static void begin(Sink sink) {
+		local.set(sink);
+	}
+
+	/**
+	 * Print this thread's messages again.
+	 */
+	static void end() {
+		local.remove();
+	}
+
+	/**
+	 * Print the messages collected in sink, and set the err flag if one
+	 * of them was an error.
+	 */
+	static void report(Sink sink) {
+		for (String message : sink.messages) {
+			System.err.println(message);
+		}
+		if (sink.err) {
+			err = true;
+		}
+	}
+
+	/**
+	 * The messages of one function, waiting to be reported.
+	 */
+	static class Sink {
+		private List<String> messages = new ArrayList<String>();
+		private boolean err = false;
+
+		List<String> getMessages() {
+			return messages;
+		}
+
+		boolean hasErrors() {
+			return err;
+		}
+
+		/**
+		 * Add a warning, as already formatted by warn.
+		 */
+		void addWarning(String message) {
+			messages.add(message);
+		}
+	}
 }
@@ -0,0 +1,397 @@
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+// **********************************************************************
+// The JvmGenerator class compiles a TacProgram to a JVM class, as an
+// alternative to generating MIPS with TacSelector.
+//
+// Each C-- function becomes a static method taking and returning ints
+// (void functions return 0).  Formals are the method's first local
+// slots, then come the function's locals and its TAC temps; globals are
+// static int fields.  Bools are 0 and 1, and strings are indexes into a
+// static table of the program's string literals.  Input and output go
+// through CmmRuntime, and a main(String[]) method runs the C-- main and
+// flushes the output.  See ClassFile for the class file format.
+// **********************************************************************
+
+public class JvmGenerator {
+    private static final String RUNTIME = "CmmRuntime";
+    private static final String STRINGS = "$strings";
+    private static final String STRING_ARRAY = "[Ljava/lang/String;";
+
+    private ClassFile cf;
+    private String className;
+    private Map<String, Integer> numParams = new HashMap<String, Integer>();
+
+    private TacProgram program;
+
+    // for the current function
+    private ClassFile.Code code;
+    private int numFormals;
+    private int numLocals;
+    private Map<String, Integer> labels = new HashMap<String, Integer>();
+    private List<Integer> params = new ArrayList<Integer>();
+
+    /**
+     * Compile program to the class called className, returning the
+     * class file, or null if it cannot be compiled (a method is too
+     * big for the JVM).
+     */
+    public byte[] generate(TacProgram program, String className)
+            throws IOException {
+        this.program = program;
+        this.className = className;
+        cf = new ClassFile(className);
+
+        for (String global : program.getGlobals()) {
+            cf.addField(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, global,
+                        "I");
+        }
+        cf.addField(ClassFile.ACC_STATIC, STRINGS, STRING_ARRAY);
+
+        boolean hasMain = false;
+        for (TacFunction fn : program.getFunctions()) {
+            numParams.put(fn.getName(), fn.getNumParams());
+        }
+        for (TacFunction fn : program.getFunctions()) {
+            if (!generate(fn)) {
+                ErrMsg.fatal(0, 0, "function " + fn.getName() +
+                             " is too big for the JVM");
+                return null;
+            }
+            hasMain |= fn.isMain() && fn.getNumParams() == 0;
+        }
+        if (hasMain) {
+            generateMain();
+        }
+        generateStringTable();
+        return cf.toBytes();
+    }
+
+    /**
+     * Load a class made by generate and run its main method, returning
+     * whatever the C-- program threw (such as an ArithmeticException for
+     * a division by zero), or null if it finished.
+     */
+    public static Throwable run(String className, byte[] classFile)
+            throws ReflectiveOperationException {
+        Loader loader = new Loader();
+        Class<?> c = loader.define(className, classFile);
+        Method main = c.getMethod("main", String[].class);
+        try {
+            main.invoke(null, (Object)new String[0]);
+        } catch (InvocationTargetException ex) {
+            CmmRuntime.flush();
+            return ex.getCause();
+        }
+        return null;
+    }
+
+    // defines generated classes; CmmRuntime comes from the parent
+    private static class Loader extends ClassLoader {
+        Loader() {
+            super(JvmGenerator.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // **********************************************************************
+    // methods
+    // **********************************************************************
+
+    private boolean generate(TacFunction fn) throws IOException {
+        code = new ClassFile.Code();
+        numFormals = fn.getNumParams();
+        numLocals = fn.getLocalsSize() / 4;
+        labels.clear();
+        params.clear();
+
+        // C-- locals may be read before they are set, but the verifier
+        // will not allow that (temps are always set first)
+        code.locals(numFormals + numLocals + fn.getNumTemps());
+        code.stack(4);
+        for (int slot = numFormals; slot < numFormals + numLocals; slot++) {
+            code.op(ClassFile.Code.ICONST_0);
+            code.local(ClassFile.Code.ISTORE, slot);
+        }
+
+        for (TacInstr instr : fn.getCode()) {
+            generate(instr);
+        }
+        code.op(ClassFile.Code.ICONST_0);   // for falling off the end
+        code.op(ClassFile.Code.IRETURN);
+
+        if (!code.finish()) {
+            return false;
+        }
+        cf.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                     fn.getName(), descriptor(fn.getNumParams()), code);
+        return true;
+    }
+
+    private void generate(TacInstr instr) {
+        int op = instr.getOp();
+        switch (op) {
+        case TacInstr.LI:
+            code.pushInt(instr.getImm(), cf);
+            store(instr.getDst());
+            break;
+
+        case TacInstr.STR:
+            code.pushInt(program.getString(instr.getText()), cf);
+            store(instr.getDst());
+            break;
+
+        case TacInstr.LOAD:
+            if (instr.getVar().isGlobal()) {
+                code.op2(ClassFile.Code.GETSTATIC, global(instr.getVar()));
+            } else {
+                code.local(ClassFile.Code.ILOAD,
+                           instr.getVar().slot(numFormals));
+            }
+            store(instr.getDst());
+            break;
+
+        case TacInstr.STORE:
+            load(instr.getSrc1());
+            if (instr.getVar().isGlobal()) {
+                code.op2(ClassFile.Code.PUTSTATIC, global(instr.getVar()));
+            } else {
+                code.local(ClassFile.Code.ISTORE,
+                           instr.getVar().slot(numFormals));
+            }
+            break;
+
+        case TacInstr.MOVE:
+            load(instr.getSrc1());
+            store(instr.getDst());
+            break;
+
+        case TacInstr.NEG:
+            load(instr.getSrc1());
+            code.op2(ClassFile.Code.INVOKESTATIC,
+                     cf.methodRef("java/lang/Math", "negateExact", "(I)I"));
+            store(instr.getDst());
+            break;
+
+        case TacInstr.NOT:
+            load(instr.getSrc1());
+            code.op(ClassFile.Code.ICONST_1);
+            code.op(ClassFile.Code.IXOR);
+            store(instr.getDst());
+            break;
+
+        case TacInstr.ADD:
+        case TacInstr.SUB:
+            // these throw an ArithmeticException on overflow, as MIPS add
+            // and sub trap
+            load(instr.getSrc1());
+            load(instr.getSrc2());
+            code.op2(ClassFile.Code.INVOKESTATIC,
+                     cf.methodRef("java/lang/Math",
+                                  op == TacInstr.ADD ? "addExact"
+                                                     : "subtractExact",
+                                  "(II)I"));
+            store(instr.getDst());
+            break;
+
+        case TacInstr.MUL:
+        case TacInstr.DIV:
+            load(instr.getSrc1());
+            load(instr.getSrc2());
+            code.op(op == TacInstr.MUL ? ClassFile.Code.IMUL
+                                       : ClassFile.Code.IDIV);
+            store(instr.getDst());
+            break;
+
+        case TacInstr.SEQ:
+        case TacInstr.SNE:
+        case TacInstr.SLT:
+        case TacInstr.SGT:
+        case TacInstr.SLE:
+        case TacInstr.SGE: {
+            int isTrue = code.newLabel();
+            int done = code.newLabel();
+            load(instr.getSrc1());
+            load(instr.getSrc2());
+            code.branch(compareOp(op), isTrue);
+            code.op(ClassFile.Code.ICONST_0);
+            code.branch(ClassFile.Code.GOTO, done);
+            code.placeLabel(isTrue);
+            code.op(ClassFile.Code.ICONST_1);
+            code.placeLabel(done);
+            store(instr.getDst());
+            break;
+        }
+
+        case TacInstr.STREQ:
+            loadString(instr.getSrc1());
+            loadString(instr.getSrc2());
+            code.op2(ClassFile.Code.INVOKEVIRTUAL,
+                     cf.methodRef("java/lang/String", "equals",
+                                  "(Ljava/lang/Object;)Z"));
+            store(instr.getDst());
+            break;
+
+        case TacInstr.LABEL:
+            code.placeLabel(label(instr.getText()));
+            break;
+
+        case TacInstr.JUMP:
+            code.branch(ClassFile.Code.GOTO, label(instr.getText()));
+            break;
+
+        case TacInstr.BRZ:
+        case TacInstr.BNZ:
+            load(instr.getSrc1());
+            code.branch(op == TacInstr.BRZ ? ClassFile.Code.IFEQ
+                                           : ClassFile.Code.IFNE,
+                        label(instr.getText()));
+            break;
+
+        case TacInstr.PARAM:
+            // passed on the operand stack at the CALL
+            params.add(instr.getSrc1());
+            break;
+
+        case TacInstr.CALL: {
+            // the last argument was PARAMed first
+            int n = numParams.get(instr.getText());
+            code.stack(n);
+            for (int k = 0; k < n; k++) {
+                load(params.remove(params.size() - 1));
+            }
+            code.op2(ClassFile.Code.INVOKESTATIC,
+                     cf.methodRef(className, instr.getText(), descriptor(n)));
+            if (instr.getDst() < 0) {
+                code.op(ClassFile.Code.POP);
+            } else {
+                store(instr.getDst());
+            }
+            break;
+        }
+
+        case TacInstr.RET:
+            if (instr.getSrc1() < 0) {
+                code.op(ClassFile.Code.ICONST_0);
+            } else {
+                load(instr.getSrc1());
+            }
+            code.op(ClassFile.Code.IRETURN);
+            break;
+
+        case TacInstr.READ:
+            code.op2(ClassFile.Code.INVOKESTATIC,
+                     cf.methodRef(RUNTIME, "readInt", "()I"));
+            store(instr.getDst());
+            break;
+
+        case TacInstr.WRITEI:
+            load(instr.getSrc1());
+            code.op2(ClassFile.Code.INVOKESTATIC,
+                     cf.methodRef(RUNTIME, "writeInt", "(I)V"));
+            break;
+
+        case TacInstr.WRITES:
+            loadString(instr.getSrc1());
+            code.op2(ClassFile.Code.INVOKESTATIC,
+                     cf.methodRef(RUNTIME, "writeString",
+                                  "(Ljava/lang/String;)V"));
+            break;
+        }
+    }
+
+    // public static void main(String[] args): run main and flush output
+    private void generateMain() throws IOException {
+        code = new ClassFile.Code();
+        code.stack(1);
+        code.locals(1);
+        code.op2(ClassFile.Code.INVOKESTATIC,
+                 cf.methodRef(className, "main", "()I"));
+        code.op(ClassFile.Code.POP);
+        code.op2(ClassFile.Code.INVOKESTATIC,
+                 cf.methodRef(RUNTIME, "flush", "()V"));
+        code.op(ClassFile.Code.RETURN);
+        code.finish();
+        cf.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "main",
+                     "([Ljava/lang/String;)V", code);
+    }
+
+    // static initializer: fill in the string table
+    private void generateStringTable() throws IOException {
+        code = new ClassFile.Code();
+        Map<String, Integer> strings = program.getStrings();
+        code.stack(4);
+        code.pushInt(strings.size(), cf);
+        code.op2(ClassFile.Code.ANEWARRAY, cf.classRef("java/lang/String"));
+        for (Map.Entry<String, Integer> entry : strings.entrySet()) {
+            code.op(ClassFile.Code.DUP);
+            code.pushInt(entry.getValue(), cf);
+            code.op2(ClassFile.Code.LDC_W,
+                     cf.string(TacInstr.unquote(entry.getKey())));
+            code.op(ClassFile.Code.AASTORE);
+        }
+        code.op2(ClassFile.Code.PUTSTATIC,
+                 cf.fieldRef(className, STRINGS, STRING_ARRAY));
+        code.op(ClassFile.Code.RETURN);
+        code.finish();
+        cf.addMethod(ClassFile.ACC_STATIC, "<clinit>", "()V", code);
+    }
+
+    // **********************************************************************
+    // operands
+    // **********************************************************************
+
+    private void load(int t) {
+        code.local(ClassFile.Code.ILOAD, numFormals + numLocals + t);
+    }
+
+    private void store(int t) {
+        code.local(ClassFile.Code.ISTORE, numFormals + numLocals + t);
+    }
+
+    // push the String that temp t holds the index of
+    private void loadString(int t) {
+        code.op2(ClassFile.Code.GETSTATIC,
+                 cf.fieldRef(className, STRINGS, STRING_ARRAY));
+        load(t);
+        code.op(ClassFile.Code.AALOAD);
+    }
+
+    private int global(TacVar var) {
+        return cf.fieldRef(className, var.getName(), "I");
+    }
+
+    private int label(String name) {
+        Integer label = labels.get(name);
+        if (label == null) {
+            label = code.newLabel();
+            labels.put(name, label);
+        }
+        return label;
+    }
+
+    private static int compareOp(int op) {
+        switch (op) {
+        case TacInstr.SEQ: return ClassFile.Code.IF_ICMPEQ;
+        case TacInstr.SNE: return ClassFile.Code.IF_ICMPNE;
+        case TacInstr.SLT: return ClassFile.Code.IF_ICMPLT;
+        case TacInstr.SGT: return ClassFile.Code.IF_ICMPGT;
+        case TacInstr.SLE: return ClassFile.Code.IF_ICMPLE;
+        default:           return ClassFile.Code.IF_ICMPGE;
+        }
+    }
+
+    // (I...I)I with n int parameters
+    private static String descriptor(int n) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int k = 0; k < n; k++) {
+            sb.append('I');
+        }
+        return sb.append(")I").toString();
+    }
+}
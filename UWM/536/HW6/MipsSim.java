@@ -0,0 +1,1207 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * MipsSim
+ *
+ * A small MIPS32 simulator for the assembly that P6 generates.  It loads
+ * a SPIM-style .s file (including the pseudo-instructions and the print,
+ * read and exit syscalls the code generator uses), runs it starting at
+ * the label "main" and reports dynamic execution statistics.
+ *
+ * There should be 1 command-line argument (plus optional flags):
+ *    1. the MIPS assembly file to run
+ *
+ *    -stats     print instruction/load/store/branch counts and wall time
+ *               to stderr when the program finishes
+ *    -limit N   stop after N dynamic instructions (default: no limit)
+ *
+ * The program's own output goes to stdout and syscall 5 (read int) reads
+ * lines from stdin, so generated programs can be diffed just like SPIM
+ * output.
+ */
+public class MipsSim {
+    public static final int RESULT_CORRECT = 0;
+    public static final int RESULT_LOAD_ERROR = 1;
+    public static final int RESULT_RUNTIME_ERROR = 2;
+    public static final int RESULT_LIMIT_EXCEEDED = 3;
+
+    // memory layout (the same as SPIM's defaults)
+    private static final int TEXT_BASE = 0x00400000;
+    private static final int DATA_BASE = 0x10010000;
+    private static final int STACK_TOP = 0x7fffeffc;
+    private static final int STACK_END = 0x7ffff000;
+    private static final int STACK_SIZE = 8 * 1024 * 1024;
+    private static final int STACK_BASE = STACK_END - STACK_SIZE;
+    private static final int GP_INIT = 0x10008000;
+
+    // register numbers
+    private static final int ZERO = 0, V0 = 2, A0 = 4, A1 = 5, SP = 29,
+                             FP = 30, RA = 31;
+
+    private static final String[] REG_NAMES = {
+        "zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+        "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+        "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+        "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra"
+    };
+
+    // **********************************************************************
+    // decoded operations
+    // **********************************************************************
+    private static final int
+        NOP = 0,
+        ADD = 1, ADDI = 2, ADDU = 3, ADDIU = 4, SUB = 5, SUBI = 6,
+        SUBU = 7, SUBIU = 8, MUL = 9, MULI = 10, AND = 11, ANDI = 12,
+        OR = 13, ORI = 14, XOR = 15, XORI = 16, NOR = 17, NORI = 18,
+        SLT = 19, SLTI = 20, SLTU = 21, SLTIU = 22, SEQ = 23, SEQI = 24,
+        SNE = 25, SNEI = 26, SGT = 27, SGTI = 28, SGE = 29, SGEI = 30,
+        SLE = 31, SLEI = 32, SLLV = 33, SLL = 34, SRLV = 35, SRL = 36,
+        SRAV = 37, SRA = 38, DIV3 = 39, DIV3I = 40, REM3 = 41, REM3I = 42,
+        DIVU3 = 43, REMU3 = 44,
+        MULT = 50, MULTU = 51, DIV = 52, DIVU = 53, MFLO = 54, MFHI = 55,
+        MTLO = 56, MTHI = 57,
+        LI = 60, LUI = 61, LA = 62, MOVE = 63, NEG = 64, NOT = 65, ABS = 66,
+        LW = 70, SW = 71, LB = 72, LBU = 73, SB = 74, LH = 75, LHU = 76,
+        SH = 77,
+        BEQ = 80, BEQI = 81, BNE = 82, BNEI = 83, BLT = 84, BLTI = 85,
+        BGT = 86, BGTI = 87, BLE = 88, BLEI = 89, BGE = 90, BGEI = 91,
+        BLTU = 92, BGTU = 93, BLEU = 94, BGEU = 95,
+        BEQZ = 96, BNEZ = 97, BLTZ = 98, BGTZ = 99, BLEZ = 100, BGEZ = 101,
+        B = 110, J = 111, JAL = 112, JR = 113, JALR = 114,
+        SYSCALL = 120, BREAK = 121;
+
+    // program text, one entry per instruction
+    private int[] ops = new int[256];
+    private int[] ra = new int[256];
+    private int[] rb = new int[256];
+    private int[] rc = new int[256];
+    private int[] weight = new int[256];
+    private int[] srcLine = new int[256];
+    private int textLen = 0;
+
+    // data segment (grows as needed) and stack segment
+    private byte[] data = new byte[4096];
+    private int dataLen = 0;
+    private byte[] stack = new byte[STACK_SIZE];
+
+    // machine state
+    private int[] regs = new int[32];
+    private int hi, lo;
+    private int pc;
+    private boolean halted;
+    private int exitCode;
+
+    // statistics
+    private long instructions, machineInstructions, loads, stores,
+                 branches, branchesTaken, jumps, syscalls;
+    private long wallNanos;
+    private long limit = Long.MAX_VALUE;
+
+    private BufferedReader in;
+    private PrintStream out;
+
+    // labels seen while loading, and the operand text that refers to them
+    private HashMap<String, Integer> labels = new HashMap<String, Integer>();
+    private List<Fixup> fixups = new ArrayList<Fixup>();
+
+    public MipsSim(InputStream in, PrintStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in));
+        this.out = out;
+    }
+
+    // **********************************************************************
+    // public interface
+    // **********************************************************************
+
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public long getInstructions() { return instructions; }
+    public long getMachineInstructions() { return machineInstructions; }
+    public long getLoads() { return loads; }
+    public long getStores() { return stores; }
+    public long getBranches() { return branches; }
+    public long getBranchesTaken() { return branchesTaken; }
+    public long getJumps() { return jumps; }
+    public long getSyscalls() { return syscalls; }
+    public long getWallNanos() { return wallNanos; }
+    public int getExitCode() { return exitCode; }
+
+    /**
+     * Load a whole assembly file.  Throws MipsException (with the source
+     * line number) on anything the simulator does not understand.
+     */
+    public void load(Reader source) throws IOException, MipsException {
+        BufferedReader reader = new BufferedReader(source);
+        boolean inText = true;
+        String line;
+        int lineNum = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNum++;
+            inText = loadLine(stripComment(line).trim(), lineNum, inText);
+        }
+        resolveFixups();
+    }
+
+    /**
+     * Run the loaded program from "main" until it exits.
+     */
+    public void run() throws MipsException {
+        Integer main = labels.get("main");
+        if (main == null || !isText(main)) {
+            throw new MipsException(0, "no main label in text segment");
+        }
+        Arrays.fill(regs, 0);
+        regs[SP] = STACK_TOP;
+        regs[28] = GP_INIT;
+        regs[RA] = TEXT_BASE + 4 * textLen; // returning from main exits
+        pc = (main - TEXT_BASE) >> 2;
+        halted = false;
+
+        long start = System.nanoTime();
+        try {
+            execute();
+        } finally {
+            wallNanos = System.nanoTime() - start;
+            out.flush();
+        }
+    }
+
+    public void printStats(PrintStream p) {
+        p.println("instructions:         " + instructions);
+        p.println("  (pseudo-expanded):  " + machineInstructions);
+        p.println("loads:                " + loads);
+        p.println("stores:               " + stores);
+        p.println("branches:             " + branches
+                  + " (" + branchesTaken + " taken)");
+        p.println("jumps:                " + jumps);
+        p.println("syscalls:             " + syscalls);
+        p.printf("wall time:            %.3f ms%n", wallNanos / 1e6);
+    }
+
+    // **********************************************************************
+    // loading
+    // **********************************************************************
+
+    private static String stripComment(String line) {
+        boolean inStr = false;
+        for (int k = 0; k < line.length(); k++) {
+            char c = line.charAt(k);
+            if (inStr && c == '\\') {
+                k++;
+            } else if (c == '"') {
+                inStr = !inStr;
+            } else if (c == '#' && !inStr) {
+                return line.substring(0, k);
+            }
+        }
+        return line;
+    }
+
+    private boolean loadLine(String line, int lineNum, boolean inText)
+            throws MipsException {
+        // peel off any number of leading labels
+        while (true) {
+            int colon = labelEnd(line);
+            if (colon < 0) {
+                break;
+            }
+            String label = line.substring(0, colon).trim();
+            if (labels.containsKey(label)) {
+                throw new MipsException(lineNum, "label defined twice: " + label);
+            }
+            labels.put(label, inText ? TEXT_BASE + 4 * textLen
+                                     : DATA_BASE + dataLen);
+            line = line.substring(colon + 1).trim();
+        }
+        if (line.length() == 0) {
+            return inText;
+        }
+
+        String opcode = line;
+        String rest = "";
+        for (int k = 0; k < line.length(); k++) {
+            if (Character.isWhitespace(line.charAt(k))) {
+                opcode = line.substring(0, k);
+                rest = line.substring(k).trim();
+                break;
+            }
+        }
+
+        if (opcode.charAt(0) == '.') {
+            return directive(opcode, rest, lineNum, inText);
+        }
+        if (!inText) {
+            throw new MipsException(lineNum, "instruction in data segment");
+        }
+        instruction(opcode, splitOperands(rest), lineNum);
+        return inText;
+    }
+
+    // index of the colon that ends a leading label, or -1
+    private static int labelEnd(String line) {
+        for (int k = 0; k < line.length(); k++) {
+            char c = line.charAt(k);
+            if (c == ':') {
+                return k > 0 ? k : -1;
+            }
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '.'
+                  || c == '$')) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] splitOperands(String rest) {
+        if (rest.length() == 0) {
+            return new String[0];
+        }
+        String[] parts = rest.split(",");
+        for (int k = 0; k < parts.length; k++) {
+            parts[k] = parts[k].trim();
+        }
+        return parts;
+    }
+
+    private boolean directive(String dir, String rest, int lineNum,
+                              boolean inText) throws MipsException {
+        if (dir.equals(".text")) {
+            return true;
+        } else if (dir.equals(".data")) {
+            return false;
+        } else if (dir.equals(".globl") || dir.equals(".extern")
+                   || dir.equals(".ent") || dir.equals(".end")) {
+            return inText;
+        }
+
+        if (inText) {
+            // SPIM ignores alignment in the text segment
+            if (dir.equals(".align")) {
+                return inText;
+            }
+            throw new MipsException(lineNum, dir + " in text segment");
+        }
+
+        if (dir.equals(".align")) {
+            int n = 1 << parseInt(rest, lineNum);
+            int aligned = (dataLen + n - 1) & ~(n - 1);
+            reserve(aligned - dataLen);
+            // a label on the same line as .align names the aligned address
+        } else if (dir.equals(".space")) {
+            reserve(parseInt(rest, lineNum));
+        } else if (dir.equals(".word")) {
+            alignData(4);
+            for (String v : splitOperands(rest)) {
+                int at = dataLen;
+                reserve(4);
+                if (isNumber(v)) {
+                    storeWord(DATA_BASE + at, parseInt(v, lineNum));
+                } else {
+                    fixups.add(new Fixup(v, -1 - at, lineNum));
+                }
+            }
+        } else if (dir.equals(".half")) {
+            alignData(2);
+            for (String v : splitOperands(rest)) {
+                int at = dataLen;
+                reserve(2);
+                int val = parseInt(v, lineNum);
+                data[at] = (byte)val;
+                data[at + 1] = (byte)(val >> 8);
+            }
+        } else if (dir.equals(".byte")) {
+            for (String v : splitOperands(rest)) {
+                int at = dataLen;
+                reserve(1);
+                data[at] = (byte)parseInt(v, lineNum);
+            }
+        } else if (dir.equals(".ascii") || dir.equals(".asciiz")) {
+            String s = parseString(rest, lineNum);
+            int at = dataLen;
+            reserve(s.length() + (dir.equals(".asciiz") ? 1 : 0));
+            for (int k = 0; k < s.length(); k++) {
+                data[at + k] = (byte)s.charAt(k);
+            }
+        } else {
+            throw new MipsException(lineNum, "unsupported directive " + dir);
+        }
+        return inText;
+    }
+
+    private void alignData(int n) {
+        reserve(((dataLen + n - 1) & ~(n - 1)) - dataLen);
+    }
+
+    private void reserve(int n) {
+        if (dataLen + n > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLen + n));
+        }
+        dataLen += n;
+    }
+
+    private static String parseString(String s, int lineNum)
+            throws MipsException {
+        if (s.length() < 2 || s.charAt(0) != '"'
+            || s.charAt(s.length() - 1) != '"') {
+            throw new MipsException(lineNum, "bad string literal " + s);
+        }
+        StringBuilder b = new StringBuilder();
+        for (int k = 1; k < s.length() - 1; k++) {
+            char c = s.charAt(k);
+            if (c == '\\' && k + 1 < s.length() - 1) {
+                c = s.charAt(++k);
+                switch (c) {
+                    case 'n': b.append('\n'); break;
+                    case 't': b.append('\t'); break;
+                    case '0': b.append('\0'); break;
+                    default:  b.append(c); break;   // \" \\ \' \?
+                }
+            } else {
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.length() == 0) {
+            return false;
+        }
+        char c = s.charAt(0);
+        return Character.isDigit(c) || ((c == '-' || c == '+')
+                                        && s.length() > 1
+                                        && Character.isDigit(s.charAt(1)));
+    }
+
+    private static int parseInt(String s, int lineNum) throws MipsException {
+        try {
+            String t = s.trim();
+            boolean neg = t.startsWith("-");
+            if (neg || t.startsWith("+")) {
+                t = t.substring(1);
+            }
+            long v;
+            if (t.startsWith("0x") || t.startsWith("0X")) {
+                v = Long.parseLong(t.substring(2), 16);
+            } else {
+                v = Long.parseLong(t);
+            }
+            return (int)(neg ? -v : v);
+        } catch (NumberFormatException ex) {
+            throw new MipsException(lineNum, "bad number " + s);
+        }
+    }
+
+    private static int parseReg(String s, int lineNum) throws MipsException {
+        if (!s.startsWith("$")) {
+            throw new MipsException(lineNum, "expected register, got " + s);
+        }
+        String name = s.substring(1);
+        if (name.length() > 0 && Character.isDigit(name.charAt(0))) {
+            int n = parseInt(name, lineNum);
+            if (n >= 0 && n < 32) {
+                return n;
+            }
+        }
+        if (name.equals("s8")) {
+            return FP;
+        }
+        for (int k = 0; k < REG_NAMES.length; k++) {
+            if (REG_NAMES[k].equals(name)) {
+                return k;
+            }
+        }
+        throw new MipsException(lineNum, "unknown register " + s);
+    }
+
+    private static boolean isReg(String s) {
+        return s.startsWith("$");
+    }
+
+    private static boolean fits16(int v) {
+        return v >= -32768 && v <= 65535;
+    }
+
+    // add one decoded instruction to the text segment
+    private int emit(int op, int a, int b, int c, int w, int lineNum) {
+        if (textLen == ops.length) {
+            int n = ops.length * 2;
+            ops = Arrays.copyOf(ops, n);
+            ra = Arrays.copyOf(ra, n);
+            rb = Arrays.copyOf(rb, n);
+            rc = Arrays.copyOf(rc, n);
+            weight = Arrays.copyOf(weight, n);
+            srcLine = Arrays.copyOf(srcLine, n);
+        }
+        ops[textLen] = op;
+        ra[textLen] = a;
+        rb[textLen] = b;
+        rc[textLen] = c;
+        weight[textLen] = w;
+        srcLine[textLen] = lineNum;
+        return textLen++;
+    }
+
+    // operand c of instruction idx names a label to resolve later
+    private void fixup(int idx, String label, int lineNum) {
+        fixups.add(new Fixup(label, idx, lineNum));
+    }
+
+    private void instruction(String opcode, String[] args, int lineNum)
+            throws MipsException {
+        int n = args.length;
+        switch (opcode) {
+            case "nop":
+                emit(NOP, 0, 0, 0, 1, lineNum);
+                return;
+            case "syscall":
+                emit(SYSCALL, 0, 0, 0, 1, lineNum);
+                return;
+            case "break":
+                emit(BREAK, 0, 0, 0, 1, lineNum);
+                return;
+
+            // three-operand ALU ops (the last operand may be an immediate,
+            // and the two-operand form means "rd = rd op src")
+            case "add":  alu(ADD, ADDI, args, lineNum, 1); return;
+            case "addi": alu(ADDI, ADDI, args, lineNum, 1); return;
+            case "addu": alu(ADDU, ADDIU, args, lineNum, 1); return;
+            case "addiu": alu(ADDIU, ADDIU, args, lineNum, 1); return;
+            case "sub":  alu(SUB, SUBI, args, lineNum, 1); return;
+            case "subu": alu(SUBU, SUBIU, args, lineNum, 1); return;
+            case "mul":  alu(MUL, MULI, args, lineNum, 1); return;
+            case "and":  alu(AND, ANDI, args, lineNum, 1); return;
+            case "andi": alu(ANDI, ANDI, args, lineNum, 1); return;
+            case "or":   alu(OR, ORI, args, lineNum, 1); return;
+            case "ori":  alu(ORI, ORI, args, lineNum, 1); return;
+            case "xor":  alu(XOR, XORI, args, lineNum, 1); return;
+            case "xori": alu(XORI, XORI, args, lineNum, 1); return;
+            case "nor":  alu(NOR, NORI, args, lineNum, 1); return;
+            case "slt":  alu(SLT, SLTI, args, lineNum, 1); return;
+            case "slti": alu(SLTI, SLTI, args, lineNum, 1); return;
+            case "sltu": alu(SLTU, SLTIU, args, lineNum, 1); return;
+            case "sltiu": alu(SLTIU, SLTIU, args, lineNum, 1); return;
+            case "seq":  alu(SEQ, SEQI, args, lineNum, 3); return;
+            case "sne":  alu(SNE, SNEI, args, lineNum, 3); return;
+            case "sgt":  alu(SGT, SGTI, args, lineNum, 1); return;
+            case "sge":  alu(SGE, SGEI, args, lineNum, 3); return;
+            case "sle":  alu(SLE, SLEI, args, lineNum, 3); return;
+            case "sllv": alu(SLLV, SLL, args, lineNum, 1); return;
+            case "sll":  alu(SLLV, SLL, args, lineNum, 1); return;
+            case "srlv": alu(SRLV, SRL, args, lineNum, 1); return;
+            case "srl":  alu(SRLV, SRL, args, lineNum, 1); return;
+            case "srav": alu(SRAV, SRA, args, lineNum, 1); return;
+            case "sra":  alu(SRAV, SRA, args, lineNum, 1); return;
+            case "rem":  alu(REM3, REM3I, args, lineNum, 4); return;
+            case "remu": alu(REMU3, REMU3, args, lineNum, 4); return;
+
+            case "div":
+            case "divu":
+                if (n == 2) {
+                    emit(opcode.equals("div") ? DIV : DIVU,
+                         parseReg(args[0], lineNum),
+                         parseReg(args[1], lineNum), 0, 1, lineNum);
+                } else if (opcode.equals("div")) {
+                    alu(DIV3, DIV3I, args, lineNum, 4);
+                } else {
+                    alu(DIVU3, DIVU3, args, lineNum, 4);
+                }
+                return;
+            case "mult":
+            case "multu":
+                expect(args, 2, opcode, lineNum);
+                emit(opcode.equals("mult") ? MULT : MULTU,
+                     parseReg(args[0], lineNum),
+                     parseReg(args[1], lineNum), 0, 1, lineNum);
+                return;
+            case "mflo":
+            case "mfhi":
+            case "mtlo":
+            case "mthi":
+                expect(args, 1, opcode, lineNum);
+                emit(opcode.equals("mflo") ? MFLO : opcode.equals("mfhi") ? MFHI
+                     : opcode.equals("mtlo") ? MTLO : MTHI,
+                     parseReg(args[0], lineNum), 0, 0, 1, lineNum);
+                return;
+
+            case "li": {
+                expect(args, 2, opcode, lineNum);
+                int v = parseInt(args[1], lineNum);
+                emit(LI, parseReg(args[0], lineNum), 0, v, fits16(v) ? 1 : 2,
+                     lineNum);
+                return;
+            }
+            case "lui":
+                expect(args, 2, opcode, lineNum);
+                emit(LUI, parseReg(args[0], lineNum), 0,
+                     parseInt(args[1], lineNum) << 16, 1, lineNum);
+                return;
+            case "la":
+                expect(args, 2, opcode, lineNum);
+                memory(LA, args, lineNum);
+                return;
+            case "move":
+            case "neg":
+            case "negu":
+            case "not":
+            case "abs":
+                expect(args, 2, opcode, lineNum);
+                emit(opcode.equals("move") ? MOVE : opcode.equals("not") ? NOT
+                     : opcode.equals("abs") ? ABS : NEG,
+                     parseReg(args[0], lineNum), parseReg(args[1], lineNum), 0,
+                     opcode.equals("abs") ? 3 : 1, lineNum);
+                return;
+
+            case "lw":  expect(args, 2, opcode, lineNum); memory(LW, args, lineNum); return;
+            case "sw":  expect(args, 2, opcode, lineNum); memory(SW, args, lineNum); return;
+            case "lb":  expect(args, 2, opcode, lineNum); memory(LB, args, lineNum); return;
+            case "lbu": expect(args, 2, opcode, lineNum); memory(LBU, args, lineNum); return;
+            case "sb":  expect(args, 2, opcode, lineNum); memory(SB, args, lineNum); return;
+            case "lh":  expect(args, 2, opcode, lineNum); memory(LH, args, lineNum); return;
+            case "lhu": expect(args, 2, opcode, lineNum); memory(LHU, args, lineNum); return;
+            case "sh":  expect(args, 2, opcode, lineNum); memory(SH, args, lineNum); return;
+
+            case "beq":  branch(BEQ, BEQI, args, lineNum, 1); return;
+            case "bne":  branch(BNE, BNEI, args, lineNum, 1); return;
+            case "blt":  branch(BLT, BLTI, args, lineNum, 2); return;
+            case "bgt":  branch(BGT, BGTI, args, lineNum, 2); return;
+            case "ble":  branch(BLE, BLEI, args, lineNum, 2); return;
+            case "bge":  branch(BGE, BGEI, args, lineNum, 2); return;
+            case "bltu": branch(BLTU, BLTU, args, lineNum, 2); return;
+            case "bgtu": branch(BGTU, BGTU, args, lineNum, 2); return;
+            case "bleu": branch(BLEU, BLEU, args, lineNum, 2); return;
+            case "bgeu": branch(BGEU, BGEU, args, lineNum, 2); return;
+            case "beqz": zbranch(BEQZ, args, lineNum); return;
+            case "bnez": zbranch(BNEZ, args, lineNum); return;
+            case "bltz": zbranch(BLTZ, args, lineNum); return;
+            case "bgtz": zbranch(BGTZ, args, lineNum); return;
+            case "blez": zbranch(BLEZ, args, lineNum); return;
+            case "bgez": zbranch(BGEZ, args, lineNum); return;
+
+            case "b":
+            case "j":
+            case "jal": {
+                expect(args, 1, opcode, lineNum);
+                int idx = emit(opcode.equals("jal") ? JAL
+                               : opcode.equals("j") ? J : B,
+                               0, 0, 0, 1, lineNum);
+                fixup(idx, args[0], lineNum);
+                return;
+            }
+            case "jr":
+                expect(args, 1, opcode, lineNum);
+                emit(JR, parseReg(args[0], lineNum), 0, 0, 1, lineNum);
+                return;
+            case "jalr":
+                emit(JALR, n == 2 ? parseReg(args[0], lineNum) : RA,
+                     parseReg(args[n - 1], lineNum), 0, 1, lineNum);
+                return;
+
+            default:
+                throw new MipsException(lineNum, "unsupported instruction "
+                                        + opcode);
+        }
+    }
+
+    private static void expect(String[] args, int n, String opcode,
+                               int lineNum) throws MipsException {
+        if (args.length != n) {
+            throw new MipsException(lineNum, opcode + " takes " + n
+                                    + " operands");
+        }
+    }
+
+    private void alu(int regOp, int immOp, String[] args, int lineNum,
+                     int w) throws MipsException {
+        if (args.length != 2 && args.length != 3) {
+            throw new MipsException(lineNum, "bad operand count");
+        }
+        int rd = parseReg(args[0], lineNum);
+        int rs = args.length == 3 ? parseReg(args[1], lineNum) : rd;
+        String src = args[args.length - 1];
+        if (isReg(src) && regOp != immOp) {
+            emit(regOp, rd, rs, parseReg(src, lineNum), w, lineNum);
+        } else if (isReg(src)) {
+            throw new MipsException(lineNum, "immediate operand expected");
+        } else {
+            int v = parseInt(src, lineNum);
+            emit(immOp, rd, rs, v, fits16(v) ? w : w + 2, lineNum);
+        }
+    }
+
+    // lw/sw/la and friends: "off(reg)", "(reg)", "label", "label+off"
+    // or "label(reg)"
+    private void memory(int op, String[] args, int lineNum)
+            throws MipsException {
+        int rt = parseReg(args[0], lineNum);
+        String addr = args[1];
+        int paren = addr.indexOf('(');
+        int base = -1;
+        String disp = addr;
+        if (paren >= 0) {
+            base = parseReg(addr.substring(paren + 1, addr.indexOf(')')).trim(),
+                            lineNum);
+            disp = addr.substring(0, paren).trim();
+        }
+        if (disp.length() == 0 || isNumber(disp)) {
+            int off = disp.length() == 0 ? 0 : parseInt(disp, lineNum);
+            emit(op, rt, base < 0 ? ZERO : base, off,
+                 fits16(off) ? 1 : 3, lineNum);
+        } else {
+            int idx = emit(op, rt, base < 0 ? ZERO : base, 0,
+                           op == LA && base >= 0 ? 3 : 2, lineNum);
+            fixup(idx, disp, lineNum);
+        }
+    }
+
+    private void branch(int regOp, int immOp, String[] args, int lineNum,
+                        int w) throws MipsException {
+        expect(args, 3, "branch", lineNum);
+        int rs = parseReg(args[0], lineNum);
+        int idx;
+        if (isReg(args[1])) {
+            idx = emit(regOp, rs, parseReg(args[1], lineNum), 0, w, lineNum);
+        } else if (regOp != immOp) {
+            idx = emit(immOp, rs, parseInt(args[1], lineNum), 0, w + 1,
+                       lineNum);
+        } else {
+            throw new MipsException(lineNum, "register operand expected");
+        }
+        fixup(idx, args[2], lineNum);
+    }
+
+    private void zbranch(int op, String[] args, int lineNum)
+            throws MipsException {
+        expect(args, 2, "branch", lineNum);
+        int idx = emit(op, parseReg(args[0], lineNum), 0, 0, 1, lineNum);
+        fixup(idx, args[1], lineNum);
+    }
+
+    private void resolveFixups() throws MipsException {
+        for (Fixup f : fixups) {
+            String label = f.label;
+            int idx = f.idx;
+            int lineNum = f.lineNum;
+            int off = 0;
+            int plus = label.lastIndexOf('+');
+            if (plus > 0) {
+                off = parseInt(label.substring(plus + 1), lineNum);
+                label = label.substring(0, plus).trim();
+            }
+            Integer addr = labels.get(label);
+            if (addr == null) {
+                throw new MipsException(lineNum, "undefined label " + label);
+            }
+            if (idx < 0) {      // a .word in the data segment
+                storeWord(DATA_BASE + (-1 - idx), addr + off);
+                continue;
+            }
+            switch (ops[idx]) {
+                case B: case J: case JAL:
+                case BEQ: case BEQI: case BNE: case BNEI: case BLT:
+                case BLTI: case BGT: case BGTI: case BLE: case BLEI:
+                case BGE: case BGEI: case BLTU: case BGTU: case BLEU:
+                case BGEU: case BEQZ: case BNEZ: case BLTZ: case BGTZ:
+                case BLEZ: case BGEZ:
+                    if (!isText(addr)) {
+                        throw new MipsException(lineNum, "branch to data label "
+                                                + label);
+                    }
+                    rc[idx] = (addr - TEXT_BASE) >> 2;
+                    break;
+                default:
+                    rc[idx] = addr + off;
+                    break;
+            }
+        }
+        fixups.clear();
+    }
+
+    private boolean isText(int addr) {
+        return addr >= TEXT_BASE && addr < TEXT_BASE + 4 * (textLen + 1);
+    }
+
+    // **********************************************************************
+    // memory access
+    // **********************************************************************
+
+    private byte[] segment;
+    private int segOff;
+
+    // point segment/segOff at the byte for addr, checking bounds
+    private void locate(int addr, int size) throws MipsException {
+        if (addr >= STACK_BASE && addr <= STACK_END - size) {
+            segment = stack;
+            segOff = addr - STACK_BASE;
+        } else if (addr >= DATA_BASE && addr <= DATA_BASE + dataLen - size) {
+            segment = data;
+            segOff = addr - DATA_BASE;
+        } else {
+            throw runtimeError("bad address 0x" + Integer.toHexString(addr));
+        }
+        if ((addr & (size - 1)) != 0) {
+            throw runtimeError("unaligned address 0x"
+                               + Integer.toHexString(addr));
+        }
+    }
+
+    private int loadWord(int addr) throws MipsException {
+        locate(addr, 4);
+        byte[] m = segment;
+        int o = segOff;
+        return (m[o] & 0xff) | (m[o + 1] & 0xff) << 8 | (m[o + 2] & 0xff) << 16
+               | m[o + 3] << 24;
+    }
+
+    private void storeWord(int addr, int v) {
+        try {
+            locate(addr, 4);
+        } catch (MipsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] m = segment;
+        int o = segOff;
+        m[o] = (byte)v;
+        m[o + 1] = (byte)(v >> 8);
+        m[o + 2] = (byte)(v >> 16);
+        m[o + 3] = (byte)(v >> 24);
+    }
+
+    private int loadByte(int addr) throws MipsException {
+        locate(addr, 1);
+        return segment[segOff];
+    }
+
+    private void storeByte(int addr, int v) throws MipsException {
+        locate(addr, 1);
+        segment[segOff] = (byte)v;
+    }
+
+    private int loadHalf(int addr) throws MipsException {
+        locate(addr, 2);
+        return (short)((segment[segOff] & 0xff) | segment[segOff + 1] << 8);
+    }
+
+    private void storeHalf(int addr, int v) throws MipsException {
+        locate(addr, 2);
+        segment[segOff] = (byte)v;
+        segment[segOff + 1] = (byte)(v >> 8);
+    }
+
+    private String loadString(int addr) throws MipsException {
+        StringBuilder b = new StringBuilder();
+        for (int c = loadByte(addr); c != 0; c = loadByte(++addr)) {
+            b.append((char)(c & 0xff));
+        }
+        return b.toString();
+    }
+
+    private MipsException runtimeError(String msg) {
+        int line = pc >= 0 && pc < textLen ? srcLine[pc] : 0;
+        return new MipsException(line, msg);
+    }
+
+    // **********************************************************************
+    // execution
+    // **********************************************************************
+
+    private void execute() throws MipsException {
+        final int[] r = regs;
+        final int[] ops = this.ops, ra = this.ra, rb = this.rb, rc = this.rc;
+        while (!halted) {
+            if (pc < 0 || pc >= textLen) {
+                if (pc == textLen) {    // fell off the end / returned from main
+                    return;
+                }
+                throw runtimeError("pc out of text segment");
+            }
+            if (instructions >= limit) {
+                throw new LimitExceededException(instructions);
+            }
+            int i = pc++;
+            int a = ra[i], b = rb[i], c = rc[i];
+            instructions++;
+            machineInstructions += weight[i];
+            switch (ops[i]) {
+                case NOP: break;
+                case ADD: r[a] = addTrap(r[b], r[c]); break;
+                case ADDI: r[a] = addTrap(r[b], c); break;
+                case ADDU: r[a] = r[b] + r[c]; break;
+                case ADDIU: r[a] = r[b] + c; break;
+                case SUB: r[a] = subTrap(r[b], r[c]); break;
+                case SUBI: r[a] = subTrap(r[b], c); break;
+                case SUBU: r[a] = r[b] - r[c]; break;
+                case SUBIU: r[a] = r[b] - c; break;
+                case MUL: r[a] = r[b] * r[c]; break;
+                case MULI: r[a] = r[b] * c; break;
+                case AND: r[a] = r[b] & r[c]; break;
+                case ANDI: r[a] = r[b] & (c & 0xffff); break;
+                case OR: r[a] = r[b] | r[c]; break;
+                case ORI: r[a] = r[b] | (c & 0xffff); break;
+                case XOR: r[a] = r[b] ^ r[c]; break;
+                case XORI: r[a] = r[b] ^ (c & 0xffff); break;
+                case NOR: r[a] = ~(r[b] | r[c]); break;
+                case NORI: r[a] = ~(r[b] | c); break;
+                case SLT: r[a] = r[b] < r[c] ? 1 : 0; break;
+                case SLTI: r[a] = r[b] < c ? 1 : 0; break;
+                case SLTU: r[a] = Integer.compareUnsigned(r[b], r[c]) < 0 ? 1 : 0; break;
+                case SLTIU: r[a] = Integer.compareUnsigned(r[b], c) < 0 ? 1 : 0; break;
+                case SEQ: r[a] = r[b] == r[c] ? 1 : 0; break;
+                case SEQI: r[a] = r[b] == c ? 1 : 0; break;
+                case SNE: r[a] = r[b] != r[c] ? 1 : 0; break;
+                case SNEI: r[a] = r[b] != c ? 1 : 0; break;
+                case SGT: r[a] = r[b] > r[c] ? 1 : 0; break;
+                case SGTI: r[a] = r[b] > c ? 1 : 0; break;
+                case SGE: r[a] = r[b] >= r[c] ? 1 : 0; break;
+                case SGEI: r[a] = r[b] >= c ? 1 : 0; break;
+                case SLE: r[a] = r[b] <= r[c] ? 1 : 0; break;
+                case SLEI: r[a] = r[b] <= c ? 1 : 0; break;
+                case SLLV: r[a] = r[b] << r[c]; break;
+                case SLL: r[a] = r[b] << c; break;
+                case SRLV: r[a] = r[b] >>> r[c]; break;
+                case SRL: r[a] = r[b] >>> c; break;
+                case SRAV: r[a] = r[b] >> r[c]; break;
+                case SRA: r[a] = r[b] >> c; break;
+                case DIV3: r[a] = divide(r[b], r[c]); break;
+                case DIV3I: r[a] = divide(r[b], c); break;
+                case REM3: checkDivisor(r[c]); r[a] = r[b] % r[c]; break;
+                case REM3I: checkDivisor(c); r[a] = r[b] % c; break;
+                case DIVU3: checkDivisor(r[c]); r[a] = Integer.divideUnsigned(r[b], r[c]); break;
+                case REMU3: checkDivisor(r[c]); r[a] = Integer.remainderUnsigned(r[b], r[c]); break;
+                case MULT: {
+                    long p = (long)r[a] * r[b];
+                    lo = (int)p;
+                    hi = (int)(p >> 32);
+                    break;
+                }
+                case MULTU: {
+                    long p = (r[a] & 0xffffffffL) * (r[b] & 0xffffffffL);
+                    lo = (int)p;
+                    hi = (int)(p >> 32);
+                    break;
+                }
+                case DIV:
+                    // MIPS leaves hi/lo undefined on divide by zero; SPIM
+                    // just carries on, and so do we
+                    if (r[b] != 0) {
+                        lo = r[a] / r[b];
+                        hi = r[a] % r[b];
+                    }
+                    break;
+                case DIVU:
+                    if (r[b] != 0) {
+                        lo = Integer.divideUnsigned(r[a], r[b]);
+                        hi = Integer.remainderUnsigned(r[a], r[b]);
+                    }
+                    break;
+                case MFLO: r[a] = lo; break;
+                case MFHI: r[a] = hi; break;
+                case MTLO: lo = r[a]; break;
+                case MTHI: hi = r[a]; break;
+                case LI: r[a] = c; break;
+                case LUI: r[a] = c; break;
+                case LA: r[a] = r[b] + c; break;
+                case MOVE: r[a] = r[b]; break;
+                case NEG: r[a] = -r[b]; break;
+                case NOT: r[a] = ~r[b]; break;
+                case ABS: r[a] = Math.abs(r[b]); break;
+                case LW: loads++; r[a] = loadWord(r[b] + c); break;
+                case LB: loads++; r[a] = loadByte(r[b] + c); break;
+                case LBU: loads++; r[a] = loadByte(r[b] + c) & 0xff; break;
+                case LH: loads++; r[a] = loadHalf(r[b] + c); break;
+                case LHU: loads++; r[a] = loadHalf(r[b] + c) & 0xffff; break;
+                case SW: stores++; storeWordChecked(r[b] + c, r[a]); break;
+                case SB: stores++; storeByte(r[b] + c, r[a]); break;
+                case SH: stores++; storeHalf(r[b] + c, r[a]); break;
+                case BEQ: cond(r[a] == r[b], c); break;
+                case BEQI: cond(r[a] == b, c); break;
+                case BNE: cond(r[a] != r[b], c); break;
+                case BNEI: cond(r[a] != b, c); break;
+                case BLT: cond(r[a] < r[b], c); break;
+                case BLTI: cond(r[a] < b, c); break;
+                case BGT: cond(r[a] > r[b], c); break;
+                case BGTI: cond(r[a] > b, c); break;
+                case BLE: cond(r[a] <= r[b], c); break;
+                case BLEI: cond(r[a] <= b, c); break;
+                case BGE: cond(r[a] >= r[b], c); break;
+                case BGEI: cond(r[a] >= b, c); break;
+                case BLTU: cond(Integer.compareUnsigned(r[a], r[b]) < 0, c); break;
+                case BGTU: cond(Integer.compareUnsigned(r[a], r[b]) > 0, c); break;
+                case BLEU: cond(Integer.compareUnsigned(r[a], r[b]) <= 0, c); break;
+                case BGEU: cond(Integer.compareUnsigned(r[a], r[b]) >= 0, c); break;
+                case BEQZ: cond(r[a] == 0, c); break;
+                case BNEZ: cond(r[a] != 0, c); break;
+                case BLTZ: cond(r[a] < 0, c); break;
+                case BGTZ: cond(r[a] > 0, c); break;
+                case BLEZ: cond(r[a] <= 0, c); break;
+                case BGEZ: cond(r[a] >= 0, c); break;
+                case B: branches++; branchesTaken++; pc = c; break;
+                case J: jumps++; pc = c; break;
+                case JAL:
+                    jumps++;
+                    r[RA] = TEXT_BASE + 4 * pc;
+                    pc = c;
+                    break;
+                case JR:
+                    jumps++;
+                    pc = textIndex(r[a]);
+                    break;
+                case JALR: {
+                    jumps++;
+                    int target = r[b];
+                    r[a] = TEXT_BASE + 4 * pc;
+                    pc = textIndex(target);
+                    break;
+                }
+                case SYSCALL: syscall(); break;
+                case BREAK: throw runtimeError("break");
+                default:
+                    throw runtimeError("bad opcode " + ops[i]);
+            }
+            r[ZERO] = 0;
+        }
+    }
+
+    private void cond(boolean taken, int target) {
+        branches++;
+        if (taken) {
+            branchesTaken++;
+            pc = target;
+        }
+    }
+
+    private int textIndex(int addr) throws MipsException {
+        if (!isText(addr) || (addr & 3) != 0) {
+            throw runtimeError("jump to bad address 0x"
+                               + Integer.toHexString(addr));
+        }
+        return (addr - TEXT_BASE) >> 2;
+    }
+
+    private void storeWordChecked(int addr, int v) throws MipsException {
+        locate(addr, 4);
+        byte[] m = segment;
+        int o = segOff;
+        m[o] = (byte)v;
+        m[o + 1] = (byte)(v >> 8);
+        m[o + 2] = (byte)(v >> 16);
+        m[o + 3] = (byte)(v >> 24);
+    }
+
+    private int addTrap(int x, int y) throws MipsException {
+        int s = x + y;
+        if (((x ^ s) & (y ^ s)) < 0) {
+            throw runtimeError("arithmetic overflow");
+        }
+        return s;
+    }
+
+    private int subTrap(int x, int y) throws MipsException {
+        int s = x - y;
+        if (((x ^ y) & (x ^ s)) < 0) {
+            throw runtimeError("arithmetic overflow");
+        }
+        return s;
+    }
+
+    private void checkDivisor(int d) throws MipsException {
+        if (d == 0) {
+            throw runtimeError("division by zero");
+        }
+    }
+
+    private int divide(int x, int y) throws MipsException {
+        checkDivisor(y);
+        return x / y;
+    }
+
+    private void syscall() throws MipsException {
+        syscalls++;
+        switch (regs[V0]) {
+            case 1:     // print int
+                out.print(regs[A0]);
+                break;
+            case 4:     // print string
+                out.print(loadString(regs[A0]));
+                break;
+            case 5:     // read int
+                regs[V0] = readInt();
+                break;
+            case 8:     // read string
+                readString(regs[A0], regs[A1]);
+                break;
+            case 9: {   // sbrk
+                int addr = DATA_BASE + ((dataLen + 7) & ~7);
+                reserve(addr - DATA_BASE - dataLen + Math.max(regs[A0], 0));
+                regs[V0] = addr;
+                break;
+            }
+            case 10:    // exit
+                halted = true;
+                exitCode = 0;
+                break;
+            case 11:    // print char
+                out.print((char)(regs[A0] & 0xff));
+                break;
+            case 12:    // read char
+                try {
+                    out.flush();
+                    regs[V0] = in.read();
+                } catch (IOException ex) {
+                    regs[V0] = -1;
+                }
+                break;
+            case 17:    // exit2
+                halted = true;
+                exitCode = regs[A0];
+                break;
+            default:
+                throw runtimeError("unsupported syscall " + regs[V0]);
+        }
+    }
+
+    private int readInt() {
+        out.flush();
+        try {
+            String line = in.readLine();
+            if (line == null) {
+                return 0;
+            }
+            line = line.trim();
+            int end = 0;
+            while (end < line.length() && (Character.isDigit(line.charAt(end))
+                   || (end == 0 && (line.charAt(0) == '-'
+                                    || line.charAt(0) == '+')))) {
+                end++;
+            }
+            return (int)Long.parseLong(line.substring(0, end));
+        } catch (IOException | NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private void readString(int addr, int max) throws MipsException {
+        out.flush();
+        String line;
+        try {
+            line = in.readLine();
+        } catch (IOException ex) {
+            line = null;
+        }
+        if (line == null) {
+            line = "";
+        } else {
+            line += "\n";
+        }
+        int k = 0;
+        for (; k < line.length() && k < max - 1; k++) {
+            storeByte(addr + k, line.charAt(k));
+        }
+        if (max > 0) {
+            storeByte(addr + k, 0);
+        }
+    }
+
+    // **********************************************************************
+    // errors
+    // **********************************************************************
+
+    // a label use waiting for the label to be defined: operand c of
+    // instruction idx, or (if idx < 0) the data word at offset -1 - idx
+    private static class Fixup {
+        String label;
+        int idx;
+        int lineNum;
+
+        Fixup(String label, int idx, int lineNum) {
+            this.label = label;
+            this.idx = idx;
+            this.lineNum = lineNum;
+        }
+    }
+
+    public static class MipsException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private int lineNum;
+
+        public MipsException(int lineNum, String msg) {
+            super(msg);
+            this.lineNum = lineNum;
+        }
+
+        public int getLineNum() {
+            return lineNum;
+        }
+
+        @Override
+        public String getMessage() {
+            return "line " + lineNum + ": " + super.getMessage();
+        }
+    }
+
+    public static class LimitExceededException extends MipsException {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(long count) {
+            super(0, "instruction limit exceeded after " + count
+                  + " instructions");
+        }
+    }
+
+    // **********************************************************************
+    // command line
+    // **********************************************************************
+
+    public static void main(String[] args) {
+        boolean stats = false;
+        long limit = Long.MAX_VALUE;
+        String file = null;
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-stats")) {
+                stats = true;
+            } else if (args[k].equals("-limit") && k + 1 < args.length) {
+                limit = Long.parseLong(args[++k]);
+            } else {
+                file = args[k];
+            }
+        }
+        if (file == null) {
+            System.err.println("please supply name of the MIPS file to run.");
+            System.exit(-1);
+        }
+
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)),
+            false);
+        MipsSim sim = new MipsSim(System.in, out);
+        sim.setLimit(limit);
+        int result = RESULT_CORRECT;
+        try (Reader reader = new FileReader(file)) {
+            sim.load(reader);
+        } catch (IOException ex) {
+            System.err.println("Could not open " + file + " for reading");
+            System.exit(RESULT_LOAD_ERROR);
+        } catch (MipsException ex) {
+            System.err.println(file + ": " + ex.getMessage());
+            System.exit(RESULT_LOAD_ERROR);
+        }
+
+        try {
+            sim.run();
+        } catch (LimitExceededException ex) {
+            System.err.println(ex.getMessage());
+            result = RESULT_LIMIT_EXCEEDED;
+        } catch (MipsException ex) {
+            System.err.println("runtime error at " + ex.getMessage());
+            result = RESULT_RUNTIME_ERROR;
+        }
+        out.flush();
+        if (stats) {
+            sim.printStats(System.err);
+        }
+        System.exit(result != RESULT_CORRECT ? result : sim.getExitCode());
+    }
+}
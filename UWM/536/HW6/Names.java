@@ -0,0 +1,189 @@
+import java.util.*;
+
+// **********************************************************************
+// The Names class interns identifiers: each distinct name gets a dense
+// int id (0, 1, 2, ...) and one shared String.  The scanner interns
+// every identifier straight from its buffer, so an identifier token does
+// not allocate a String, and IdNode and SymTable work with the ids.
+//
+// A pool is an open-addressing hash table of ids, keyed by the chars of
+// the name with String's hash function, so intern(String) can use the
+// hash the String already has.  The static methods use the program's
+// pool, whose ids stay valid until reset, which P6.compile calls before
+// each file.  ChunkedScan gives each piece of the file a pool of its own,
+// and TokenBuffer.append maps its ids to the program's.
+//
+// There are no locks: a pool is filled by one thread at a time (the
+// scanner's, then the one that does name analysis), and name may be
+// called from any thread that was handed the id, since while a file is
+// compiled names is only ever replaced by a larger copy.
+// **********************************************************************
+
+public class Names {
+    // how big a new pool's arrays are
+    private static final int SLOTS = 1024;
+    private static final int NAMES = 256;
+
+    // the program's pool
+    private static final Names pool = new Names();
+
+    // slots[h] is 1 + the id of a name whose hash probes to h, or 0
+    private int[] slots = new int[SLOTS];
+    private volatile String[] names = new String[NAMES];
+    private int[] hashes = new int[NAMES];
+    private int count = 0;
+
+    /**
+     * The id in the program's pool of the name in buf[off] through
+     * buf[off + len - 1].
+     */
+    public static int intern(char[] buf, int off, int len) {
+        return pool.id(buf, off, len);
+    }
+
+    /**
+     * The id of name in the program's pool.
+     */
+    public static int intern(String name) {
+        return pool.id(name);
+    }
+
+    /**
+     * The name whose id in the program's pool is id.
+     */
+    public static String name(int id) {
+        return pool.get(id);
+    }
+
+    /**
+     * The number of names in the program's pool; every id is less than
+     * this.
+     */
+    public static int size() {
+        return pool.count();
+    }
+
+    /**
+     * Forget every name in the program's pool, for compiling another file.
+     */
+    public static void reset() {
+        pool.clear();
+    }
+
+    /**
+     * The program's pool.
+     */
+    public static Names program() {
+        return pool;
+    }
+
+    /**
+     * The id in this pool of the name in buf[off] through
+     * buf[off + len - 1].
+     */
+    public int id(char[] buf, int off, int len) {
+        int hash = 0;
+        for (int k = off; k < off + len; k++) {
+            hash = 31 * hash + buf[k];
+        }
+        String[] names = this.names;
+        int mask = slots.length - 1;
+        for (int h = mix(hash) & mask; ; h = (h + 1) & mask) {
+            int id = slots[h] - 1;
+            if (id < 0) {
+                return add(new String(buf, off, len), hash, h);
+            }
+            if (hashes[id] == hash && matches(names[id], buf, off, len)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * The id of name in this pool.
+     */
+    public int id(String name) {
+        int hash = name.hashCode();
+        String[] names = this.names;
+        int mask = slots.length - 1;
+        for (int h = mix(hash) & mask; ; h = (h + 1) & mask) {
+            int id = slots[h] - 1;
+            if (id < 0) {
+                return add(name, hash, h);
+            }
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * The name whose id in this pool is id.
+     */
+    public String get(int id) {
+        return names[id];
+    }
+
+    /**
+     * The number of names in this pool.
+     */
+    public int count() {
+        return count;
+    }
+
+    // forget every name, and drop the space a large file took
+    private void clear() {
+        if (slots.length > SLOTS) {
+            slots = new int[SLOTS];
+            names = new String[NAMES];
+            hashes = new int[NAMES];
+        } else {
+            Arrays.fill(slots, 0);
+            Arrays.fill(names, 0, count, null);
+        }
+        count = 0;
+    }
+
+    // add name, whose hash is hash, in slot h
+    private int add(String name, int hash, int h) {
+        if (count == hashes.length) {
+            names = Arrays.copyOf(names, 2 * count);
+            hashes = Arrays.copyOf(hashes, 2 * count);
+        }
+        int id = count++;
+        names[id] = name;
+        hashes[id] = hash;
+        slots[h] = id + 1;
+
+        // keep the table at most half full
+        if (2 * count > slots.length) {
+            slots = new int[2 * slots.length];
+            int mask = slots.length - 1;
+            for (int k = 0; k < count; k++) {
+                int s = mix(hashes[k]) & mask;
+                while (slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[s] = k + 1;
+            }
+        }
+        return id;
+    }
+
+    private static boolean matches(String name, char[] buf, int off, int len) {
+        if (name.length() != len) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            if (name.charAt(k) != buf[off + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // spread the bits of hash, since names often differ only at the end
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,4 +1,8 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.concurrent.*;
 
 import java_cup.runtime.*;
 
@@ -7,23 +11,71 @@ import java_cup.runtime.*;
  *
  * There should be 2 command-line arguments:
  *    1. the file to be parsed
- *    2. the output MIPS file
+ *    2. the output MIPS file (a .class file with -jvm; not needed with
+ *       -vm or -jvmrun)
+ *
+ * They may be preceded by options:
+ *    -nofold   skip constant folding and propagation
+ *    -tac      generate code by way of the three-address-code IR
+ *    -vm       run the program in-process on the bytecode interpreter
+ *              instead of generating MIPS code
+ *    -jvm      generate a JVM class (named after the output file) instead
+ *              of MIPS code; run it with CmmRuntime on the class path
+ *    -jvmrun   generate the JVM class and run it in-process
+ *    -x86      generate x86-64 assembly for Linux instead of MIPS code;
+ *              link it with cmm_runtime.c (not with -tac, -vm, -jvm,
+ *              -jvmrun, -O, -stats, -g, -j or -cache)
+ *    -O        run the peephole optimizer over the generated code
+ *    -stats    print per-pattern peephole counts (or, with -vm, the number
+ *              of instructions run; with -cache, the hits and misses) to
+ *              stderr
+ *    -g LEVEL  how much source to echo in comments: none (the default),
+ *              line or full
+ *    -j N      scan large files in pieces, and type check and generate
+ *              code for the functions, on N threads (the output is the
+ *              same as with one)
+ *    -cache DIR  reuse the MIPS code of functions that have not changed
+ *              since an earlier compile with the same DIR (not with -tac,
+ *              -vm, -jvm, -jvmrun or -x86)
+ *    -pipe     scan, parse and check on three threads at once, one
+ *              top-level declaration at a time; see Pipeline (MIPS code
+ *              only, and not with -j or -cache)
+ *
+ * Alternatively, "P6 -server [socket]" keeps the compiler running and
+ * compiles a file for each request it gets on stdin or on the named
+ * Unix-domain socket; see CompileServer.  "P6 -batch [options] inputs"
+ * compiles many files, several at a time, in one JVM; see Batch.
  *
  * The program opens the two files, creates a scanner and a parser, and
  * calls the parser.  If the parse is successful, then it will call name
  * analysis and type checking routines. If there is no error at the end,
- * it will generate MIPS code to the output file.
+ * it will fold constants and generate MIPS code to the output file.
  */
 public class P6 {
-	FileReader inFile;
-	private PrintWriter outFile;
-	private static PrintStream outStream = System.err;
+	private FileChannel outFile;
+	private PrintStream outStream = System.err;
+	private boolean fold = true;
+	private boolean useTac = false;
+	private boolean runVm = false;
+	private boolean useJvm = false;
+	private boolean runJvm = false;
+	private boolean useX86 = false;
+	private String outName;
+	private boolean optimize = false;
+	private boolean printStats = false;
+	private int debugLevel = Codegen.DEBUG_NONE;
+	private int jobs = 1;
+	private String cacheDir = null;
+	private boolean pipeline = false;
+	private String inName;
+	private ExecutorService pool = null;
 
 	public static final int RESULT_CORRECT = 0;
 	public static final int RESULT_SYNTAX_ERROR = 1;
 	public static final int RESULT_TYPE_ERROR = 2;
 	public static final int RESULT_NAME_ANALYSIS_ERROR = 3;
 	public static final int RESULT_CODEGEN_ERROR = 4;
+	public static final int RESULT_RUNTIME_ERROR = 5;
 	public static final int RESULT_OTHER_ERROR = -1;
 
 	/**
@@ -38,24 +90,102 @@ public class P6 {
 	 * If we are directly invoking P6 from the command line, this
 	 * is the command line to use. It shouldn't be invoked from
 	 * outside the class (hence the private constructor) because
-	 * it
-	 * @param args command line args array for [<infile> <outfile>]
+	 * it exits on a bad command line
+	 * @param args command line args array for [options] [<infile> <outfile>]
 	 */
 	private P6(String[] args) {
+		try {
+			parseArgs(args);
+		} catch (BadArgsException e) {
+			pukeAndDie(e.getMessage());
+		}
+	}
+
+	/**
+	 * Set the options and open the files that a command line names
+	 * @param args command line args array for [options] [<infile> <outfile>]
+	 */
+	private void parseArgs(String[] args) throws BadArgsException {
+		//Parse options
+		int first = 0;
+		while (first < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-nofold")) {
+				setFold(false);
+			} else if (args[first].equals("-tac")) {
+				setUseTac(true);
+			} else if (args[first].equals("-vm")) {
+				setRunVm(true);
+			} else if (args[first].equals("-jvm")) {
+				setUseJvm(true);
+			} else if (args[first].equals("-jvmrun")) {
+				setRunJvm(true);
+			} else if (args[first].equals("-x86")) {
+				setUseX86(true);
+			} else if (args[first].equals("-O")) {
+				setOptimize(true);
+			} else if (args[first].equals("-stats")) {
+				setPrintStats(true);
+			} else if (args[first].equals("-pipe")) {
+				setPipeline(true);
+			} else if (args[first].equals("-g") && first + 1 < args.length) {
+				first++;
+				if (args[first].equals("none")) {
+					setDebugLevel(Codegen.DEBUG_NONE);
+				} else if (args[first].equals("line")) {
+					setDebugLevel(Codegen.DEBUG_LINE);
+				} else if (args[first].equals("full")) {
+					setDebugLevel(Codegen.DEBUG_FULL);
+				} else {
+					throw new BadArgsException("unknown debug level " + args[first]);
+				}
+			} else if (args[first].equals("-cache") && first + 1 < args.length) {
+				first++;
+				setCacheDir(args[first]);
+			} else if (args[first].equals("-j") && first + 1 < args.length) {
+				first++;
+				try {
+					setJobs(Integer.parseInt(args[first]));
+				} catch (IllegalArgumentException e) {
+					throw new BadArgsException("bad number of threads " + args[first]);
+				}
+			} else {
+				throw new BadArgsException("unknown option " + args[first]);
+			}
+			first++;
+		}
+
+		if (pipeline && (useTac || runVm || useJvm || runJvm || useX86
+				|| jobs > 1 || cacheDir != null)) {
+			throw new BadArgsException("-pipe cannot be used with -tac, -vm, "
+				+ "-jvm, -jvmrun, -x86, -j or -cache");
+		}
+		if (useX86 && (useTac || runVm || useJvm || runJvm || optimize
+				|| printStats || debugLevel != Codegen.DEBUG_NONE || jobs > 1
+				|| cacheDir != null)) {
+			throw new BadArgsException("-x86 cannot be used with -tac, -vm, "
+				+ "-jvm, -jvmrun, -O, -stats, -g, -j or -cache");
+		}
+		if (cacheDir != null && (useTac || runVm || useJvm || runJvm)) {
+			throw new BadArgsException("-cache cannot be used with -tac, -vm, "
+				+ "-jvm, -jvmrun or -x86");
+		}
+
 		//Parse arguments
-		if (args.length < 2) {
-			String msg = "please supply name of the input file "
-				+ "and name of file for assembly output.";
-			pukeAndDie(msg);
+		boolean running = runVm || runJvm;
+		if (args.length - first < (running ? 1 : 2)) {
+			throw new BadArgsException("please supply name of the input file "
+				+ "and name of file for assembly output.");
 		}
 
 		try {
-			setInfile(args[0]);
-			setOutfile(args[1]);
+			setInfile(args[first]);
+			if (!running) {
+				setOutfile(args[first + 1]);
+			}
 		} catch(BadInfileException e) {
-			pukeAndDie(e.getMessage());
+			throw new BadArgsException(e.getMessage());
 		} catch(BadOutfileException e) {
-			pukeAndDie(e.getMessage());
+			throw new BadArgsException(e.getMessage());
 		}
 	}
 
@@ -64,11 +194,17 @@ public class P6 {
 	 * @param filename path to source file
 	 */
 	public void setInfile(String filename) throws BadInfileException{
+		// the scanner opens the file itself; just make sure it can
+		Path path;
 		try {
-			inFile = new FileReader(filename);
-		} catch (FileNotFoundException ex) {
+			path = Paths.get(filename);
+		} catch (InvalidPathException ex) {
 			throw new BadInfileException(ex, filename);
 		}
+		if (!Files.isRegularFile(path) || !Files.isReadable(path)) {
+			throw new BadInfileException(null, filename);
+		}
+		inName = filename;
 	}
 
 	/**
@@ -77,31 +213,134 @@ public class P6 {
 	 */
 	public void setOutfile(String filename) throws BadOutfileException{
 		try {
-			outFile = new PrintWriter(filename);
+			outFile = new FileOutputStream(filename).getChannel();
+			outName = filename;
 		} catch (FileNotFoundException ex) {
 			throw new BadOutfileException(ex, filename);
 		}
 	}
 
+	/**
+	 * Fold constant expressions and prune constant branches before
+	 * code generation (on by default)
+	 * @param fold false to generate code for the program as written
+	 */
+	public void setFold(boolean fold) {
+		this.fold = fold;
+	}
+
+	/**
+	 * Lower the program to three-address code and select MIPS code from
+	 * that, instead of generating code straight from the AST
+	 * @param useTac true to go through the TAC IR
+	 */
+	public void setUseTac(boolean useTac) {
+		this.useTac = useTac;
+	}
+
+	/**
+	 * Compile the program to bytecode and run it with Vm (on stdin and
+	 * stdout) instead of generating MIPS code
+	 * @param runVm true to run the program
+	 */
+	public void setRunVm(boolean runVm) {
+		this.runVm = runVm;
+	}
+
+	/**
+	 * Generate a JVM class file instead of MIPS code
+	 * @param useJvm true to generate a class
+	 */
+	public void setUseJvm(boolean useJvm) {
+		this.useJvm = useJvm;
+	}
+
+	/**
+	 * Generate a JVM class and run it in-process (on stdin and stdout)
+	 * instead of generating MIPS code
+	 * @param runJvm true to run the program
+	 */
+	public void setRunJvm(boolean runJvm) {
+		this.runJvm = runJvm;
+	}
+
+	/**
+	 * Generate x86-64 assembly instead of MIPS code
+	 * @param useX86 true to generate x86-64 code
+	 */
+	public void setUseX86(boolean useX86) {
+		this.useX86 = useX86;
+	}
+
+	/**
+	 * Run the peephole optimizer over the generated code
+	 * @param optimize true to enable the peephole stage
+	 */
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+
+	/**
+	 * Print how often each peephole pattern fired
+	 * @param printStats true to print counts to stderr
+	 */
+	public void setPrintStats(boolean printStats) {
+		this.printStats = printStats;
+	}
+
+	/**
+	 * How much of the source to echo into the generated code as comments
+	 * @param debugLevel one of Codegen.DEBUG_NONE, DEBUG_LINE, DEBUG_FULL
+	 */
+	public void setDebugLevel(int debugLevel) {
+		this.debugLevel = debugLevel;
+	}
+
+	/**
+	 * How many threads scanning, type checking and code generation may use
+	 * @param jobs 1 (the default) to do everything on this thread
+	 */
+	public void setJobs(int jobs) {
+		if (jobs < 1) {
+			throw new IllegalArgumentException("jobs must be positive");
+		}
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Scan, parse and check the program in a pipeline, one top-level
+	 * declaration at a time (see Pipeline); only for MIPS code
+	 * @param pipeline true to use the pipeline
+	 */
+	public void setPipeline(boolean pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Keep the code generated for each function in dir, and reuse it
+	 * when compiling a function that has not changed
+	 * @param dir the cache directory, or null (the default) for no cache
+	 */
+	public void setCacheDir(String dir) {
+		this.cacheDir = dir;
+	}
+
 	/**
 	 * Perform cleanup at the end of parsing. This should be called
 	 * after both good and bad input so that the files are all in a
 	 * consistent state
 	 */
 	public void cleanup() {
-		if (inFile != null) {
+		if (outFile != null) {
 			try {
-				inFile.close();
+				outFile.close();
 			} catch (IOException e) {
-				//At this point, users already know they screwed
-				// up. No need to rub it in.
+				//Nothing more we can do with it.
 			}
 		}
-		if (outFile != null) {
-			//If there is any output that needs to be
-			// written to the stream, force it out.
-			outFile.flush();
-			outFile.close();
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
 		}
 	}
 
@@ -131,8 +370,11 @@ public class P6 {
 	 * @return root of the CFG
 	 */
 	private Symbol parseCFG() {
-		try {
-			parser P = new parser(new Yylex(inFile));
+		// the scanner maps the whole file and scans it in place (in
+		// pieces on pool, with -j), into a TokenBuffer that the parser
+		// then reads
+		try (FileChannel channel = FileChannel.open(Paths.get(inName))) {
+			parser P = new parser(new Yylex(channel).scanAll(pool, jobs));
 			return P.parse();
 		} catch (Exception e) {
 			return null;
@@ -140,22 +382,39 @@ public class P6 {
 	}
 
 	public int process() {
+		if (pipeline) {
+			return processPipelined();
+		}
+		if (jobs > 1) {
+			pool = new ForkJoinPool(jobs);
+		}
 		Symbol cfgRoot = parseCFG();
-
-		ProgramNode astRoot = (ProgramNode)cfgRoot.value;
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_SYNTAX_ERROR;
 		}
+		if (cfgRoot == null) {
+			return P6.RESULT_OTHER_ERROR;
+		}
+
+		ProgramNode astRoot = (ProgramNode)cfgRoot.value;
 
 		astRoot.nameAnalysis();	 // perform name analysis
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_NAME_ANALYSIS_ERROR;
 		}
 
-		astRoot.typeCheck();
+		if (pool != null) {
+			astRoot.typeCheck(pool);
+		} else {
+			astRoot.typeCheck();
+		}
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_TYPE_ERROR;
 		}
+
+		if (fold) {
+			astRoot.constantFold();
+		}
 		
 //		try {
 //			PrintWriter writer = new PrintWriter("./test.out");
@@ -165,15 +424,204 @@ public class P6 {
 //			e.printStackTrace();
 //		}
 		
-		Codegen.p = outFile;
-		astRoot.codeGen();
+		if (runVm) {
+			return runVm(astRoot);
+		}
+		if (useJvm || runJvm) {
+			return jvm(astRoot);
+		}
+		if (useX86) {
+			TacProgram prog = astRoot.lower();
+			if (ErrMsg.getErr()) {
+				return P6.RESULT_CODEGEN_ERROR;
+			}
+			try {
+				new X86Selector().select(prog, outFile);
+			} catch (IOException e) {
+				System.err.println("Error writing output: " + e.getMessage());
+				return P6.RESULT_OTHER_ERROR;
+			}
+			return P6.RESULT_CORRECT;
+		}
+
+		Codegen.out = outFile;
+		Codegen.debugLevel = debugLevel;
+		if (useTac) {
+			TacProgram prog = astRoot.lower();
+			if (ErrMsg.getErr()) {
+				return P6.RESULT_CODEGEN_ERROR;
+			}
+			new TacSelector().select(prog);
+		} else if (pool != null || cacheDir != null) {
+			CodeCache cache = null;
+			if (cacheDir != null) {
+				try {
+					// decoded as the scanner decodes it, so that char
+					// numbers are offsets in it
+					cache = new CodeCache(Paths.get(cacheDir),
+						new String(Files.readAllBytes(Paths.get(inName)),
+							Charset.defaultCharset()),
+						"fold=" + fold + " g=" + debugLevel);
+				} catch (IOException | InvalidPathException e) {
+					System.err.println("Error opening cache: " + e.getMessage());
+					return P6.RESULT_OTHER_ERROR;
+				}
+			}
+			astRoot.codeGen(pool, cache);
+			if (cache != null && printStats) {
+				outStream.println("cache: " + cache.getHits() + " hits, "
+					+ cache.getMisses() + " misses");
+			}
+		} else {
+			astRoot.codeGen();
+		}
+		if (ErrMsg.getErr()) {
+			return P6.RESULT_CODEGEN_ERROR;
+		}
+
+		return finish();
+	}
+
+	/**
+	 * As process, but with the passes run in a Pipeline
+	 * @return one of the RESULT codes
+	 */
+	private int processPipelined() {
+		Codegen.out = outFile;
+		Codegen.debugLevel = debugLevel;
+		int resultCode;
+		try (FileChannel channel = FileChannel.open(Paths.get(inName))) {
+			resultCode = new Pipeline(new Yylex(channel), fold).run();
+		} catch (IOException e) {
+			return P6.RESULT_OTHER_ERROR;
+		}
+		if (resultCode != RESULT_CORRECT) {
+			return resultCode;
+		}
+		return finish();
+	}
+
+	/**
+	 * Optimize (with -O) and write out the generated code
+	 * @return RESULT_CORRECT, or RESULT_OTHER_ERROR if it cannot be written
+	 */
+	private int finish() {
+		if (optimize) {
+			Peephole peephole = new Peephole();
+			peephole.optimize(Codegen.getBuffers());
+			if (printStats) {
+				peephole.printStats(outStream);
+			}
+		}
+		try {
+			Codegen.flush();
+		} catch (IOException e) {
+			System.err.println("Error writing output: " + e.getMessage());
+			return P6.RESULT_OTHER_ERROR;
+		}
+
+		return P6.RESULT_CORRECT;
+	}
+
+	/**
+	 * Lower the program, compile it to bytecode and run it
+	 * @param astRoot the checked program
+	 * @return RESULT_CORRECT, or the kind of error that stopped it
+	 */
+	private int runVm(ProgramNode astRoot) {
+		TacProgram prog = astRoot.lower();
+		if (ErrMsg.getErr()) {
+			return P6.RESULT_CODEGEN_ERROR;
+		}
+		VmCode code = new VmCompiler().compile(prog);
+		PrintStream out = new PrintStream(
+			new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)),
+			false);
+		Vm vm = new Vm(code, System.in, out);
+		try {
+			vm.run();
+		} catch (Vm.VmException e) {
+			System.err.println("runtime error: " + e.getMessage());
+			return P6.RESULT_RUNTIME_ERROR;
+		} finally {
+			if (printStats) {
+				outStream.println("vm instructions: " + vm.getInstructions());
+			}
+		}
+		return P6.RESULT_CORRECT;
+	}
+
+	/**
+	 * Lower the program and compile it to a JVM class, then write the
+	 * class to the output file or run it
+	 * @param astRoot the checked program
+	 * @return RESULT_CORRECT, or the kind of error that stopped it
+	 */
+	private int jvm(ProgramNode astRoot) {
+		TacProgram prog = astRoot.lower();
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_CODEGEN_ERROR;
 		}
 
+		String className = "CmmProgram";
+		if (useJvm) {
+			className = new File(outName).getName();
+			if (className.endsWith(".class")) {
+				className = className.substring(0, className.length() - 6);
+			}
+			if (!isJavaIdentifier(className)) {
+				System.err.println(className + " is not a valid class name");
+				return P6.RESULT_OTHER_ERROR;
+			}
+		}
+
+		byte[] classFile;
+		try {
+			classFile = new JvmGenerator().generate(prog, className);
+		} catch (IOException e) {
+			System.err.println("Error generating class: " + e.getMessage());
+			return P6.RESULT_OTHER_ERROR;
+		}
+		if (classFile == null) {
+			return P6.RESULT_CODEGEN_ERROR;
+		}
+
+		if (useJvm) {
+			try {
+				outFile.write(java.nio.ByteBuffer.wrap(classFile));
+			} catch (IOException e) {
+				System.err.println("Error writing output: " + e.getMessage());
+				return P6.RESULT_OTHER_ERROR;
+			}
+			return P6.RESULT_CORRECT;
+		}
+
+		Throwable thrown;
+		try {
+			thrown = JvmGenerator.run(className, classFile);
+		} catch (ReflectiveOperationException e) {
+			System.err.println("Error loading class: " + e);
+			return P6.RESULT_OTHER_ERROR;
+		}
+		if (thrown != null) {
+			System.err.println("runtime error: " + thrown);
+			return P6.RESULT_RUNTIME_ERROR;
+		}
 		return P6.RESULT_CORRECT;
 	}
 
+	private static boolean isJavaIdentifier(String name) {
+		if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+			return false;
+		}
+		for (int k = 1; k < name.length(); k++) {
+			if (!Character.isJavaIdentifierPart(name.charAt(k))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public void run() {
 		int resultCode = process();
 		if (resultCode == RESULT_CORRECT) {
@@ -181,17 +629,65 @@ public class P6 {
 			return;
 		}
 
+		pukeAndDie(describe(resultCode), resultCode);
+	}
+
+	/**
+	 * Compile as the command line args would, but return the result
+	 * instead of exiting, for CompileServer and Batch. The compiler's static state
+	 * is reset first, and messages go to System.err
+	 * @param args command line args array for [options] <infile> <outfile>
+	 * @return one of the RESULT codes
+	 */
+	public static int compile(String[] args) {
+		ErrMsg.reset();
+		Codegen.reset();
+		Names.reset();
+		Type.reset();
+
+		P6 instance = new P6();
+		try {
+			instance.parseArgs(args);
+			if (instance.runVm || instance.runJvm) {
+				throw new BadArgsException("-vm and -jvmrun cannot be used "
+					+ "in server or batch mode");
+			}
+		} catch (BadArgsException e) {
+			instance.outStream.println(e.getMessage());
+			instance.cleanup();
+			return RESULT_OTHER_ERROR;
+		}
+
+		int resultCode;
+		try {
+			resultCode = instance.process();
+		} finally {
+			instance.cleanup();
+		}
+		if (resultCode != RESULT_CORRECT) {
+			instance.outStream.println(describe(resultCode));
+		}
+		return resultCode;
+	}
+
+	/**
+	 * The message for a failed compile
+	 * @param resultCode one of the RESULT codes other than RESULT_CORRECT
+	 */
+	private static String describe(int resultCode) {
 		switch(resultCode) {
 		case RESULT_SYNTAX_ERROR:
-			pukeAndDie("Syntax error", resultCode);
+			return "Syntax error";
 		case RESULT_TYPE_ERROR:
-			pukeAndDie("Type checking error", resultCode);
+			return "Type checking error";
 		case RESULT_NAME_ANALYSIS_ERROR:
-			pukeAndDie("Name analysis error", resultCode);
+			return "Name analysis error";
 		case RESULT_CODEGEN_ERROR:
-			pukeAndDie("Codegen error", resultCode);
+			return "Codegen error";
+		case RESULT_RUNTIME_ERROR:
+			return "Runtime error";
 		default:
-			pukeAndDie("Type checking error", RESULT_OTHER_ERROR);
+			return "Type checking error";
 		}
 	}
 
@@ -210,6 +706,14 @@ public class P6 {
 		}
 	}
 
+	private static class BadArgsException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public BadArgsException(String message) {
+			super(message);
+		}
+	}
+
 	private class BadOutfileException extends Exception {
 		private static final long serialVersionUID = 1L;
 		private String message;
@@ -226,6 +730,14 @@ public class P6 {
 	}
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-server")) {
+			CompileServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("-batch")) {
+			Batch.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		P6 instance = new P6(args);
 		instance.run();
 	}
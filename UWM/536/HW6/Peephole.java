@@ -0,0 +1,400 @@
+import java.io.*;
+import java.util.*;
+
+// **********************************************************************
+// The Peephole class is an optional pass over the instruction buffers
+// built by Codegen.  Each buffer (one function, or a run of global
+// declarations) is rewritten on its own, and every pattern is retried
+// until none of them fires any more.
+//
+// The patterns are:
+//     pushPop      a push immediately followed by a pop: the value never
+//                  needs to go through memory, so it becomes a move (or
+//                  nothing at all when the registers are the same)
+//     addZero      addu/subu/add/sub/addi/addiu that adds 0 to its own
+//                  destination
+//     move         "move R, R", and "move A, B" right after "move B, A"
+//     indirectJump "la R, L; jr R" becomes "j L" when R is dead at L
+//     jumpToNext   an unconditional jump to a label that immediately
+//                  follows it (ignoring comments and other labels)
+//     storeLoad    a load from the same address just stored to: the
+//                  load is dropped or becomes a move
+//
+// Comment lines are ignored when deciding whether two instructions are
+// adjacent; labels are not, since control can arrive there from
+// elsewhere.
+//
+// During a pass a removed instruction is only set to null, and the
+// buffer is compacted once at the end of the pass, so that a pass costs
+// time in proportion to the size of the buffer however much it removes.
+//
+// The number of times each pattern fired is kept so that P6 can report
+// it (see printStats).
+// **********************************************************************
+
+public class Peephole {
+    private static final String[] PATTERNS = {
+        "pushPop", "addZero", "move", "indirectJump", "jumpToNext",
+        "storeLoad"
+    };
+    private static final int PUSH_POP = 0;
+    private static final int ADD_ZERO = 1;
+    private static final int MOVE = 2;
+    private static final int INDIRECT_JUMP = 3;
+    private static final int JUMP_TO_NEXT = 4;
+    private static final int STORE_LOAD = 5;
+
+    private int[] hits = new int[PATTERNS.length];
+
+    /**
+     * Rewrite each of the given buffers in place.
+     */
+    public void optimize(List<List<Instr>> buffers) {
+        for (List<Instr> buffer : buffers) {
+            optimizeBuffer(buffer);
+        }
+    }
+
+    /**
+     * Rewrite one buffer in place, until no pattern applies.
+     */
+    public void optimizeBuffer(List<Instr> code) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < code.size(); i++) {
+                Instr instr = code.get(i);
+                if (instr == null || instr.isComment() || instr.isLabel()) {
+                    continue;
+                }
+                if (pushPop(code, i) || addZero(code, i) || move(code, i) ||
+                    indirectJump(code, i) || jumpToNext(code, i) ||
+                    storeLoad(code, i)) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                compact(code);
+            }
+        }
+    }
+
+    // drop the instructions that this pass removed
+    private static void compact(List<Instr> code) {
+        int n = 0;
+        for (int i = 0; i < code.size(); i++) {
+            Instr instr = code.get(i);
+            if (instr != null) {
+                code.set(n++, instr);
+            }
+        }
+        code.subList(n, code.size()).clear();
+    }
+
+    /**
+     * Number of times the named pattern fired so far.
+     */
+    public int getHits(String pattern) {
+        for (int k = 0; k < PATTERNS.length; k++) {
+            if (PATTERNS[k].equals(pattern)) {
+                return hits[k];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Print one line per pattern with the number of times it fired.
+     */
+    public void printStats(PrintStream out) {
+        int total = 0;
+        for (int k = 0; k < PATTERNS.length; k++) {
+            out.println("peephole " + PATTERNS[k] + ": " + hits[k]);
+            total += hits[k];
+        }
+        out.println("peephole total: " + total);
+    }
+
+    // **********************************************************************
+    // pushPop
+    //    sw    R, 0($sp)
+    //    subu  $sp, $sp, 4
+    //    lw    R2, 4($sp)
+    //    addu  $sp, $sp, 4
+    // **********************************************************************
+    private boolean pushPop(List<Instr> code, int i) {
+        Instr push = code.get(i);
+        if (!isSpIndexed(push, "sw", 0)) {
+            return false;
+        }
+        int j = next(code, i);
+        if (j < 0 || !isSpAdjust(code.get(j), "subu")) {
+            return false;
+        }
+        int k = next(code, j);
+        if (k < 0 || !isSpIndexed(code.get(k), "lw", 4)) {
+            return false;
+        }
+        int m = next(code, k);
+        if (m < 0 || !isSpAdjust(code.get(m), "addu")) {
+            return false;
+        }
+
+        String from = push.arg1();
+        String to = code.get(k).arg1();
+        code.set(m, null);
+        if (from.equals(to)) {
+            code.set(k, null);
+        } else {
+            code.set(k, move(to, from));
+        }
+        code.set(j, null);
+        code.set(i, null);
+        hits[PUSH_POP]++;
+        return true;
+    }
+
+    // **********************************************************************
+    // addZero
+    //    addu  R, R, 0
+    // **********************************************************************
+    private boolean addZero(List<Instr> code, int i) {
+        Instr instr = code.get(i);
+        if (!(instr.is("addu") || instr.is("subu") || instr.is("add") ||
+              instr.is("sub") || instr.is("addi") || instr.is("addiu"))) {
+            return false;
+        }
+        if (instr.kind() != Instr.OP || !instr.arg1().equals(instr.arg2()) ||
+            !instr.arg3().equals("0")) {
+            return false;
+        }
+        code.set(i, null);
+        hits[ADD_ZERO]++;
+        return true;
+    }
+
+    // **********************************************************************
+    // move
+    //    move  R, R
+    // or
+    //    move  A, B
+    //    move  B, A
+    // **********************************************************************
+    private boolean move(List<Instr> code, int i) {
+        Instr instr = code.get(i);
+        if (!instr.is("move")) {
+            return false;
+        }
+        if (instr.arg1().equals(instr.arg2())) {
+            code.set(i, null);
+            hits[MOVE]++;
+            return true;
+        }
+        int j = next(code, i);
+        if (j < 0) {
+            return false;
+        }
+        Instr other = code.get(j);
+        if (other.is("move") && other.arg1().equals(instr.arg2()) &&
+            other.arg2().equals(instr.arg1())) {
+            code.set(j, null);
+            hits[MOVE]++;
+            return true;
+        }
+        return false;
+    }
+
+    // **********************************************************************
+    // indirectJump
+    //    la    R, L
+    //    jr    R
+    // where R is overwritten at L before it is read
+    // **********************************************************************
+    private boolean indirectJump(List<Instr> code, int i) {
+        Instr la = code.get(i);
+        if (!la.is("la")) {
+            return false;
+        }
+        int j = next(code, i);
+        if (j < 0 || !code.get(j).is("jr") ||
+            !code.get(j).arg1().equals(la.arg1())) {
+            return false;
+        }
+        int target = findLabel(code, la.arg2());
+        if (target < 0 || !deadAt(code, target, la.arg1())) {
+            return false;
+        }
+        code.set(j, new Instr(Instr.OP, "", "j", la.arg2(), "", "",
+                              code.get(j).comment()));
+        code.set(i, null);
+        hits[INDIRECT_JUMP]++;
+        return true;
+    }
+
+    // **********************************************************************
+    // jumpToNext
+    //    j     L
+    // L:
+    // **********************************************************************
+    private boolean jumpToNext(List<Instr> code, int i) {
+        Instr jump = code.get(i);
+        if (!jump.is("j")) {
+            return false;
+        }
+        for (int j = i + 1; j < code.size(); j++) {
+            Instr instr = code.get(j);
+            if (instr == null) {
+                continue;
+            }
+            if (instr.isLabel() && instr.label().equals(jump.arg1())) {
+                code.set(i, null);
+                hits[JUMP_TO_NEXT]++;
+                return true;
+            }
+            if (!instr.isComment() && instr.kind() != Instr.LABEL) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // **********************************************************************
+    // storeLoad
+    //    sw    R, X
+    //    lw    R2, X
+    // **********************************************************************
+    private boolean storeLoad(List<Instr> code, int i) {
+        Instr store = code.get(i);
+        if (!store.is("sw")) {
+            return false;
+        }
+        int j = next(code, i);
+        if (j < 0) {
+            return false;
+        }
+        Instr load = code.get(j);
+        if (!load.is("lw") || load.kind() != store.kind() ||
+            !address(load).equals(address(store))) {
+            return false;
+        }
+        // lw R2, X(R2) would change the address seen by a later load
+        if (store.kind() == Instr.INDEXED &&
+            store.arg1().equals(store.arg2())) {
+            return false;
+        }
+
+        if (load.arg1().equals(store.arg1())) {
+            code.set(j, null);
+        } else {
+            code.set(j, move(load.arg1(), store.arg1()));
+        }
+        hits[STORE_LOAD]++;
+        return true;
+    }
+
+    // **********************************************************************
+    // helpers
+    // **********************************************************************
+
+    // index of the next instruction after i, or -1 if a label (or the end
+    // of the buffer) comes first
+    private static int next(List<Instr> code, int i) {
+        for (int j = i + 1; j < code.size(); j++) {
+            Instr instr = code.get(j);
+            if (instr == null) {
+                continue;
+            }
+            if (instr.isLabel()) {
+                return -1;
+            }
+            if (!instr.isComment()) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private static int findLabel(List<Instr> code, String label) {
+        for (int j = 0; j < code.size(); j++) {
+            Instr instr = code.get(j);
+            if (instr != null && instr.isLabel() &&
+                instr.label().equals(label)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    // true if, starting at index start and running straight through,
+    // reg is written before it is read
+    private static boolean deadAt(List<Instr> code, int start, String reg) {
+        for (int j = start; j < code.size(); j++) {
+            Instr instr = code.get(j);
+            if (instr == null || instr.isComment() ||
+                instr.kind() == Instr.LABEL) {
+                continue;
+            }
+            if (instr.kind() == Instr.LABELED) {
+                return false;
+            }
+            String op = instr.opcode();
+            if (instr.kind() == Instr.INDEXED) {
+                if (instr.arg2().equals(reg)) {
+                    return false;
+                }
+                if (op.equals("sw") || op.equals("sb")) {
+                    if (instr.arg1().equals(reg)) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (instr.arg1().equals(reg)) {
+                    return true;
+                }
+                continue;
+            }
+            if (!isSimple(op)) {
+                return false;
+            }
+            if (instr.arg2().equals(reg) || instr.arg3().equals(reg)) {
+                return false;
+            }
+            if (instr.arg1().equals(reg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // an instruction that reads arg2/arg3, writes arg1 and falls through
+    private static boolean isSimple(String op) {
+        return op.equals("move") || op.equals("li") || op.equals("la") ||
+               op.equals("lw") || op.equals("add") || op.equals("addu") ||
+               op.equals("addi") || op.equals("addiu") || op.equals("sub") ||
+               op.equals("subu") || op.equals("mul") || op.equals("xori") ||
+               op.equals("seq") || op.equals("sne") || op.equals("slt") ||
+               op.equals("sgt") || op.equals("sle") || op.equals("sge");
+    }
+
+    private static boolean isSpIndexed(Instr instr, String op, int offset) {
+        return instr.is(op) && instr.kind() == Instr.INDEXED &&
+               instr.arg2().equals(Codegen.SP) && instr.offset() == offset;
+    }
+
+    private static boolean isSpAdjust(Instr instr, String op) {
+        return instr.is(op) && instr.kind() == Instr.OP &&
+               instr.arg1().equals(Codegen.SP) &&
+               instr.arg2().equals(Codegen.SP) && instr.arg3().equals("4");
+    }
+
+    private static String address(Instr instr) {
+        if (instr.kind() == Instr.INDEXED) {
+            return instr.offset() + "(" + instr.arg2() + ")";
+        }
+        return instr.arg2();
+    }
+
+    private static Instr move(String to, String from) {
+        return new Instr(Instr.OP, "", "move", to, from, "", "");
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.*;
+
+// **********************************************************************
+// The Pipeline class compiles a program in three stages that run at
+// once, for P6 -pipe:
+//     the scanner, on a thread of its own, puts tokens in a TokenPipe
+//     the parser, on another, takes them, and puts each top-level
+//     DeclNode in a Ring as soon as it is reduced
+//     this thread takes each decl, and does name analysis, type checking,
+//     constant folding and code generation on it alone
+// so the program's AST is never all in memory at once; each decl is
+// dropped once its code is generated.  (The generated code is still kept
+// until the end, as it always is, for the peephole pass and so that
+// nothing is written if there is an error.)
+//
+// C-- declares everything before it is used, so a decl can be checked as
+// soon as the decls before it have been.  The output is the same as from
+// P6.process:
+//     name analysis, type checking and code generation each collect their
+//     messages in a Sink of their own, which is only reported at the end,
+//     if the passes before it had no errors (syntax errors are printed
+//     right away, by the parser, as they always are)
+//     once a decl has a name analysis error, the decls after it get only
+//     name analysis; once one has a type error, they get only name
+//     analysis and type checking
+// **********************************************************************
+
+public class Pipeline {
+    // how many tokens and decls may wait between the stages
+    private static final int TOKENS = 1 << 12;
+    private static final int DECLS = 1 << 6;
+
+    private Yylex scanner;
+    private boolean fold;
+
+    // what the parser threw, if anything; set before the decls are closed
+    private Throwable parseFailure = null;
+
+    /**
+     * A pipeline that compiles what scanner reads, folding constants if
+     * fold is set.
+     */
+    public Pipeline(Yylex scanner, boolean fold) {
+        this.scanner = scanner;
+        this.fold = fold;
+    }
+
+    /**
+     * Compile the program; its code is left in Codegen, as codeGen
+     * leaves it.  Returns one of the P6 RESULT codes.
+     */
+    public int run() {
+        final TokenPipe tokens = new TokenPipe(TOKENS);
+        final Ring<DeclNode> decls = new Ring<DeclNode>(DECLS);
+
+        Thread lexer = new Thread(new Runnable() {
+                public void run() {
+                    Throwable failure = null;
+                    try {
+                        scanner.scanInto(tokens);
+                    } catch (Throwable ex) {
+                        failure = ex;
+                    } finally {
+                        tokens.close(failure);
+                    }
+                }
+            }, "lexer");
+        Thread parserThread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        parser P = new parser(tokens);
+                        P.decls = decls;
+                        P.parse();
+                    } catch (Throwable ex) {
+                        parseFailure = ex;
+                    } finally {
+                        tokens.abandon();
+                        decls.close();
+                    }
+                }
+            }, "parser");
+        // neither may keep the JVM running if this thread gives up
+        lexer.setDaemon(true);
+        parserThread.setDaemon(true);
+        lexer.start();
+        parserThread.start();
+
+        ErrMsg.Sink names = new ErrMsg.Sink();
+        ErrMsg.Sink types = new ErrMsg.Sink();
+        ErrMsg.Sink code = new ErrMsg.Sink();
+        SymTable symTab = new SymTable();
+        try {
+            DeclNode decl;
+            while ((decl = decls.take()) != null) {
+                check(decl, symTab, names, types, code);
+            }
+        } finally {
+            decls.abandon();
+            ErrMsg.end();
+        }
+
+        if (ErrMsg.getErr()) {
+            return P6.RESULT_SYNTAX_ERROR;
+        }
+        if (parseFailure instanceof Error) {
+            throw (Error)parseFailure;
+        }
+        if (parseFailure != null) {
+            return P6.RESULT_OTHER_ERROR;
+        }
+
+        ErrMsg.begin(names);
+        ProgramNode.checkMain(symTab);
+        ErrMsg.end();
+        ErrMsg.report(names);
+        if (ErrMsg.getErr()) {
+            return P6.RESULT_NAME_ANALYSIS_ERROR;
+        }
+        ErrMsg.report(types);
+        if (ErrMsg.getErr()) {
+            return P6.RESULT_TYPE_ERROR;
+        }
+        ErrMsg.report(code);
+        if (ErrMsg.getErr()) {
+            return P6.RESULT_CODEGEN_ERROR;
+        }
+        return P6.RESULT_CORRECT;
+    }
+
+    // run the passes on decl, as far as the decls before it allow
+    private void check(DeclNode decl, SymTable symTab, ErrMsg.Sink names,
+                       ErrMsg.Sink types, ErrMsg.Sink code) {
+        DeclListNode list =
+            new DeclListNode(Collections.singletonList(decl));
+
+        ErrMsg.begin(names);
+        list.nameAnalysis(symTab);
+        if (names.hasErrors()) {
+            return;
+        }
+        ErrMsg.begin(types);
+        list.typeCheck();
+        if (types.hasErrors()) {
+            return;
+        }
+        if (fold) {
+            list.constantFold();
+        }
+        ErrMsg.begin(code);
+        list.codeGen();
+    }
+}
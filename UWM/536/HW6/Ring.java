@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+// **********************************************************************
+// The Ring class is a bounded queue from one producer thread to one
+// consumer thread, without locks: head, the index of the next item to
+// take, is written only by the consumer, and tail, the index of the next
+// item to put, only by the producer, so each side just publishes its own
+// index (with a release store) and reads the other's.  Each side keeps
+// the last value it read of the other's index, and reads it again only
+// when the ring looks full (or empty) by that value.
+//
+// A side that has to wait spins for a while, then yields, then sleeps a
+// little at a time.  The producer closes the ring after its last item;
+// take then returns null once the ring is empty.  A consumer that will
+// take no more abandons the ring, so that the producer never waits for it
+// and what it puts is dropped.
+// **********************************************************************
+
+public class Ring<T> {
+    private final Object[] items;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile boolean abandoned = false;
+
+    // the producer's copy of head, and the consumer's of tail
+    private long headCache = 0;
+    private long tailCache = 0;
+
+    /**
+     * A ring of capacity items; capacity must be a power of 2.
+     */
+    public Ring(int capacity) {
+        if (capacity < 1 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException(
+                "capacity must be a power of 2");
+        }
+        items = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add item, waiting while the ring is full; for the producer.
+     */
+    public void put(T item) {
+        long t = tail.get();
+        int waits = 0;
+        while (t - headCache == items.length) {
+            if (abandoned) {
+                return;
+            }
+            headCache = head.get();
+            if (t - headCache == items.length) {
+                waits = pause(waits);
+            }
+        }
+        items[(int)t & mask] = item;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * There will be no more items; for the producer.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Remove the next item, waiting while the ring is empty, or return
+     * null if it is empty and closed; for the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        long h = head.get();
+        int waits = 0;
+        while (h == tailCache) {
+            // read closed before tail, so no item put before close is missed
+            boolean done = closed;
+            tailCache = tail.get();
+            if (h != tailCache) {
+                break;
+            }
+            if (done) {
+                return null;
+            }
+            waits = pause(waits);
+        }
+        int slot = (int)h & mask;
+        T item = (T)items[slot];
+        items[slot] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    /**
+     * Take no more items; for the consumer.
+     */
+    public void abandon() {
+        abandoned = true;
+    }
+
+    // wait a little longer each time, the waits-th time in a row
+    private static int pause(int waits) {
+        if (waits < 100) {
+            Thread.onSpinWait();
+        } else if (waits < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50000);
+        }
+        return waits + 1;
+    }
+}
@@ -1,19 +1,78 @@
 import java.util.*;
 
+/**
+ * A LeBlanc-Cook symbol table: one table maps each name to the chain of
+ * its declarations that are in scope, innermost first, and each scope
+ * keeps the list of the declarations made in it, so that removeScope can
+ * pop them off their chains.  lookupLocal and lookupGlobal are a single
+ * lookup however deeply scopes are nested, and removeScope costs one step
+ * per declaration in the scope.
+ *
+ * Names are the int ids that Names hands out, so the table is an array
+ * indexed by id; a struct's table, which holds only its few fields, is a
+ * map instead, so that it does not take space for every name in the
+ * program.  The methods that take a String intern it first.
+ */
 public class SymTable {
 
-  private List<HashMap<String, TSym>> list;
+  // a declaration of name (whose id is id) in the scope at depth
+  private static class Entry {
+    int id;
+    String name;
+    TSym sym;
+    int depth;
+    Entry shadowed;     // the declaration of name that this one hides
+    Entry nextInScope;  // the declaration made before this in its scope
+
+    Entry(int id, TSym sym, int depth, Entry shadowed, Entry nextInScope) {
+      this.id = id;
+      this.name = Names.name(id);
+      this.sym = sym;
+      this.depth = depth;
+      this.shadowed = shadowed;
+      this.nextInScope = nextInScope;
+    }
+  }
+
+  // table[id] is the innermost declaration of the name whose id is id, or
+  // null; ids past the end have none.  For a struct's table, fields holds
+  // them instead, and table is null.
+  private Entry[] table;
+  private Map<Integer, Entry> fields;
+
+  // scopes[d] is the last declaration made in the scope at depth d (the
+  // outermost scope is depth 0), or null; depth is -1 when there are no
+  // scopes
+  private Entry[] scopes;
+  private int depth;
   
   private int formalOffset, localOffset;
   private boolean inStructDefn;
 
+  // while recording, the symbols that lookupGlobal found in the
+  // outermost scope, by name
+  private Map<String, TSym> globalRefs = null;
+
   public SymTable() {
-    list = new LinkedList<HashMap<String, TSym>>();
-    list.add(new HashMap<String, TSym>());
+    this(new Entry[16], null);
+  }
+
+  private SymTable(Entry[] table, Map<Integer, Entry> fields) {
+    this.table = table;
+    this.fields = fields;
+    scopes = new Entry[8];
+    depth = 0;
     resetOffsets();
     inStructDefn = false;
   }
 
+  /**
+   * A table for the fields of a struct.
+   */
+  public static SymTable forStruct() {
+    return new SymTable(null, new HashMap<Integer, Entry>());
+  }
+
   public void addDecl(String name, TSym sym) throws DuplicateSymException,
   EmptySymTableException, IllegalArgumentException {
 
@@ -25,20 +84,32 @@ public class SymTable {
       throw new IllegalArgumentException();
     }
 
-    if (list.isEmpty()) {
+    addDecl(Names.intern(name), sym);
+  }
+
+  public void addDecl(int id, TSym sym) throws DuplicateSymException,
+  EmptySymTableException, IllegalArgumentException {
+
+    if (sym == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (depth < 0) {
       throw new EmptySymTableException();
     }
 
-    HashMap<String, TSym> symTab = list.get(0);
-    if (symTab.containsKey(name)) {
+    Entry shadowed = get(id);
+    if (shadowed != null && shadowed.depth == depth) {
       throw new DuplicateSymException();
     } else {
-      symTab.put(name, sym);
+      Entry entry = new Entry(id, sym, depth, shadowed, scopes[depth]);
+      put(id, entry);
+      scopes[depth] = entry;
       
       if (sym.getVarType() == VarSymType.NONFORMAL) {
     	  if (inStructDefn) {
     		  sym.setVarType(VarSymType.STRUCT_MEMBER);
-    	  } else if (list.size() == 1) {
+    	  } else if (depth == 0) {
     		  sym.setVarType(VarSymType.GLOBAL);
     	  } else {
     		  sym.setVarType(VarSymType.LOCAL);
@@ -84,44 +155,110 @@ public class SymTable {
   }
 
   public void addScope() {
-    list.add(0, new HashMap<String, TSym>());
+    depth++;
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, 2 * depth);
+    }
+    scopes[depth] = null;
   }
 
   public TSym lookupLocal(String name) throws EmptySymTableException {
-    if (list.isEmpty()) {
+    return lookupLocal(Names.intern(name));
+  }
+
+  public TSym lookupLocal(int id) throws EmptySymTableException {
+    if (depth < 0) {
       throw new EmptySymTableException();
     }
 
-    if (list.get(0).containsKey(name)){
-      return list.get(0).get(name);
+    Entry entry = get(id);
+    if (entry != null && entry.depth == depth) {
+      return entry.sym;
     } else {
       return null;
     }
   }
 
   public TSym lookupGlobal(String name) throws EmptySymTableException {
-    if (list.isEmpty()) {
+    return lookupGlobal(Names.intern(name));
+  }
+
+  public TSym lookupGlobal(int id) throws EmptySymTableException {
+    if (depth < 0) {
       throw new EmptySymTableException();
     }
 
-    for (HashMap<String, TSym> symTab : list) {
-      if (symTab.containsKey(name)){
-        return symTab.get(name);
-      }
+    Entry entry = get(id);
+    if (entry == null) {
+      return null;
+    }
+    if (globalRefs != null && entry.depth == 0) {
+      globalRefs.put(entry.name, entry.sym);
     }
-    return null;
+    return entry.sym;
+  }
+
+  /**
+   * Start recording the globals and functions that lookupGlobal finds.
+   */
+  public void recordGlobalRefs() {
+    globalRefs = new TreeMap<String, TSym>();
+  }
+
+  /**
+   * Stop recording, and return what was found since recordGlobalRefs,
+   * sorted by name.
+   */
+  public Map<String, TSym> endGlobalRefs() {
+    Map<String, TSym> refs = globalRefs;
+    globalRefs = null;
+    return refs;
   }
 
   public void removeScope() throws EmptySymTableException {
-    if (list.isEmpty()) {
+    if (depth < 0) {
       throw new EmptySymTableException();
     }
-    list.remove(0);
+    for (Entry entry = scopes[depth]; entry != null;
+         entry = entry.nextInScope) {
+      put(entry.id, entry.shadowed);
+    }
+    scopes[depth] = null;
+    depth--;
+  }
+
+  // the innermost declaration of the name whose id is id, or null
+  private Entry get(int id) {
+    if (table == null) {
+      return fields.get(id);
+    }
+    return id < table.length ? table[id] : null;
+  }
+
+  // make entry (or null) the innermost declaration of id
+  private void put(int id, Entry entry) {
+    if (table == null) {
+      if (entry == null) {
+        fields.remove(id);
+      } else {
+        fields.put(id, entry);
+      }
+      return;
+    }
+    if (id >= table.length) {
+      table = Arrays.copyOf(table, Math.max(id + 1, 2 * table.length));
+    }
+    table[id] = entry;
   }
 
   public void print() {
     System.out.print("\nSym Table\n");
-    for (HashMap<String, TSym> symTab : list) {
+    for (int d = depth; d >= 0; d--) {
+      HashMap<String, TSym> symTab = new HashMap<String, TSym>();
+      for (Entry entry = scopes[d]; entry != null;
+           entry = entry.nextInScope) {
+        symTab.put(entry.name, entry.sym);
+      }
       System.out.println(symTab.toString());
     }
     System.out.println();
@@ -61,9 +61,10 @@ class FnSym extends TSym {
     private int numParams;
     private List<Type> paramTypes;
     private int finalSpOffset;
+    private String signature = null;  // toString, once it is asked for
 
     public FnSym(Type type, int numparams) {
-        super(new FnType());
+        super(Type.FN);
         returnType = type;
         numParams = numparams;
         setFinalSpOffset(0);
@@ -71,6 +72,7 @@ class FnSym extends TSym {
 
     public void addFormals(List<Type> L) {
         paramTypes = L;
+        signature = null;
     }
 
     public Type getReturnType() {
@@ -86,19 +88,23 @@ class FnSym extends TSym {
     }
 
     public String toString() {
+        if (signature != null) {
+            return signature;
+        }
         // make list of formals
-        String str = "";
+        StringBuilder str = new StringBuilder();
         boolean notfirst = false;
         for (Type type : paramTypes) {
             if (notfirst)
-                str += ",";
+                str.append(",");
             else
                 notfirst = true;
-            str += type.toString();
+            str.append(type.toString());
         }
 
-        str += "->" + returnType.toString();
-        return str;
+        str.append("->").append(returnType.toString());
+        signature = str.toString();
+        return signature;
     }
 
 	public int getFinalSpOffset() {
@@ -121,7 +127,7 @@ class StructSym extends TSym {
     private IdNode structType;  // name of the struct type
 
     public StructSym(IdNode id) {
-        super(new StructType(id));
+        super(Type.struct(id.name()));
         structType = id;
     }
 
@@ -141,7 +147,7 @@ class StructDefSym extends TSym {
     private SymTable symTab;
 
     public StructDefSym(SymTable table) {
-        super(new StructDefType());
+        super(Type.STRUCT_DEF);
         symTab = table;
     }
 
@@ -0,0 +1,36 @@
+import java.util.*;
+
+// **********************************************************************
+// The TacBlock class is a basic block of a TacFunction: the instructions
+// at indexes [start, end) of the function's code, entered only at start
+// and left only after end - 1.
+// **********************************************************************
+
+public class TacBlock {
+    private int start;
+    private int end;
+    private List<TacBlock> succs = new ArrayList<TacBlock>();
+
+    public TacBlock(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public List<TacBlock> getSuccs() {
+        return succs;
+    }
+
+    public void addSucc(TacBlock block) {
+        if (!succs.contains(block)) {
+            succs.add(block);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.*;
+
+// **********************************************************************
+// The TacFunction class holds the three-address code for one function:
+// a linear list of TacInstrs, numbered temps and labels, and (on demand)
+// its division into basic blocks.  It is filled in by the lower methods
+// in ast.java and read by back ends such as TacSelector.
+// **********************************************************************
+
+public class TacFunction {
+    private TacProgram program;
+    private String name;
+    private int numParams;
+    private int localsSize;   // bytes of locals below the saved $ra/$fp
+    private List<TacInstr> code = new ArrayList<TacInstr>();
+    private int numTemps = 0;
+    private int numLabels = 0;
+    private List<TacBlock> blocks = null;
+
+    public TacFunction(TacProgram program, String name, int numParams,
+                       int localsSize) {
+        this.program = program;
+        this.name = name;
+        this.numParams = numParams;
+        this.localsSize = localsSize;
+    }
+
+    public TacProgram getProgram() {
+        return program;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isMain() {
+        return name.equals("main");
+    }
+
+    public int getNumParams() {
+        return numParams;
+    }
+
+    public int getLocalsSize() {
+        return localsSize;
+    }
+
+    public List<TacInstr> getCode() {
+        return code;
+    }
+
+    public int getNumTemps() {
+        return numTemps;
+    }
+
+    /**
+     * The label that return statements jump to.
+     */
+    public String getExitLabel() {
+        return ".L" + name + "_exit";
+    }
+
+    /**
+     * A temp that has not been used yet.
+     */
+    public int newTemp() {
+        return numTemps++;
+    }
+
+    /**
+     * A label that has not been used yet (unique within the program,
+     * since function names are).  Like the labels from Codegen.nextLabel,
+     * it starts with ".L", so it cannot be the name of a function.
+     */
+    public String newLabel() {
+        return ".L" + name + "_" + numLabels++;
+    }
+
+    public void add(TacInstr instr) {
+        code.add(instr);
+        blocks = null;
+    }
+
+    /**
+     * Split the code into basic blocks and link each block to the blocks
+     * control can go to next.  Blocks are in code order.
+     */
+    public List<TacBlock> getBlocks() {
+        if (blocks != null) {
+            return blocks;
+        }
+
+        blocks = new ArrayList<TacBlock>();
+        Map<String, TacBlock> labels = new HashMap<String, TacBlock>();
+        int start = 0;
+        for (int k = 0; k < code.size(); k++) {
+            TacInstr instr = code.get(k);
+            if (instr.getOp() == TacInstr.LABEL && k > start) {
+                blocks.add(new TacBlock(start, k));
+                start = k;
+            }
+            if (instr.isJump()) {
+                blocks.add(new TacBlock(start, k + 1));
+                start = k + 1;
+            }
+        }
+        if (start < code.size()) {
+            blocks.add(new TacBlock(start, code.size()));
+        }
+
+        for (TacBlock block : blocks) {
+            for (int k = block.getStart(); k < block.getEnd(); k++) {
+                TacInstr instr = code.get(k);
+                if (instr.getOp() == TacInstr.LABEL) {
+                    labels.put(instr.getText(), block);
+                }
+            }
+        }
+
+        for (int b = 0; b < blocks.size(); b++) {
+            TacBlock block = blocks.get(b);
+            TacInstr last = code.get(block.getEnd() - 1);
+            if (last.isJump() && last.getOp() != TacInstr.RET) {
+                block.addSucc(labels.get(last.getText()));
+            }
+            if (last.fallsThrough() && b + 1 < blocks.size()) {
+                block.addSucc(blocks.get(b + 1));
+            }
+        }
+        return blocks;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append(" (").append(numParams).append(" params, ")
+          .append(localsSize).append(" bytes of locals)\n");
+        for (TacInstr instr : code) {
+            if (instr.getOp() != TacInstr.LABEL) {
+                sb.append("    ");
+            }
+            sb.append(instr).append('\n');
+        }
+        return sb.toString();
+    }
+}
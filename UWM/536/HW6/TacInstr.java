@@ -0,0 +1,250 @@
+// **********************************************************************
+// The TacInstr class is one quad of the three-address-code intermediate
+// representation built by the lower methods in ast.java.
+//
+// Operands are virtual registers ("temps"), numbered from 0 within each
+// function; -1 means "no operand".  Source-level variables are only
+// touched by LOAD and STORE, so temps never need to survive a store to a
+// variable.  The opcodes are:
+//
+//     LI      dst = imm
+//     STR     dst = address of the string literal text
+//     LOAD    dst = var
+//     STORE   var = src1
+//     MOVE    dst = src1
+//     NEG     dst = -src1
+//     NOT     dst = !src1
+//     ADD, SUB, MUL, DIV, SEQ, SNE, SLT, SGT, SLE, SGE
+//             dst = src1 op src2
+//     STREQ   dst = (string src1 == string src2)
+//     LABEL   label:
+//     JUMP    goto label
+//     BRZ     if src1 == 0 goto label
+//     BNZ     if src1 != 0 goto label
+//     PARAM   push src1 as the next argument (last argument first)
+//     CALL    dst = call text with imm arguments (dst is -1 if unused)
+//     RET     return src1 (src1 is -1 for a void return)
+//     READ    dst = integer read from the console
+//     WRITEI  print src1 as an integer
+//     WRITES  print src1 as a string
+// **********************************************************************
+
+public class TacInstr {
+    public static final int LI = 0;
+    public static final int STR = 1;
+    public static final int LOAD = 2;
+    public static final int STORE = 3;
+    public static final int MOVE = 4;
+    public static final int NEG = 5;
+    public static final int NOT = 6;
+    public static final int ADD = 7;
+    public static final int SUB = 8;
+    public static final int MUL = 9;
+    public static final int DIV = 10;
+    public static final int SEQ = 11;
+    public static final int SNE = 12;
+    public static final int SLT = 13;
+    public static final int SGT = 14;
+    public static final int SLE = 15;
+    public static final int SGE = 16;
+    public static final int STREQ = 17;
+    public static final int LABEL = 18;
+    public static final int JUMP = 19;
+    public static final int BRZ = 20;
+    public static final int BNZ = 21;
+    public static final int PARAM = 22;
+    public static final int CALL = 23;
+    public static final int RET = 24;
+    public static final int READ = 25;
+    public static final int WRITEI = 26;
+    public static final int WRITES = 27;
+
+    // for printing binary operations
+    private static final String[] SYMBOLS = {
+        "+", "-", "*", "/", "==", "!=", "<", ">", "<=", ">=", "streq"
+    };
+
+    private int op;
+    private int dst = -1;
+    private int src1 = -1;
+    private int src2 = -1;
+    private int imm;
+    private String text;   // label, function name or string literal
+    private TacVar var;
+
+    private TacInstr(int op) {
+        this.op = op;
+    }
+
+    // **********************************************************************
+    // factory methods, one per shape of instruction
+    // **********************************************************************
+
+    public static TacInstr li(int dst, int imm) {
+        TacInstr instr = new TacInstr(LI);
+        instr.dst = dst;
+        instr.imm = imm;
+        return instr;
+    }
+
+    public static TacInstr str(int dst, String text) {
+        TacInstr instr = new TacInstr(STR);
+        instr.dst = dst;
+        instr.text = text;
+        return instr;
+    }
+
+    public static TacInstr load(int dst, TacVar var) {
+        TacInstr instr = new TacInstr(LOAD);
+        instr.dst = dst;
+        instr.var = var;
+        return instr;
+    }
+
+    public static TacInstr store(TacVar var, int src) {
+        TacInstr instr = new TacInstr(STORE);
+        instr.var = var;
+        instr.src1 = src;
+        return instr;
+    }
+
+    /**
+     * MOVE, NEG, NOT and READ (with src -1).
+     */
+    public static TacInstr unary(int op, int dst, int src) {
+        TacInstr instr = new TacInstr(op);
+        instr.dst = dst;
+        instr.src1 = src;
+        return instr;
+    }
+
+    /**
+     * ADD through STREQ.
+     */
+    public static TacInstr binary(int op, int dst, int src1, int src2) {
+        TacInstr instr = new TacInstr(op);
+        instr.dst = dst;
+        instr.src1 = src1;
+        instr.src2 = src2;
+        return instr;
+    }
+
+    /**
+     * LABEL and JUMP.
+     */
+    public static TacInstr label(int op, String label) {
+        TacInstr instr = new TacInstr(op);
+        instr.text = label;
+        return instr;
+    }
+
+    /**
+     * BRZ and BNZ.
+     */
+    public static TacInstr branch(int op, int src, String label) {
+        TacInstr instr = new TacInstr(op);
+        instr.src1 = src;
+        instr.text = label;
+        return instr;
+    }
+
+    /**
+     * PARAM, RET, WRITEI and WRITES.
+     */
+    public static TacInstr use(int op, int src) {
+        TacInstr instr = new TacInstr(op);
+        instr.src1 = src;
+        return instr;
+    }
+
+    public static TacInstr call(int dst, String name, int numArgs) {
+        TacInstr instr = new TacInstr(CALL);
+        instr.dst = dst;
+        instr.text = name;
+        instr.imm = numArgs;
+        return instr;
+    }
+
+    // **********************************************************************
+    // accessors
+    // **********************************************************************
+
+    public int getOp() { return op; }
+    public int getDst() { return dst; }
+    public int getSrc1() { return src1; }
+    public int getSrc2() { return src2; }
+    public int getImm() { return imm; }
+    public String getText() { return text; }
+    public TacVar getVar() { return var; }
+
+    /**
+     * Is this one of ADD through STREQ?
+     */
+    public boolean isBinary() {
+        return op >= ADD && op <= STREQ;
+    }
+
+    /**
+     * Can control leave this instruction other than by falling through?
+     */
+    public boolean isJump() {
+        return op == JUMP || op == BRZ || op == BNZ || op == RET;
+    }
+
+    /**
+     * Can control fall through to the next instruction?
+     */
+    public boolean fallsThrough() {
+        return op != JUMP && op != RET;
+    }
+
+    /**
+     * The text of a string literal as a STR instruction holds it (as
+     * written, with its quotes and escapes), without the quotes and
+     * escapes.
+     */
+    public static String unquote(String literal) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 1; k < literal.length() - 1; k++) {
+            char c = literal.charAt(k);
+            if (c == '\\' && k + 1 < literal.length() - 1) {
+                c = literal.charAt(++k);
+                switch (c) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                default:  sb.append(c); break;   // \" \\ \' \?
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public String toString() {
+        switch (op) {
+        case LI:     return "t" + dst + " = " + imm;
+        case STR:    return "t" + dst + " = " + text;
+        case LOAD:   return "t" + dst + " = " + var;
+        case STORE:  return var + " = t" + src1;
+        case MOVE:   return "t" + dst + " = t" + src1;
+        case NEG:    return "t" + dst + " = -t" + src1;
+        case NOT:    return "t" + dst + " = !t" + src1;
+        case LABEL:  return text + ":";
+        case JUMP:   return "goto " + text;
+        case BRZ:    return "ifz t" + src1 + " goto " + text;
+        case BNZ:    return "ifnz t" + src1 + " goto " + text;
+        case PARAM:  return "param t" + src1;
+        case CALL:
+            return (dst < 0 ? "" : "t" + dst + " = ") + "call " + text +
+                   ", " + imm;
+        case RET:    return src1 < 0 ? "return" : "return t" + src1;
+        case READ:   return "t" + dst + " = read";
+        case WRITEI: return "writei t" + src1;
+        case WRITES: return "writes t" + src1;
+        default:
+            return "t" + dst + " = t" + src1 + " " + SYMBOLS[op - ADD] +
+                   " t" + src2;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.*;
+
+// **********************************************************************
+// The TacProgram class is the result of lowering a whole C-- program to
+// three-address code: its global variables (each one word) and a
+// TacFunction per function, both in declaration order.
+// **********************************************************************
+
+public class TacProgram {
+    private List<String> globals = new ArrayList<String>();
+    private List<String> globalComments = new ArrayList<String>();
+    private List<TacFunction> functions = new ArrayList<TacFunction>();
+
+    // string literal (as written) -> its index, in order of first use;
+    // found when first asked for
+    private Map<String, Integer> strings = null;
+
+    /**
+     * Add a one-word global; comment is the declaration it came from.
+     */
+    public void addGlobal(String name, String comment) {
+        globals.add(name);
+        globalComments.add(comment);
+    }
+
+    public void addFunction(TacFunction fn) {
+        functions.add(fn);
+        strings = null;
+    }
+
+    public List<String> getGlobals() {
+        return globals;
+    }
+
+    public String getGlobalComment(int k) {
+        return globalComments.get(k);
+    }
+
+    public List<TacFunction> getFunctions() {
+        return functions;
+    }
+
+    /**
+     * Each string literal (as written) in a STR instruction, with its
+     * index, in order of first use; for back ends that keep the strings
+     * in a table.  TacInstr.unquote gives the text of one.
+     */
+    public Map<String, Integer> getStrings() {
+        if (strings == null) {
+            strings = new LinkedHashMap<String, Integer>();
+            for (TacFunction fn : functions) {
+                for (TacInstr instr : fn.getCode()) {
+                    if (instr.getOp() == TacInstr.STR &&
+                        !strings.containsKey(instr.getText())) {
+                        strings.put(instr.getText(), strings.size());
+                    }
+                }
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * The index of literal in getStrings.
+     */
+    public int getString(String literal) {
+        return getStrings().get(literal);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String global : globals) {
+            sb.append("global ").append(global).append('\n');
+        }
+        for (TacFunction fn : functions) {
+            sb.append('\n').append(fn);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,481 @@
+import java.util.*;
+
+// **********************************************************************
+// The TacSelector class generates MIPS code (through the Codegen
+// operations) from a TacProgram, as an alternative to the codeGen
+// methods in ast.java.
+//
+// Temps are assigned to $t0-$t9 by linear scan over live ranges computed
+// from the basic blocks.  A temp that is live across a call, or that
+// does not get a register, lives in a stack slot below the function's
+// locals instead; such temps are loaded into scratch registers ($a1-$a3)
+// around each instruction that uses them.
+//
+// At Codegen.DEBUG_FULL each TAC instruction is written out as a comment
+// before its MIPS code.
+// **********************************************************************
+
+public class TacSelector {
+    private static final String[] REGS = {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9"
+    };
+    private static final String SCRATCH1 = "$a1";
+    private static final String SCRATCH2 = "$a2";
+    private static final String SCRATCH_DST = "$a3";
+
+    // opcodes for ADD through SGE, in TacInstr order (DIV is special)
+    private static final String[] BINARY_OPS = {
+        "add", "sub", "mul", "div", "seq", "sne", "slt", "sgt", "sle", "sge"
+    };
+
+    // where each temp of the current function lives
+    private String[] regOf;
+    private int[] slotOf;
+    private int numSlots;
+
+    /**
+     * Generate code for the whole program.
+     */
+    public void select(TacProgram program) {
+        List<String> globals = program.getGlobals();
+        for (int k = 0; k < globals.size(); k++) {
+            Codegen.generate(".data");
+            Codegen.generate(".align 4");
+            Codegen.generateLabeled("_" + globals.get(k), ".space 4",
+                                    program.getGlobalComment(k));
+        }
+        for (TacFunction fn : program.getFunctions()) {
+            select(fn);
+        }
+    }
+
+    /**
+     * Generate code for one function, in its own Codegen buffer.
+     */
+    public void select(TacFunction fn) {
+        allocate(fn);
+        int frame = fn.getLocalsSize() + 4 * numSlots;
+
+        Codegen.beginFunction();
+        Codegen.generateWithComment("", "Begin Fn " + fn.getName());
+        Codegen.generate(".text");
+        Codegen.genLabel(fn.getName());
+        Codegen.genPush(Codegen.RA);
+        Codegen.genPush(Codegen.FP);
+        Codegen.generateWithComment("subu", "locals and spill space",
+                                    Codegen.SP, Codegen.SP,
+                                    String.valueOf(frame));
+        Codegen.generateWithComment("addu", "update fp", Codegen.FP,
+                                    Codegen.SP, String.valueOf(frame + 8));
+
+        for (TacInstr instr : fn.getCode()) {
+            select(fn, instr);
+        }
+
+        Codegen.genLabel(fn.getExitLabel());
+        Codegen.generateIndexed("lw", Codegen.RA, Codegen.FP, 0);
+        Codegen.generate("move", Codegen.T0, Codegen.FP);
+        Codegen.generateIndexed("lw", Codegen.FP, Codegen.FP, -4);
+        Codegen.generate("move", Codegen.SP, Codegen.T0);
+        if (fn.isMain()) {
+            Codegen.generate("li", Codegen.V0, 10);
+            Codegen.generate("syscall");
+        } else {
+            Codegen.generate("jr", Codegen.RA);
+        }
+        Codegen.generateWithComment("", "End Fn " + fn.getName());
+        Codegen.endFunction();
+    }
+
+    // **********************************************************************
+    // instruction selection
+    // **********************************************************************
+
+    private void select(TacFunction fn, TacInstr instr) {
+        int op = instr.getOp();
+        if (op == TacInstr.LABEL) {
+            Codegen.genLabel(instr.getText());
+            return;
+        }
+        if (Codegen.debugLevel == Codegen.DEBUG_FULL) {
+            Codegen.generateWithComment("", instr.toString());
+        }
+
+        String dst, src1, src2;
+        TacVar var = instr.getVar();
+        switch (op) {
+        case TacInstr.LI:
+            dst = dst(instr);
+            Codegen.generate("li", dst, instr.getImm());
+            finish(instr, dst);
+            break;
+
+        case TacInstr.STR:
+            dst = dst(instr);
+            Codegen.generate("la", dst, Codegen.stringLabel(instr.getText()));
+            finish(instr, dst);
+            break;
+
+        case TacInstr.LOAD:
+            dst = dst(instr);
+            if (var.isGlobal()) {
+                Codegen.generate("lw", dst, "_" + var.getName());
+            } else {
+                Codegen.generateIndexed("lw", dst, Codegen.FP, var.getFpOffset());
+            }
+            finish(instr, dst);
+            break;
+
+        case TacInstr.STORE:
+            src1 = src(instr.getSrc1(), SCRATCH1);
+            if (var.isGlobal()) {
+                Codegen.generate("sw", src1, "_" + var.getName());
+            } else {
+                Codegen.generateIndexed("sw", src1, Codegen.FP, var.getFpOffset());
+            }
+            break;
+
+        case TacInstr.MOVE:
+            src1 = src(instr.getSrc1(), SCRATCH1);
+            dst = dst(instr);
+            if (!dst.equals(src1)) {
+                Codegen.generate("move", dst, src1);
+            }
+            finish(instr, dst);
+            break;
+
+        case TacInstr.NEG:
+            src1 = src(instr.getSrc1(), SCRATCH1);
+            dst = dst(instr);
+            Codegen.generate("sub", dst, Codegen.ZERO, src1);
+            finish(instr, dst);
+            break;
+
+        case TacInstr.NOT:
+            src1 = src(instr.getSrc1(), SCRATCH1);
+            dst = dst(instr);
+            Codegen.generate("xori", dst, src1, 1);
+            finish(instr, dst);
+            break;
+
+        case TacInstr.STREQ:
+            selectStrEq(instr);
+            break;
+
+        case TacInstr.JUMP:
+            Codegen.generate("j", instr.getText());
+            break;
+
+        case TacInstr.BRZ:
+        case TacInstr.BNZ:
+            src1 = src(instr.getSrc1(), SCRATCH1);
+            Codegen.generate(op == TacInstr.BRZ ? "beq" : "bne", src1,
+                             Codegen.ZERO, instr.getText());
+            break;
+
+        case TacInstr.PARAM:
+            Codegen.genPush(src(instr.getSrc1(), SCRATCH1));
+            break;
+
+        case TacInstr.CALL:
+            Codegen.generate("jal", instr.getText());
+            if (instr.getImm() > 0) {
+                Codegen.generateWithComment("addu", "tear down params",
+                                            Codegen.SP, Codegen.SP,
+                                            String.valueOf(instr.getImm() * 4));
+            }
+            if (instr.getDst() >= 0) {
+                dst = dst(instr);
+                Codegen.generate("move", dst, Codegen.V0);
+                finish(instr, dst);
+            }
+            break;
+
+        case TacInstr.RET:
+            if (instr.getSrc1() >= 0) {
+                Codegen.generate("move", Codegen.V0,
+                                 src(instr.getSrc1(), SCRATCH1));
+            }
+            Codegen.generate("j", fn.getExitLabel());
+            break;
+
+        case TacInstr.READ:
+            Codegen.generate("li", Codegen.V0, 5);
+            Codegen.generate("syscall");
+            dst = dst(instr);
+            Codegen.generate("move", dst, Codegen.V0);
+            finish(instr, dst);
+            break;
+
+        case TacInstr.WRITEI:
+        case TacInstr.WRITES:
+            Codegen.generate("move", Codegen.A0, src(instr.getSrc1(), SCRATCH1));
+            Codegen.generate("li", Codegen.V0, op == TacInstr.WRITEI ? 1 : 4);
+            Codegen.generate("syscall");
+            break;
+
+        default: // ADD through SGE
+            src1 = src(instr.getSrc1(), SCRATCH1);
+            src2 = src(instr.getSrc2(), SCRATCH2);
+            dst = dst(instr);
+            if (op == TacInstr.DIV) {
+                Codegen.generate("div", src1, src2);
+                Codegen.generate("mflo", dst);
+            } else {
+                Codegen.generate(BINARY_OPS[op - TacInstr.ADD], dst, src1, src2);
+            }
+            finish(instr, dst);
+            break;
+        }
+    }
+
+    /**
+     * String equality walks both strings a byte at a time, in scratch
+     * registers so the operands are left alone; $v0/$v1 hold the bytes.
+     */
+    private void selectStrEq(TacInstr instr) {
+        String src1 = src(instr.getSrc1(), SCRATCH1);
+        if (!src1.equals(SCRATCH1)) {
+            Codegen.generate("move", SCRATCH1, src1);
+        }
+        String src2 = src(instr.getSrc2(), SCRATCH2);
+        if (!src2.equals(SCRATCH2)) {
+            Codegen.generate("move", SCRATCH2, src2);
+        }
+
+        String loopStart = Codegen.nextLabel();
+        String exitLoop = Codegen.nextLabel();
+        Codegen.genLabel(loopStart);
+        Codegen.generateIndexed("lb", Codegen.V0, SCRATCH2, 0);
+        Codegen.generateIndexed("lb", Codegen.V1, SCRATCH1, 0);
+        Codegen.generate("bne", Codegen.V0, Codegen.V1, exitLoop);
+        Codegen.generate("beq", Codegen.V0, Codegen.ZERO, exitLoop);
+        Codegen.generate("addi", SCRATCH2, SCRATCH2, 1);
+        Codegen.generate("addi", SCRATCH1, SCRATCH1, 1);
+        Codegen.generate("j", loopStart);
+        Codegen.genLabel(exitLoop);
+
+        String dst = dst(instr);
+        Codegen.generate("seq", dst, Codegen.V0, Codegen.ZERO);
+        finish(instr, dst);
+    }
+
+    // register holding temp t, loading it into scratch if it is spilled
+    private String src(int t, String scratch) {
+        if (regOf[t] != null) {
+            return regOf[t];
+        }
+        Codegen.generateIndexed("lw", scratch, Codegen.FP, slotOf[t]);
+        return scratch;
+    }
+
+    // register to compute the destination of instr into
+    private String dst(TacInstr instr) {
+        String reg = regOf[instr.getDst()];
+        return reg != null ? reg : SCRATCH_DST;
+    }
+
+    // store the destination of instr to its slot if it is spilled
+    private void finish(TacInstr instr, String reg) {
+        if (regOf[instr.getDst()] == null) {
+            Codegen.generateIndexed("sw", reg, Codegen.FP,
+                                    slotOf[instr.getDst()]);
+        }
+    }
+
+    // **********************************************************************
+    // register allocation
+    // **********************************************************************
+
+    /**
+     * Fill in regOf/slotOf for every temp of fn.
+     */
+    private void allocate(TacFunction fn) {
+        int numTemps = fn.getNumTemps();
+        int[] start = new int[numTemps];
+        int[] end = new int[numTemps];
+        boolean[] acrossCall = new boolean[numTemps];
+        liveRanges(fn, start, end, acrossCall);
+
+        regOf = new String[numTemps];
+        slotOf = new int[numTemps];
+        numSlots = 0;
+        int firstSlot = -(fn.getLocalsSize() + 8);
+
+        Integer[] order = new Integer[numTemps];
+        for (int t = 0; t < numTemps; t++) {
+            order[t] = t;
+        }
+        final int[] starts = start;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return starts[a] - starts[b];
+            }
+        });
+
+        List<Integer> active = new ArrayList<Integer>();  // temps in regs
+        boolean[] regInUse = new boolean[REGS.length];
+        for (int t : order) {
+            if (end[t] < 0) {
+                continue;  // never used
+            }
+            if (acrossCall[t]) {
+                slotOf[t] = firstSlot - 4 * numSlots++;
+                continue;
+            }
+
+            // free the registers of temps that are dead by now; one whose
+            // last use is the instruction that defines t can share with t
+            boolean defined = fn.getCode().get(start[t]).getDst() == t;
+            Iterator<Integer> it = active.iterator();
+            while (it.hasNext()) {
+                int a = it.next();
+                if (end[a] < start[t] || (defined && end[a] == start[t])) {
+                    regInUse[regIndex(regOf[a])] = false;
+                    it.remove();
+                }
+            }
+
+            int free = -1;
+            for (int k = 0; k < REGS.length && free < 0; k++) {
+                if (!regInUse[k]) {
+                    free = k;
+                }
+            }
+            if (free >= 0) {
+                regInUse[free] = true;
+                regOf[t] = REGS[free];
+                active.add(t);
+                continue;
+            }
+
+            // no register: spill whichever live temp ends last
+            int victim = t;
+            for (int a : active) {
+                if (end[a] > end[victim]) {
+                    victim = a;
+                }
+            }
+            if (victim != t) {
+                regOf[t] = regOf[victim];
+                regOf[victim] = null;
+                active.remove(Integer.valueOf(victim));
+                active.add(t);
+            }
+            slotOf[victim] = firstSlot - 4 * numSlots++;
+        }
+    }
+
+    /**
+     * Compute, for every temp t, the first and last instruction index
+     * at which it is defined or live (end[t] is -1 if t is never used),
+     * and whether it is live across a call.
+     */
+    private static void liveRanges(TacFunction fn, int[] start, int[] end,
+                                   boolean[] acrossCall) {
+        List<TacInstr> code = fn.getCode();
+        List<TacBlock> blocks = fn.getBlocks();
+        int numBlocks = blocks.size();
+        Map<TacBlock, Integer> index = new HashMap<TacBlock, Integer>();
+        for (int b = 0; b < numBlocks; b++) {
+            index.put(blocks.get(b), b);
+        }
+
+        // upward-exposed uses and definitions of each block
+        BitSet[] use = new BitSet[numBlocks];
+        BitSet[] def = new BitSet[numBlocks];
+        for (int b = 0; b < numBlocks; b++) {
+            use[b] = new BitSet();
+            def[b] = new BitSet();
+            TacBlock block = blocks.get(b);
+            for (int k = block.getStart(); k < block.getEnd(); k++) {
+                TacInstr instr = code.get(k);
+                for (int t : uses(instr)) {
+                    if (!def[b].get(t)) {
+                        use[b].set(t);
+                    }
+                }
+                if (instr.getDst() >= 0) {
+                    def[b].set(instr.getDst());
+                }
+            }
+        }
+
+        // live-in/live-out, iterated to a fixpoint
+        BitSet[] liveIn = new BitSet[numBlocks];
+        BitSet[] liveOut = new BitSet[numBlocks];
+        for (int b = 0; b < numBlocks; b++) {
+            liveIn[b] = new BitSet();
+            liveOut[b] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = numBlocks - 1; b >= 0; b--) {
+                BitSet out = new BitSet();
+                for (TacBlock succ : blocks.get(b).getSuccs()) {
+                    out.or(liveIn[index.get(succ)]);
+                }
+                BitSet in = (BitSet)out.clone();
+                in.andNot(def[b]);
+                in.or(use[b]);
+                if (!in.equals(liveIn[b]) || !out.equals(liveOut[b])) {
+                    liveIn[b] = in;
+                    liveOut[b] = out;
+                    changed = true;
+                }
+            }
+        }
+
+        Arrays.fill(start, Integer.MAX_VALUE);
+        Arrays.fill(end, -1);
+        for (int b = 0; b < numBlocks; b++) {
+            TacBlock block = blocks.get(b);
+            BitSet live = (BitSet)liveOut[b].clone();
+            for (int k = block.getEnd() - 1; k >= block.getStart(); k--) {
+                TacInstr instr = code.get(k);
+                for (int t = live.nextSetBit(0); t >= 0; t = live.nextSetBit(t + 1)) {
+                    extend(start, end, t, k);
+                    if (instr.getOp() == TacInstr.CALL && t != instr.getDst()) {
+                        acrossCall[t] = true;
+                    }
+                }
+                if (instr.getDst() >= 0) {
+                    live.clear(instr.getDst());
+                    extend(start, end, instr.getDst(), k);
+                }
+                for (int t : uses(instr)) {
+                    live.set(t);
+                    extend(start, end, t, k);
+                }
+            }
+            for (int t = live.nextSetBit(0); t >= 0; t = live.nextSetBit(t + 1)) {
+                extend(start, end, t, block.getStart());
+            }
+        }
+    }
+
+    private static int[] uses(TacInstr instr) {
+        if (instr.getSrc2() >= 0) {
+            return new int[] { instr.getSrc1(), instr.getSrc2() };
+        }
+        if (instr.getSrc1() >= 0) {
+            return new int[] { instr.getSrc1() };
+        }
+        return new int[0];
+    }
+
+    private static void extend(int[] start, int[] end, int t, int k) {
+        start[t] = Math.min(start[t], k);
+        end[t] = Math.max(end[t], k);
+    }
+
+    private static int regIndex(String reg) {
+        for (int k = 0; k < REGS.length; k++) {
+            if (REGS[k].equals(reg)) {
+                return k;
+            }
+        }
+        throw new IllegalArgumentException("not an allocatable register: " + reg);
+    }
+}
@@ -0,0 +1,53 @@
+// **********************************************************************
+// The TacVar class names a source-level variable in the three-address
+// code: a global (by name) or a local or formal (by its offset from the
+// frame pointer, as assigned during name analysis).
+// **********************************************************************
+
+public class TacVar {
+    private String name;
+    private VarSymType kind;
+    private int fpOffset;
+
+    public TacVar(String name, VarSymType kind, int fpOffset) {
+        this.name = name;
+        this.kind = kind;
+        this.fpOffset = fpOffset;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public VarSymType getKind() {
+        return kind;
+    }
+
+    public int getFpOffset() {
+        return fpOffset;
+    }
+
+    public boolean isGlobal() {
+        return kind == VarSymType.GLOBAL;
+    }
+
+    /**
+     * For a back end that keeps a function's variables in an array, the
+     * index of this local or formal: the numFormals formals come first,
+     * then the locals.  (Formals are at fp+4, fp+8, ... and locals at
+     * fp-8, fp-12, ... in the MIPS frame.)
+     */
+    public int slot(int numFormals) {
+        if (fpOffset > 0) {
+            return fpOffset / 4 - 1;
+        }
+        return numFormals + (-fpOffset - 8) / 4;
+    }
+
+    public String toString() {
+        if (isGlobal()) {
+            return name;
+        }
+        return name + "[" + fpOffset + "]";
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.*;
+import java_cup.runtime.*;
+
+// **********************************************************************
+// The TokenBuffer class holds the tokens of a whole file, as Yylex.scanAll
+// finds them, in parallel int arrays: for token k,
+//     kind[k]      its sym code
+//     line[k]      its line number
+//     column[k]    the char number it starts at on its line
+//     start[k]     the offset of its text in the scanner's buffer
+//     length[k]    the length of its text
+//     value[k]     the Names id of an ID, the value of an INTLITERAL
+// Filling it allocates nothing per token.  The parser reads it through
+// next_token, which makes the Symbol that CUP shifts; the line and column
+// go in the Symbol's left and right, and only the tokens whose values the
+// grammar uses (IDs, literals, true and false) get a TokenVal.
+//
+// Errors and warnings from the scanner are kept with the index of the
+// token that was being scanned, and reported when the parser gets to that
+// token, so messages come out as they did when the parser pulled tokens
+// one at a time (and not at all past a syntax error).
+// **********************************************************************
+
+public class TokenBuffer implements TokenSink, java_cup.runtime.Scanner {
+    private int[] kind;
+    private int[] line;
+    private int[] column;
+    private int[] start;
+    private int[] length;
+    private int[] value;
+    private int size = 0;
+
+    private char[] text;
+
+    private List<Message> messages = new ArrayList<Message>();
+    private int nextMessage = 0;
+
+    // the index of the next token for next_token
+    private int next = 0;
+
+    /**
+     * A buffer with room for about capacity tokens before it grows.
+     */
+    public TokenBuffer(int capacity) {
+        capacity = Math.max(capacity, 1024);
+        kind = new int[capacity];
+        line = new int[capacity];
+        column = new int[capacity];
+        start = new int[capacity];
+        length = new int[capacity];
+        value = new int[capacity];
+    }
+
+    public void add(int kind, int line, int column, int start, int length,
+                    int value) {
+        if (size == this.kind.length) {
+            grow();
+        }
+        this.kind[size] = kind;
+        this.line[size] = line;
+        this.column[size] = column;
+        this.start[size] = start;
+        this.length[size] = length;
+        this.value[size] = value;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = 2 * kind.length;
+        kind = Arrays.copyOf(kind, capacity);
+        line = Arrays.copyOf(line, capacity);
+        column = Arrays.copyOf(column, capacity);
+        start = Arrays.copyOf(start, capacity);
+        length = Arrays.copyOf(length, capacity);
+        value = Arrays.copyOf(value, capacity);
+    }
+
+    public void fatal(int lineNum, int charNum, String msg) {
+        messages.add(new Message(size, true, lineNum, charNum, msg));
+    }
+
+    public void warn(int lineNum, int charNum, String msg) {
+        messages.add(new Message(size, false, lineNum, charNum, msg));
+    }
+
+    /**
+     * Add the tokens and messages of chunk, which was scanned from text
+     * that starts lines lines into this buffer's text, with its names
+     * interned in a pool of its own; ids[k] is the id in the program's
+     * pool of the chunk's name k.
+     */
+    public void append(TokenBuffer chunk, int lines, int[] ids) {
+        for (Message m : chunk.messages) {
+            messages.add(new Message(size + m.index, m.fatal,
+                                     m.lineNum + lines, m.charNum, m.msg));
+        }
+        while (size + chunk.size > kind.length) {
+            grow();
+        }
+        System.arraycopy(chunk.kind, 0, kind, size, chunk.size);
+        System.arraycopy(chunk.column, 0, column, size, chunk.size);
+        System.arraycopy(chunk.start, 0, start, size, chunk.size);
+        System.arraycopy(chunk.length, 0, length, size, chunk.size);
+        System.arraycopy(chunk.value, 0, value, size, chunk.size);
+        for (int k = 0; k < chunk.size; k++) {
+            line[size + k] = chunk.line[k] + lines;
+            if (chunk.kind[k] == sym.ID) {
+                value[size + k] = ids[chunk.value[k]];
+            }
+        }
+        size += chunk.size;
+    }
+
+    public void setText(char[] text) {
+        this.text = text;
+    }
+
+    public int size() { return size; }
+    public int kind(int k) { return kind[k]; }
+    public int line(int k) { return line[k]; }
+    public int column(int k) { return column[k]; }
+    public int start(int k) { return start[k]; }
+    public int length(int k) { return length[k]; }
+    public int value(int k) { return value[k]; }
+
+    /**
+     * The next token, for the parser.
+     */
+    public Symbol next_token() {
+        while (nextMessage < messages.size()
+               && messages.get(nextMessage).index <= next) {
+            messages.get(nextMessage++).report();
+        }
+        if (next == size) {
+            return new Symbol(sym.EOF);
+        }
+        int k = next++;
+        return new Symbol(kind[k], line[k], column[k], tokenVal(k));
+    }
+
+    // the value of token k in the grammar, if it has one
+    private TokenVal tokenVal(int k) {
+        return tokenVal(kind[k], line[k], column[k], text, start[k],
+                        length[k], value[k]);
+    }
+
+    /**
+     * The value in the grammar of a token of the given kind, if it has
+     * one: only IDs, literals, true and false do.
+     */
+    static TokenVal tokenVal(int kind, int line, int column, char[] text,
+                             int start, int length, int value) {
+        switch (kind) {
+        case sym.ID:
+            return new IdTokenVal(line, column, value);
+        case sym.INTLITERAL:
+            return new IntLitTokenVal(line, column, value);
+        case sym.STRINGLITERAL:
+            return new StrLitTokenVal(line, column,
+                                      new String(text, start, length));
+        case sym.TRUE:
+        case sym.FALSE:
+            return new TokenVal(line, column);
+        default:
+            return null;
+        }
+    }
+
+    // an error or warning from the scanner, and the index of the token
+    // it comes before
+    static class Message {
+        int index;
+        boolean fatal;
+        int lineNum;
+        int charNum;
+        String msg;
+
+        Message(int index, boolean fatal, int lineNum, int charNum,
+                String msg) {
+            this.index = index;
+            this.fatal = fatal;
+            this.lineNum = lineNum;
+            this.charNum = charNum;
+            this.msg = msg;
+        }
+
+        void report() {
+            if (fatal) {
+                ErrMsg.fatal(lineNum, charNum, msg);
+            } else {
+                ErrMsg.warn(lineNum, charNum, msg);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java_cup.runtime.*;
+
+// **********************************************************************
+// The TokenPipe class passes tokens from a scanner on one thread to the
+// parser on another, through a Ring, for Pipeline.  The scanner makes
+// each token's Symbol (and TokenVal, for the tokens that have one) as it
+// adds it.  Its errors and warnings go through the ring between the
+// tokens, so the parser's thread reports them in the same place as it
+// would reading a TokenBuffer.
+// **********************************************************************
+
+public class TokenPipe implements TokenSink, java_cup.runtime.Scanner {
+    private Ring<Object> ring;
+    private char[] text;
+
+    // what stopped the scanner, if anything; set before the ring is closed
+    private Throwable failure = null;
+    private boolean done = false;
+
+    /**
+     * A pipe that holds up to capacity tokens and messages (a power of 2).
+     */
+    public TokenPipe(int capacity) {
+        ring = new Ring<Object>(capacity);
+    }
+
+    public void setText(char[] text) {
+        this.text = text;
+    }
+
+    public void add(int kind, int line, int column, int start, int length,
+                    int value) {
+        ring.put(new Symbol(kind, line, column,
+                            TokenBuffer.tokenVal(kind, line, column, text,
+                                                 start, length, value)));
+    }
+
+    public void fatal(int lineNum, int charNum, String msg) {
+        // its place in the ring is its index
+        ring.put(new TokenBuffer.Message(0, true, lineNum, charNum, msg));
+    }
+
+    public void warn(int lineNum, int charNum, String msg) {
+        ring.put(new TokenBuffer.Message(0, false, lineNum, charNum, msg));
+    }
+
+    /**
+     * The scanner is done, because it got to the end of its input or
+     * because failure (if not null) was thrown; for the scanner's thread.
+     */
+    public void close(Throwable failure) {
+        this.failure = failure;
+        ring.close();
+    }
+
+    /**
+     * The parser will read no more; for the parser's thread.
+     */
+    public void abandon() {
+        ring.abandon();
+    }
+
+    /**
+     * The next token, for the parser.  What stopped the scanner, if it
+     * did not get to the end, is thrown here instead of EOF.
+     */
+    public Symbol next_token() throws Exception {
+        while (!done) {
+            Object item = ring.take();
+            if (item == null) {
+                done = true;
+            } else if (item instanceof TokenBuffer.Message) {
+                ((TokenBuffer.Message)item).report();
+            } else {
+                return (Symbol)item;
+            }
+        }
+        if (failure instanceof Exception) {
+            throw (Exception)failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        return new Symbol(sym.EOF);
+    }
+}
@@ -0,0 +1,31 @@
+// **********************************************************************
+// A TokenSink takes the tokens and messages of a scanner, as
+// Yylex.scanInto finds them: a TokenBuffer keeps the whole file's, and a
+// TokenPipe passes them on to a parser on another thread.
+// **********************************************************************
+
+public interface TokenSink {
+    /**
+     * The scanner's text, which start and length index into; set before
+     * the first token is added.
+     */
+    void setText(char[] text);
+
+    /**
+     * Add a token; value is its Names id or int value, or 0.
+     */
+    void add(int kind, int line, int column, int start, int length,
+             int value);
+
+    /**
+     * Report an error, as ErrMsg.fatal would, when the parser gets to
+     * the next token added.
+     */
+    void fatal(int lineNum, int charNum, String msg);
+
+    /**
+     * Report a warning, as ErrMsg.warn would, when the parser gets to
+     * the next token added.
+     */
+    void warn(int lineNum, int charNum, String msg);
+}
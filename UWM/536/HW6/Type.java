@@ -1,8 +1,49 @@
+import java.util.concurrent.*;
+import java.util.function.Function;
+
 /**
  * Type class and its subclasses: 
  * ErrorType, IntType, BoolType, VoidType, StringType, FnType, StructType,
+ *
+ * Types are canonical: there is one instance of each primitive type (and
+ * of FnType, whose signature is kept in the FnSym, and StructDefType), and
+ * one StructType per struct name, from struct.  So equals is a reference
+ * compare (except that any two struct types are equal, as they always
+ * were), and type checking allocates no types.  Use these instead of
+ * calling the constructors.
  */
 abstract public class Type {
+    public static final Type ERROR = new ErrorType();
+    public static final Type INT = new IntType();
+    public static final Type BOOL = new BoolType();
+    public static final Type VOID = new VoidType();
+    public static final Type STRING = new StringType();
+    public static final Type FN = new FnType();
+    public static final Type STRUCT_DEF = new StructDefType();
+
+    // struct name -> its StructType
+    private static final ConcurrentMap<String, StructType> structs =
+        new ConcurrentHashMap<String, StructType>();
+    private static final Function<String, StructType> newStruct =
+        new Function<String, StructType>() {
+            public StructType apply(String name) {
+                return new StructType(name);
+            }
+        };
+
+    /**
+     * The type of a variable of the struct called name.
+     */
+    public static StructType struct(String name) {
+        return structs.computeIfAbsent(name, newStruct);
+    }
+
+    /**
+     * Forget the struct types, for compiling another file.
+     */
+    public static void reset() {
+        structs.clear();
+    }
 
     /**
      * default constructor
@@ -62,7 +103,7 @@ class ErrorType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isErrorType();
+        return t == this;
     }
 
     public String toString() {
@@ -80,7 +121,7 @@ class IntType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isIntType();
+        return t == this;
     }
 
     public String toString() {
@@ -98,7 +139,7 @@ class BoolType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isBoolType();
+        return t == this;
     }
 
     public String toString() {
@@ -116,7 +157,7 @@ class VoidType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isVoidType();
+        return t == this;
     }
 
     public String toString() {
@@ -134,7 +175,7 @@ class StringType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isStringType();
+        return t == this;
     }
 
     public String toString() {
@@ -152,7 +193,7 @@ class FnType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isFnType();
+        return t == this;
     }
 
     public String toString() {
@@ -164,10 +205,10 @@ class FnType extends Type {
 // StructType
 // **********************************************************************
 class StructType extends Type {
-    private IdNode myId;
+    private String myName;
     
-    public StructType(IdNode id) {
-        myId = id;
+    StructType(String name) {
+        myName = name;
     }
     
     public boolean isStructType() {
@@ -179,7 +220,7 @@ class StructType extends Type {
     }
 
     public String toString() {
-        return myId.name();
+        return myName;
     }
 }
 
@@ -193,7 +234,7 @@ class StructDefType extends Type {
     }
 
     public boolean equals(Type t) {
-        return t.isStructDefType();
+        return t == this;
     }
 
     public String toString() {
@@ -0,0 +1,309 @@
+import java.io.*;
+import java.util.*;
+
+// **********************************************************************
+// The Vm class runs VmCode in-process.
+//
+// All frames live in one int array that is allocated up front (and only
+// grown if a deep recursion needs it): a call puts the callee's frame
+// just above the caller's, copies the pending arguments into its first
+// slots and zeroes the rest.  The call stack (return address, caller and
+// its frame, and where the result goes) is kept in parallel int arrays, so
+// running a program allocates nothing but its output.
+//
+// Output goes to a PrintStream and READ takes one integer per line of
+// input, as syscalls 1, 4 and 5 do under SPIM.
+// **********************************************************************
+
+public class Vm {
+    // how deep calls may nest before the program is stopped
+    private static final int MAX_DEPTH = 1 << 20;
+
+    private VmCode program;
+    private BufferedReader in;
+    private PrintStream out;
+
+    private int[] globals;
+    private int[] stack = new int[1 << 16];
+    private int[] args = new int[256];
+
+    // one entry per active call
+    private int[] retPc = new int[1024];
+    private int[] retBase = new int[1024];
+    private int[] retDst = new int[1024];
+    private int[] retFn = new int[1024];
+
+    private long instructions;
+
+    public Vm(VmCode program, InputStream in, PrintStream out) {
+        this.program = program;
+        this.in = new BufferedReader(new InputStreamReader(in));
+        this.out = out;
+        this.globals = new int[program.getNumGlobals()];
+    }
+
+    /**
+     * How many instructions the last run executed.
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Run the program from main until main returns.
+     */
+    public void run() throws VmException {
+        int main = program.getMain();
+        if (main < 0) {
+            throw new VmException("no main function");
+        }
+        try {
+            execute(main);
+        } finally {
+            out.flush();
+        }
+    }
+
+    // **********************************************************************
+    // the dispatch loop
+    // **********************************************************************
+
+    private void execute(int main) throws VmException {
+        final int[] code = program.getCode();
+        final String[] strings = program.getStrings();
+        int[] frame = stack;
+        int fn = main;
+        int pc = program.getEntry(main);
+        int base = 0;
+        int depth = 0;
+        int numArgs = 0;
+        long count = 0;
+
+        Arrays.fill(globals, 0);
+        ensureStack(program.getFrameSize(main));
+        frame = stack;
+        Arrays.fill(frame, 0, program.getFrameSize(main), 0);
+
+        while (true) {
+            count++;
+            switch (code[pc]) {
+            case VmCode.LI:
+                frame[base + code[pc + 1]] = code[pc + 2];
+                pc += 3;
+                break;
+            case VmCode.MOVE:
+                frame[base + code[pc + 1]] = frame[base + code[pc + 2]];
+                pc += 3;
+                break;
+            case VmCode.GLOAD:
+                frame[base + code[pc + 1]] = globals[code[pc + 2]];
+                pc += 3;
+                break;
+            case VmCode.GSTORE:
+                globals[code[pc + 1]] = frame[base + code[pc + 2]];
+                pc += 3;
+                break;
+            case VmCode.NEG: {
+                // NEG, ADD and SUB trap on overflow, as they do in MIPS
+                int a = frame[base + code[pc + 2]];
+                if (a == Integer.MIN_VALUE) {
+                    instructions = count;
+                    throw new VmException("arithmetic overflow", program, pc);
+                }
+                frame[base + code[pc + 1]] = -a;
+                pc += 3;
+                break;
+            }
+            case VmCode.NOT:
+                frame[base + code[pc + 1]] =
+                    frame[base + code[pc + 2]] == 0 ? 1 : 0;
+                pc += 3;
+                break;
+            case VmCode.ADD: {
+                int a = frame[base + code[pc + 2]];
+                int b = frame[base + code[pc + 3]];
+                int sum = a + b;
+                if (((a ^ sum) & (b ^ sum)) < 0) {
+                    instructions = count;
+                    throw new VmException("arithmetic overflow", program, pc);
+                }
+                frame[base + code[pc + 1]] = sum;
+                pc += 4;
+                break;
+            }
+            case VmCode.SUB: {
+                int a = frame[base + code[pc + 2]];
+                int b = frame[base + code[pc + 3]];
+                int diff = a - b;
+                if (((a ^ b) & (a ^ diff)) < 0) {
+                    instructions = count;
+                    throw new VmException("arithmetic overflow", program, pc);
+                }
+                frame[base + code[pc + 1]] = diff;
+                pc += 4;
+                break;
+            }
+            case VmCode.MUL:
+                frame[base + code[pc + 1]] =
+                    frame[base + code[pc + 2]] * frame[base + code[pc + 3]];
+                pc += 4;
+                break;
+            case VmCode.DIV: {
+                int divisor = frame[base + code[pc + 3]];
+                if (divisor == 0) {
+                    instructions = count;
+                    throw new VmException("division by zero", program, pc);
+                }
+                frame[base + code[pc + 1]] =
+                    frame[base + code[pc + 2]] / divisor;
+                pc += 4;
+                break;
+            }
+            case VmCode.SEQ:
+            case VmCode.SNE:
+            case VmCode.SLT:
+            case VmCode.SGT:
+            case VmCode.SLE:
+            case VmCode.SGE: {
+                int a = frame[base + code[pc + 2]];
+                int b = frame[base + code[pc + 3]];
+                boolean result;
+                switch (code[pc]) {
+                case VmCode.SEQ: result = a == b; break;
+                case VmCode.SNE: result = a != b; break;
+                case VmCode.SLT: result = a < b; break;
+                case VmCode.SGT: result = a > b; break;
+                case VmCode.SLE: result = a <= b; break;
+                default:         result = a >= b; break;
+                }
+                frame[base + code[pc + 1]] = result ? 1 : 0;
+                pc += 4;
+                break;
+            }
+            case VmCode.STREQ:
+                frame[base + code[pc + 1]] =
+                    strings[frame[base + code[pc + 2]]].equals(
+                        strings[frame[base + code[pc + 3]]]) ? 1 : 0;
+                pc += 4;
+                break;
+            case VmCode.JUMP:
+                pc = code[pc + 1];
+                break;
+            case VmCode.BRZ:
+                pc = frame[base + code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                break;
+            case VmCode.BNZ:
+                pc = frame[base + code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+                break;
+            case VmCode.PARAM:
+                if (numArgs == args.length) {
+                    args = Arrays.copyOf(args, args.length * 2);
+                }
+                args[numArgs++] = frame[base + code[pc + 1]];
+                pc += 2;
+                break;
+            case VmCode.CALL: {
+                int f = code[pc + 2];
+                if (depth == MAX_DEPTH) {
+                    instructions = count;
+                    throw new VmException("call stack overflow", program, pc);
+                }
+                if (depth == retPc.length) {
+                    retPc = Arrays.copyOf(retPc, depth * 2);
+                    retBase = Arrays.copyOf(retBase, depth * 2);
+                    retDst = Arrays.copyOf(retDst, depth * 2);
+                    retFn = Arrays.copyOf(retFn, depth * 2);
+                }
+                retPc[depth] = pc + 3;
+                retBase[depth] = base;
+                retDst[depth] = code[pc + 1];
+                retFn[depth] = fn;
+                depth++;
+
+                base += program.getFrameSize(fn);
+                fn = f;
+                int size = program.getFrameSize(f);
+                ensureStack(base + size);
+                frame = stack;
+                // the first formal is the last argument pushed
+                int n = program.getNumParams(f);
+                for (int k = 0; k < n; k++) {
+                    frame[base + k] = args[numArgs - 1 - k];
+                }
+                numArgs -= n;
+                Arrays.fill(frame, base + n, base + size, 0);
+                pc = program.getEntry(f);
+                break;
+            }
+            case VmCode.RET:
+            case VmCode.RETV: {
+                int value = code[pc] == VmCode.RET ? frame[base + code[pc + 1]]
+                                                   : 0;
+                if (depth == 0) {
+                    instructions = count;
+                    return;
+                }
+                depth--;
+                pc = retPc[depth];
+                base = retBase[depth];
+                fn = retFn[depth];
+                if (retDst[depth] >= 0) {
+                    frame[base + retDst[depth]] = value;
+                }
+                break;
+            }
+            case VmCode.READ:
+                frame[base + code[pc + 1]] = readInt();
+                pc += 2;
+                break;
+            case VmCode.WRITEI:
+                out.print(frame[base + code[pc + 1]]);
+                pc += 2;
+                break;
+            case VmCode.WRITES:
+                out.print(strings[frame[base + code[pc + 1]]]);
+                pc += 2;
+                break;
+            default:
+                instructions = count;
+                throw new VmException("bad opcode " + code[pc], program, pc);
+            }
+        }
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size));
+        }
+    }
+
+    private int readInt() {
+        out.flush();
+        return CmmRuntime.readInt(in);
+    }
+
+    // **********************************************************************
+    // VmException
+    // **********************************************************************
+
+    public static class VmException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public VmException(String msg) {
+            super(msg);
+        }
+
+        // msg, plus the function that the instruction at pc is in
+        VmException(String msg, VmCode program, int pc) {
+            super(msg + " in " + functionAt(program, pc));
+        }
+
+        private static String functionAt(VmCode program, int pc) {
+            int f = program.getNumFunctions() - 1;
+            while (f > 0 && program.getEntry(f) > pc) {
+                f--;
+            }
+            return program.getName(f);
+        }
+    }
+}
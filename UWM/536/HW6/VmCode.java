@@ -0,0 +1,143 @@
+// **********************************************************************
+// The VmCode class is a C-- program compiled (by VmCompiler) for the Vm
+// interpreter: a single array of int-coded instructions holding every
+// function, plus the tables that the instructions index into.
+//
+// Values are ints; bools are 0 and 1, and strings are indexes into the
+// string table.  Register operands are slots of the current frame, which
+// holds a function's formals (first formal first), then its locals, then
+// its TAC temps.  The instructions, with their operands, are:
+//
+//     LI       d imm       d = imm
+//     MOVE     d s         d = s
+//     GLOAD    d g         d = global g
+//     GSTORE   g s         global g = s
+//     NEG      d s         d = -s
+//     NOT      d s         d = !s
+//     ADD through SGE
+//              d a b       d = a op b
+//     STREQ    d a b       d = (strings a and b have the same text)
+//     JUMP     pc          continue at code index pc
+//     BRZ      s pc        if s == 0 continue at pc
+//     BNZ      s pc        if s != 0 continue at pc
+//     PARAM    s           push s as the next argument (last one first)
+//     CALL     d f         call function f; d = its result (-1: unused)
+//     RET      s           return s
+//     RETV                 return with no value
+//     READ     d           d = integer read from the input
+//     WRITEI   s           print s as an integer
+//     WRITES   s           print string s
+// **********************************************************************
+
+public class VmCode {
+    public static final int LI = 0;
+    public static final int MOVE = 1;
+    public static final int GLOAD = 2;
+    public static final int GSTORE = 3;
+    public static final int NEG = 4;
+    public static final int NOT = 5;
+    public static final int ADD = 6;
+    public static final int SUB = 7;
+    public static final int MUL = 8;
+    public static final int DIV = 9;
+    public static final int SEQ = 10;
+    public static final int SNE = 11;
+    public static final int SLT = 12;
+    public static final int SGT = 13;
+    public static final int SLE = 14;
+    public static final int SGE = 15;
+    public static final int STREQ = 16;
+    public static final int JUMP = 17;
+    public static final int BRZ = 18;
+    public static final int BNZ = 19;
+    public static final int PARAM = 20;
+    public static final int CALL = 21;
+    public static final int RET = 22;
+    public static final int RETV = 23;
+    public static final int READ = 24;
+    public static final int WRITEI = 25;
+    public static final int WRITES = 26;
+
+    // for printing, by opcode
+    private static final String[] NAMES = {
+        "li", "move", "gload", "gstore", "neg", "not", "add", "sub", "mul",
+        "div", "seq", "sne", "slt", "sgt", "sle", "sge", "streq", "jump",
+        "brz", "bnz", "param", "call", "ret", "retv", "read", "writei",
+        "writes"
+    };
+
+    // number of operands, by opcode
+    private static final int[] OPERANDS = {
+        2, 2, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 1, 2, 2, 1, 2, 1,
+        0, 1, 1, 1
+    };
+
+    private int[] code;
+    private String[] strings;
+    private String[] globals;
+
+    // per function, indexed by function number
+    private String[] names;
+    private int[] entries;
+    private int[] numParams;
+    private int[] frameSizes;
+
+    private int main;
+
+    public VmCode(int[] code, String[] strings, String[] globals,
+                  String[] names, int[] entries, int[] numParams,
+                  int[] frameSizes, int main) {
+        this.code = code;
+        this.strings = strings;
+        this.globals = globals;
+        this.names = names;
+        this.entries = entries;
+        this.numParams = numParams;
+        this.frameSizes = frameSizes;
+        this.main = main;
+    }
+
+    public int[] getCode() { return code; }
+    public String[] getStrings() { return strings; }
+    public int getNumGlobals() { return globals.length; }
+    public int getNumFunctions() { return names.length; }
+    public String getName(int f) { return names[f]; }
+    public int getEntry(int f) { return entries[f]; }
+    public int getNumParams(int f) { return numParams[f]; }
+    public int getFrameSize(int f) { return frameSizes[f]; }
+
+    /**
+     * The function to start running at, or -1 if there is no main.
+     */
+    public int getMain() {
+        return main;
+    }
+
+    /**
+     * How many ints the instruction starting with op takes up.
+     */
+    public static int length(int op) {
+        return 1 + OPERANDS[op];
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int g = 0; g < globals.length; g++) {
+            sb.append("global ").append(g).append(' ').append(globals[g])
+              .append('\n');
+        }
+        for (int f = 0; f < names.length; f++) {
+            sb.append('\n').append(names[f]).append(" (").append(numParams[f])
+              .append(" params, frame ").append(frameSizes[f]).append(")\n");
+            int end = f + 1 < names.length ? entries[f + 1] : code.length;
+            for (int pc = entries[f]; pc < end; pc += length(code[pc])) {
+                sb.append(String.format("%6d  %-7s", pc, NAMES[code[pc]]));
+                for (int k = 1; k <= OPERANDS[code[pc]]; k++) {
+                    sb.append(' ').append(code[pc + k]);
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.*;
+
+// **********************************************************************
+// The VmCompiler class translates a TacProgram into VmCode for the Vm
+// interpreter, as an alternative to generating MIPS with TacSelector.
+//
+// Each TAC temp and each source variable of a function gets a slot of
+// the function's frame, so LOAD and STORE of locals and formals become
+// plain moves between slots.  Labels become code indexes, and function
+// names and string literals become table indexes.
+// **********************************************************************
+
+public class VmCompiler {
+    // the code generated so far
+    private int[] code = new int[1024];
+    private int len = 0;
+
+    private Map<String, Integer> globals = new HashMap<String, Integer>();
+    private Map<String, Integer> functions = new HashMap<String, Integer>();
+
+    private TacProgram program;
+
+    // for the current function: label -> code index, and the code
+    // indexes that refer to each label
+    private Map<String, Integer> labels = new HashMap<String, Integer>();
+    private Map<Integer, String> fixups = new HashMap<Integer, String>();
+    private int numParams;
+    private int numLocals;
+
+    /**
+     * Translate the whole program.
+     */
+    public VmCode compile(TacProgram program) {
+        this.program = program;
+        List<String> globalNames = program.getGlobals();
+        for (int g = 0; g < globalNames.size(); g++) {
+            globals.put(globalNames.get(g), g);
+        }
+
+        List<TacFunction> fns = program.getFunctions();
+        String[] names = new String[fns.size()];
+        int[] entries = new int[fns.size()];
+        int[] params = new int[fns.size()];
+        int[] frameSizes = new int[fns.size()];
+        int main = -1;
+        for (int f = 0; f < fns.size(); f++) {
+            TacFunction fn = fns.get(f);
+            names[f] = fn.getName();
+            functions.put(fn.getName(), f);
+            if (fn.isMain()) {
+                main = f;
+            }
+        }
+
+        for (int f = 0; f < fns.size(); f++) {
+            TacFunction fn = fns.get(f);
+            entries[f] = len;
+            params[f] = fn.getNumParams();
+            frameSizes[f] = compile(fn);
+        }
+
+        Map<String, Integer> strings = program.getStrings();
+        String[] texts = new String[strings.size()];
+        for (Map.Entry<String, Integer> entry : strings.entrySet()) {
+            texts[entry.getValue()] = TacInstr.unquote(entry.getKey());
+        }
+
+        return new VmCode(Arrays.copyOf(code, len), texts,
+                          globalNames.toArray(new String[0]), names, entries,
+                          params, frameSizes, main);
+    }
+
+    /**
+     * Translate one function, returning the size of its frame.
+     */
+    private int compile(TacFunction fn) {
+        numParams = fn.getNumParams();
+        numLocals = fn.getLocalsSize() / 4;
+        labels.clear();
+        fixups.clear();
+
+        for (TacInstr instr : fn.getCode()) {
+            compile(instr);
+        }
+        emit(VmCode.RETV);   // for falling off the end
+
+        for (Map.Entry<Integer, String> fixup : fixups.entrySet()) {
+            code[fixup.getKey()] = labels.get(fixup.getValue());
+        }
+        return numParams + numLocals + fn.getNumTemps();
+    }
+
+    private void compile(TacInstr instr) {
+        int op = instr.getOp();
+        switch (op) {
+        case TacInstr.LI:
+            emit(VmCode.LI, temp(instr.getDst()), instr.getImm());
+            break;
+
+        case TacInstr.STR:
+            emit(VmCode.LI, temp(instr.getDst()),
+                 program.getString(instr.getText()));
+            break;
+
+        case TacInstr.LOAD:
+            if (instr.getVar().isGlobal()) {
+                emit(VmCode.GLOAD, temp(instr.getDst()), global(instr.getVar()));
+            } else {
+                emit(VmCode.MOVE, temp(instr.getDst()),
+                     instr.getVar().slot(numParams));
+            }
+            break;
+
+        case TacInstr.STORE:
+            if (instr.getVar().isGlobal()) {
+                emit(VmCode.GSTORE, global(instr.getVar()),
+                     temp(instr.getSrc1()));
+            } else {
+                emit(VmCode.MOVE, instr.getVar().slot(numParams),
+                     temp(instr.getSrc1()));
+            }
+            break;
+
+        case TacInstr.MOVE:
+            emit(VmCode.MOVE, temp(instr.getDst()), temp(instr.getSrc1()));
+            break;
+
+        case TacInstr.NEG:
+        case TacInstr.NOT:
+            emit(op == TacInstr.NEG ? VmCode.NEG : VmCode.NOT,
+                 temp(instr.getDst()), temp(instr.getSrc1()));
+            break;
+
+        case TacInstr.LABEL:
+            labels.put(instr.getText(), len);
+            break;
+
+        case TacInstr.JUMP:
+            emit(VmCode.JUMP, 0);
+            fixups.put(len - 1, instr.getText());
+            break;
+
+        case TacInstr.BRZ:
+        case TacInstr.BNZ:
+            emit(op == TacInstr.BRZ ? VmCode.BRZ : VmCode.BNZ,
+                 temp(instr.getSrc1()), 0);
+            fixups.put(len - 1, instr.getText());
+            break;
+
+        case TacInstr.PARAM:
+            emit(VmCode.PARAM, temp(instr.getSrc1()));
+            break;
+
+        case TacInstr.CALL:
+            emit(VmCode.CALL, instr.getDst() < 0 ? -1 : temp(instr.getDst()),
+                 functions.get(instr.getText()));
+            break;
+
+        case TacInstr.RET:
+            if (instr.getSrc1() < 0) {
+                emit(VmCode.RETV);
+            } else {
+                emit(VmCode.RET, temp(instr.getSrc1()));
+            }
+            break;
+
+        case TacInstr.READ:
+            emit(VmCode.READ, temp(instr.getDst()));
+            break;
+
+        case TacInstr.WRITEI:
+        case TacInstr.WRITES:
+            emit(op == TacInstr.WRITEI ? VmCode.WRITEI : VmCode.WRITES,
+                 temp(instr.getSrc1()));
+            break;
+
+        default: // ADD through STREQ
+            emit(op - TacInstr.ADD + VmCode.ADD, temp(instr.getDst()),
+                 temp(instr.getSrc1()), temp(instr.getSrc2()));
+            break;
+        }
+    }
+
+    // **********************************************************************
+    // operands
+    // **********************************************************************
+
+    private int temp(int t) {
+        return numParams + numLocals + t;
+    }
+
+    private int global(TacVar var) {
+        return globals.get(var.getName());
+    }
+
+    // **********************************************************************
+    // emitting code
+    // **********************************************************************
+
+    private void emit(int... words) {
+        if (len + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2,
+                                                len + words.length));
+        }
+        for (int word : words) {
+            code[len++] = word;
+        }
+    }
+}
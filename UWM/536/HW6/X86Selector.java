@@ -0,0 +1,365 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+
+// **********************************************************************
+// The X86Selector class generates x86-64 assembly (GNU as, AT&T syntax,
+// System V ABI) from a TacProgram, as TacSelector does for MIPS.  The
+// output is linked with cmm_runtime.c, which provides main (it calls
+// the C-- main and flushes the output) and the read and write routines:
+//
+//     gcc -o prog prog.s cmm_runtime.c
+//
+// C-- functions are named cmm_<name> and globals cmm_var_<name>, so they
+// cannot collide with the C library.  Every variable and temp lives in
+// a 4-byte slot below %rbp:
+//     locals       at -4, -8, ... (in C-- declaration order)
+//     temps        below the locals
+// Arguments are pushed as 8-byte values, last argument first, as the
+// MIPS code does, so formal k is at 16 + 8k(%rbp); the caller pops them.
+// Strings are indexes into the cmm_strings table of pointers, which
+// keeps every value 32 bits wide.  The runtime is called with %rsp
+// aligned to 16 bytes, as the ABI requires; %r12 (which the runtime
+// preserves) holds the unaligned %rsp meanwhile.  Add, subtract and
+// negate trap on overflow, as the MIPS add, sub and neg do: they jump to
+// .Loverflow, which calls cmm_overflow to end the program.  A division
+// by zero jumps to .Ldivzero, which calls cmm_divzero; a division by -1
+// is done as a negate that wraps around, since idivl would fault on
+// the smallest int divided by -1 where the other back ends give it back.
+// **********************************************************************
+
+public class X86Selector {
+    private AsmBuffer out = new AsmBuffer();
+
+    private TacProgram program;
+
+    // for the current function
+    private TacFunction fn;
+    private int numLocals;
+
+    // the number of divisions so far, to name their labels
+    private int numDivs;
+
+    /**
+     * Generate code for program and write it to channel.
+     */
+    public void select(TacProgram program, WritableByteChannel channel)
+            throws IOException {
+        this.program = program;
+        out.reset();
+        numDivs = 0;
+        out.put("\t.text\n");
+        for (TacFunction fn : program.getFunctions()) {
+            select(fn);
+        }
+        out.put("\n.Loverflow:\n");
+        op("andq", "$-16", "%rsp");
+        op("call", "cmm_overflow");
+        out.put(".Ldivzero:\n");
+        op("andq", "$-16", "%rsp");
+        op("call", "cmm_divzero");
+
+        if (!program.getGlobals().isEmpty()) {
+            out.put("\n\t.data\n\t.align 4\n");
+            for (String global : program.getGlobals()) {
+                out.put("cmm_var_").put(global).put(":\t.long 0\n");
+            }
+        }
+
+        out.put("\n\t.section .rodata\n");
+        Map<String, Integer> strings = program.getStrings();
+        for (Map.Entry<String, Integer> entry : strings.entrySet()) {
+            out.put(".LS").put(entry.getValue()).put(":\t.asciz \"")
+               .put(escape(TacInstr.unquote(entry.getKey()))).put("\"\n");
+        }
+        out.put("\n\t.section .data.rel.ro\n\t.align 8\ncmm_strings:\n");
+        for (int k = 0; k < strings.size(); k++) {
+            out.put("\t.quad .LS").put(k).put('\n');
+        }
+        out.put("\t.section .note.GNU-stack,\"\",@progbits\n");
+        out.writeTo(channel);
+    }
+
+    private void select(TacFunction fn) {
+        this.fn = fn;
+        numLocals = fn.getLocalsSize() / 4;
+        int frame = 4 * (numLocals + fn.getNumTemps());
+        frame = (frame + 15) & ~15;
+
+        out.put("\n\t.globl cmm_").put(fn.getName()).put('\n');
+        out.put("cmm_").put(fn.getName()).put(":\n");
+        op("pushq", "%rbp");
+        op("movq", "%rsp", "%rbp");
+        if (frame > 0) {
+            out.put("\tsubq\t$").put(frame).put(", %rsp\n");
+        }
+
+        for (TacInstr instr : fn.getCode()) {
+            select(instr);
+        }
+
+        out.put(fn.getExitLabel()).put(":\n");
+        op("leave");
+        op("ret");
+    }
+
+    // **********************************************************************
+    // instruction selection
+    // **********************************************************************
+
+    private void select(TacInstr instr) {
+        int op = instr.getOp();
+        switch (op) {
+        case TacInstr.LI:
+            out.put("\tmovl\t$").put(instr.getImm()).put(", ");
+            temp(instr.getDst());
+            out.put('\n');
+            break;
+
+        case TacInstr.STR:
+            out.put("\tmovl\t$").put(program.getString(instr.getText()))
+               .put(", ");
+            temp(instr.getDst());
+            out.put('\n');
+            break;
+
+        case TacInstr.LOAD:
+            out.put("\tmovl\t");
+            var(instr.getVar());
+            out.put(", %eax\n");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.STORE:
+            load(instr.getSrc1(), "%eax");
+            out.put("\tmovl\t%eax, ");
+            var(instr.getVar());
+            out.put('\n');
+            break;
+
+        case TacInstr.MOVE:
+            load(instr.getSrc1(), "%eax");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.NEG:
+            load(instr.getSrc1(), "%eax");
+            op("negl", "%eax");
+            op("jo", ".Loverflow");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.NOT:
+            load(instr.getSrc1(), "%eax");
+            op("xorl", "$1", "%eax");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.ADD:
+        case TacInstr.SUB:
+        case TacInstr.MUL:
+            load(instr.getSrc1(), "%eax");
+            out.put(op == TacInstr.ADD ? "\taddl\t"
+                    : op == TacInstr.SUB ? "\tsubl\t" : "\timull\t");
+            temp(instr.getSrc2());
+            out.put(", %eax\n");
+            if (op != TacInstr.MUL) {
+                op("jo", ".Loverflow");
+            }
+            store(instr.getDst());
+            break;
+
+        case TacInstr.DIV: {
+            String divide = ".LD" + numDivs++;
+            load(instr.getSrc1(), "%eax");
+            load(instr.getSrc2(), "%ecx");
+            op("testl", "%ecx", "%ecx");
+            op("je", ".Ldivzero");
+            op("cmpl", "$-1", "%ecx");
+            op("jne", divide);
+            op("negl", "%eax");
+            op("jmp", divide + "_done");
+            out.put(divide).put(":\n");
+            op("cltd");
+            op("idivl", "%ecx");
+            out.put(divide).put("_done:\n");
+            store(instr.getDst());
+            break;
+        }
+
+        case TacInstr.SEQ:
+        case TacInstr.SNE:
+        case TacInstr.SLT:
+        case TacInstr.SGT:
+        case TacInstr.SLE:
+        case TacInstr.SGE:
+            load(instr.getSrc1(), "%eax");
+            out.put("\tcmpl\t");
+            temp(instr.getSrc2());
+            out.put(", %eax\n");
+            op(setOp(op), "%al");
+            op("movzbl", "%al", "%eax");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.STREQ:
+            loadString(instr.getSrc1(), "%rdi");
+            loadString(instr.getSrc2(), "%rsi");
+            callRuntime("cmm_str_eq");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.LABEL:
+            out.put(instr.getText()).put(":\n");
+            break;
+
+        case TacInstr.JUMP:
+            out.put("\tjmp\t").put(instr.getText()).put('\n');
+            break;
+
+        case TacInstr.BRZ:
+        case TacInstr.BNZ:
+            out.put("\tcmpl\t$0, ");
+            temp(instr.getSrc1());
+            out.put(op == TacInstr.BRZ ? "\n\tje\t" : "\n\tjne\t")
+               .put(instr.getText()).put('\n');
+            break;
+
+        case TacInstr.PARAM:
+            out.put("\tmovslq\t");
+            temp(instr.getSrc1());
+            out.put(", %rax\n");
+            op("pushq", "%rax");
+            break;
+
+        case TacInstr.CALL:
+            out.put("\tcall\tcmm_").put(instr.getText()).put('\n');
+            if (instr.getImm() > 0) {
+                out.put("\taddq\t$").put(8 * instr.getImm()).put(", %rsp\n");
+            }
+            if (instr.getDst() >= 0) {
+                store(instr.getDst());
+            }
+            break;
+
+        case TacInstr.RET:
+            if (instr.getSrc1() >= 0) {
+                load(instr.getSrc1(), "%eax");
+            }
+            out.put("\tjmp\t").put(fn.getExitLabel()).put('\n');
+            break;
+
+        case TacInstr.READ:
+            callRuntime("cmm_read_int");
+            store(instr.getDst());
+            break;
+
+        case TacInstr.WRITEI:
+            load(instr.getSrc1(), "%edi");
+            callRuntime("cmm_write_int");
+            break;
+
+        case TacInstr.WRITES:
+            loadString(instr.getSrc1(), "%rdi");
+            callRuntime("cmm_write_string");
+            break;
+        }
+    }
+
+    // call into the runtime with %rsp aligned to 16 bytes
+    private void callRuntime(String name) {
+        op("pushq", "%r12");
+        op("movq", "%rsp", "%r12");
+        op("andq", "$-16", "%rsp");
+        out.put("\tcall\t").put(name).put('\n');
+        op("movq", "%r12", "%rsp");
+        op("popq", "%r12");
+    }
+
+    private static String setOp(int op) {
+        switch (op) {
+        case TacInstr.SEQ: return "sete";
+        case TacInstr.SNE: return "setne";
+        case TacInstr.SLT: return "setl";
+        case TacInstr.SGT: return "setg";
+        case TacInstr.SLE: return "setle";
+        default:           return "setge";
+        }
+    }
+
+    // **********************************************************************
+    // operands
+    // **********************************************************************
+
+    private void op(String opcode) {
+        out.put('\t').put(opcode).put('\n');
+    }
+
+    private void op(String opcode, String arg) {
+        out.put('\t').put(opcode).put('\t').put(arg).put('\n');
+    }
+
+    private void op(String opcode, String arg1, String arg2) {
+        out.put('\t').put(opcode).put('\t').put(arg1).put(", ").put(arg2)
+           .put('\n');
+    }
+
+    // the slot of temp t
+    private void temp(int t) {
+        out.put(-4 * (numLocals + t + 1)).put("(%rbp)");
+    }
+
+    private void load(int t, String reg) {
+        out.put("\tmovl\t");
+        temp(t);
+        out.put(", ").put(reg).put('\n');
+    }
+
+    // store %eax to temp t
+    private void store(int t) {
+        out.put("\tmovl\t%eax, ");
+        temp(t);
+        out.put('\n');
+    }
+
+    // load the address of the string that temp t holds the index of
+    private void loadString(int t, String reg) {
+        out.put("\tmovslq\t");
+        temp(t);
+        out.put(", %rax\n");
+        op("leaq", "cmm_strings(%rip)", "%rcx");
+        op("movq", "(%rcx,%rax,8)", reg);
+    }
+
+    // formals are at fp+4, fp+8, ... and locals at fp-8, fp-12, ... in
+    // the MIPS frame layout that name analysis assigns
+    private void var(TacVar var) {
+        if (var.isGlobal()) {
+            out.put("cmm_var_").put(var.getName()).put("(%rip)");
+            return;
+        }
+        int offset = var.getFpOffset();
+        if (offset > 0) {
+            out.put(16 + 2 * (offset - 4));
+        } else {
+            out.put(offset + 4);
+        }
+        out.put("(%rbp)");
+    }
+
+    // text, quoted for a GNU as .asciz
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < text.length(); k++) {
+            char c = text.charAt(k);
+            switch (c) {
+            case '\n':  sb.append("\\n"); break;
+            case '\t':  sb.append("\\t"); break;
+            case '"':   sb.append("\\\""); break;
+            case '\\':  sb.append("\\\\"); break;
+            default:    sb.append(c); break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -1,5 +1,6 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 // **********************************************************************
 // The ASTnode class defines the nodes of the abstract-syntax tree that
@@ -141,7 +142,15 @@ class ProgramNode extends ASTnode {
     public void nameAnalysis() {
         SymTable symTab = new SymTable();
         myDeclList.nameAnalysis(symTab);
-        
+        checkMain(symTab);
+    }
+
+    /**
+     * checkMain
+     * Reports an error if the outermost scope of symTab, which holds the
+     * whole program, has no main function.
+     */
+    public static void checkMain(SymTable symTab) {
         TSym mainSym = null;
         try {
         	mainSym = symTab.lookupGlobal("main");
@@ -159,6 +168,23 @@ class ProgramNode extends ASTnode {
         myDeclList.typeCheck();
     }
 
+    /**
+     * typeCheck
+     * As typeCheck(), but checking the functions in parallel on pool.
+     */
+    public void typeCheck(ExecutorService pool) {
+        myDeclList.typeCheck(pool);
+    }
+
+    /**
+     * constantFold
+     * Fold constant expressions and prune constant branches in every
+     * function.  Runs after typeCheck and before codeGen.
+     */
+    public void constantFold() {
+        myDeclList.constantFold();
+    }
+
     public void unparse(PrintWriter p, int indent) {
         myDeclList.unparse(p, indent);
     }
@@ -169,6 +195,27 @@ class ProgramNode extends ASTnode {
 	public void codeGen() {
 		myDeclList.codeGen();
 	}
+
+	/**
+	 * codeGen
+	 * As codeGen(), but generating the functions in parallel on pool (or
+	 * on this thread if pool is null), and reusing the code of functions
+	 * that are in cache (if not null); the output is the same.
+	 */
+	public void codeGen(ExecutorService pool, CodeCache cache) {
+		myDeclList.codeGen(pool, cache);
+	}
+
+	/**
+	 * lower
+	 * Translate the program to three-address code, as an alternative
+	 * to codeGen.
+	 */
+	public TacProgram lower() {
+		TacProgram prog = new TacProgram();
+		myDeclList.lower(prog);
+		return prog;
+	}
 }
 
 class DeclListNode extends ASTnode {
@@ -182,6 +229,53 @@ class DeclListNode extends ASTnode {
         }
 	}
 
+	/**
+	 * codeGen
+	 * Generate each function on pool (or right away, if pool is null),
+	 * with its own Codegen.Context and ErrMsg.Sink, unless its code is in
+	 * cache; then (on this thread, in source order) merge its code and
+	 * report its messages.  Everything else is generated here, in its
+	 * place between the functions.
+	 */
+	public void codeGen(ExecutorService pool, CodeCache cache) {
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		List<DeclNode> decls = new ArrayList<DeclNode>(myDecls);
+		for (int k = 0; k < decls.size(); k++) {
+			DeclNode node = decls.get(k);
+			if (node instanceof FnDeclNode) {
+				// its source runs from its name up to the next decl's
+				int from = -1, to = -1;
+				if (cache != null) {
+					from = cache.offset(node.lineNum(), node.charNum());
+					to = k + 1 < decls.size()
+						? cache.offset(decls.get(k + 1).lineNum(),
+						               decls.get(k + 1).charNum())
+						: Integer.MAX_VALUE;
+				}
+				Task task = new Task((FnDeclNode)node, cache, node.lineNum(),
+				                     from, to);
+				if (pool != null) {
+					results.add(pool.submit(task));
+				} else {
+					FutureTask<Result> result = new FutureTask<Result>(task);
+					result.run();
+					results.add(result);
+				}
+			}
+		}
+
+		Iterator<Future<Result>> it = results.iterator();
+		for (DeclNode node : myDecls) {
+			if (node instanceof FnDeclNode) {
+				Result result = join(it.next());
+				ErrMsg.report(result.messages);
+				Codegen.merge(result.code);
+			} else {
+				node.codeGen();
+			}
+		}
+	}
+
 	/**
      * nameAnalysis
      * Given a symbol table symTab, process all of the decls in the list.
@@ -215,6 +309,32 @@ class DeclListNode extends ASTnode {
         }
     }
 
+    /**
+     * typeCheck
+     * Check each function on pool, then report the messages of each in
+     * source order.  Other decls have nothing to check.
+     */
+    public void typeCheck(ExecutorService pool) {
+        List<Future<Result>> results = new ArrayList<Future<Result>>();
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                results.add(pool.submit(new Task(node)));
+            }
+        }
+        for (Future<Result> result : results) {
+            ErrMsg.report(join(result).messages);
+        }
+    }
+
+    /**
+     * constantFold
+     */
+    public void constantFold() {
+        for (DeclNode node : myDecls) {
+            node.constantFold();
+        }
+    }
+
     public void unparse(PrintWriter p, int indent) {
         Iterator it = myDecls.iterator();
         try {
@@ -229,6 +349,100 @@ class DeclListNode extends ASTnode {
 
     // list of kids (DeclNodes)
     private List<DeclNode> myDecls;
+
+	public void lower(TacProgram prog) {
+		for (DeclNode node : myDecls) {
+			node.lower(prog);
+		}
+	}
+
+	// type checks or generates code for one function on a pool thread
+	private static class Task implements Callable<Result> {
+		private DeclNode myDecl;
+		private boolean myCodeGen;
+
+		// for code generation: the cache (or null), the line the
+		// function starts on, and the offsets of its source
+		private CodeCache myCache;
+		private int myFirst, myFrom, myTo;
+
+		// type check decl
+		Task(DeclNode decl) {
+			myDecl = decl;
+			myCodeGen = false;
+		}
+
+		// generate code for fn
+		Task(FnDeclNode fn, CodeCache cache, int first, int from, int to) {
+			myDecl = fn;
+			myCodeGen = true;
+			myCache = cache;
+			myFirst = first;
+			myFrom = from;
+			myTo = to;
+		}
+
+		public Result call() {
+			Result result = new Result();
+			result.messages = ErrMsg.begin();
+			try {
+				if (myCodeGen) {
+					codeGen(result);
+				} else {
+					myDecl.typeCheck();
+				}
+			} finally {
+				ErrMsg.end();
+			}
+			return result;
+		}
+
+		private void codeGen(Result result) {
+			String key = null;
+			if (myCache != null) {
+				key = myCache.key((FnDeclNode)myDecl, myFrom, myTo);
+				result.code = myCache.load(key, myFirst, result.messages);
+				if (result.code != null) {
+					return;
+				}
+			}
+
+			result.code = Codegen.begin();
+			try {
+				myDecl.codeGen();
+			} finally {
+				Codegen.end();
+			}
+			if (myCache != null) {
+				myCache.store(key, myFirst, result.code, result.messages);
+			}
+		}
+	}
+
+	// what a Task leaves to be merged
+	private static class Result {
+		Codegen.Context code;
+		ErrMsg.Sink messages;
+	}
+
+	// the result of a Task, rethrowing whatever the Task threw
+	private static Result join(Future<Result> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
 }
 
 class FormalsListNode extends ASTnode {
@@ -300,6 +514,19 @@ class FnBodyNode extends ASTnode {
         myStmtList.typeCheck(retType);
     }
 
+    /**
+     * constantFold
+     * Count the stores to every variable in the body, so that a local
+     * stored to exactly once, by an assignment of a constant at the top
+     * level of the body, can be replaced by that constant everywhere
+     * after the assignment.  Then fold the statements.
+     */
+    public void constantFold() {
+        Map<TSym, Integer> stores = new HashMap<TSym, Integer>();
+        myStmtList.countStores(stores);
+        myStmtList.constantFold(new HashMap<TSym, ExpNode>(), stores);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         myDeclList.unparse(p, indent);
         myStmtList.unparse(p, indent);
@@ -313,6 +540,11 @@ class FnBodyNode extends ASTnode {
 		myDeclList.codeGen(); // Shouldn't output anything
 		myStmtList.codeGen();
 	}
+
+	public void lower(TacFunction fn) {
+		myDeclList.lower(fn.getProgram());
+		myStmtList.lower(fn);
+	}
 }
 
 class StmtListNode extends ASTnode {
@@ -322,6 +554,7 @@ class StmtListNode extends ASTnode {
 
     public void codeGen() {
         for (StmtNode node : myStmts) {
+            node.codeGenDebugInfo();
             node.codeGen();
         }
 	}
@@ -345,6 +578,44 @@ class StmtListNode extends ASTnode {
         }
     }
 
+    /**
+     * countStores
+     * Given a map from variables to the number of stores to them seen so
+     * far, add the stores made by the statements in this list.
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        for (StmtNode node : myStmts) {
+            node.countStores(stores);
+        }
+    }
+
+    /**
+     * constantFold
+     * Given the locals known to be constant (consts), fold each statement
+     * in the list, replacing the list with what is left of them.
+     * stores is null for nested blocks; for the top level of a function
+     * body it holds the store counts, and consts is extended by each
+     * assignment that makes a local constant.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts,
+                             Map<TSym, Integer> stores) {
+        List<StmtNode> folded = new LinkedList<StmtNode>();
+        for (StmtNode node : myStmts) {
+            node.constantFold(consts, folded);
+            if (stores != null && node instanceof AssignStmtNode) {
+                ((AssignStmtNode)node).learnConstant(consts, stores);
+            }
+        }
+        myStmts = folded;
+    }
+
+    /**
+     * Add the statements in this list to the end of stmts.
+     */
+    public void addTo(List<StmtNode> stmts) {
+        stmts.addAll(myStmts);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         Iterator<StmtNode> it = myStmts.iterator();
         while (it.hasNext()) {
@@ -354,6 +625,12 @@ class StmtListNode extends ASTnode {
 
     // list of kids (StmtNodes)
     private List<StmtNode> myStmts;
+
+	public void lower(TacFunction fn) {
+		for (StmtNode node : myStmts) {
+			node.lower(fn);
+		}
+	}
 }
 
 class ExpListNode extends ASTnode {
@@ -399,6 +676,26 @@ class ExpListNode extends ASTnode {
         }
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        for (ExpNode node : myExps) {
+            node.countStores(stores);
+        }
+    }
+
+    /**
+     * constantFold
+     * Given the locals known to be constant, fold each exp in the list.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts) {
+        ListIterator<ExpNode> it = myExps.listIterator();
+        while (it.hasNext()) {
+            it.set(it.next().constantFold(consts));
+        }
+    }
+
     public void unparse(PrintWriter p, int indent) {
         Iterator<ExpNode> it = myExps.iterator();
         if (it.hasNext()) { // if there is at least one element
@@ -414,13 +711,25 @@ class ExpListNode extends ASTnode {
     private List<ExpNode> myExps;
 
 	public void codeGen() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
 		for (int i = myExps.size() - 1; i >= 0; i -= 1) {
 			Codegen.generateWithComment("", "begin push #" + i);
-			myExps.get(i).codeGenRhs();
+			String reg = myExps.get(i).codeGenRhs();
+			Codegen.genPush(reg);
+			Codegen.freeReg(reg);
 			Codegen.generateWithComment("", "end push #" + i);
 		}
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	}
+
+	/**
+	 * lowerArgs
+	 * Evaluate the exps as call arguments, last one first, passing each
+	 * one as soon as it is evaluated.
+	 */
+	public void lowerArgs(TacFunction fn) {
+		for (int i = myExps.size() - 1; i >= 0; i -= 1) {
+			int t = myExps.get(i).lower(fn);
+			fn.add(TacInstr.use(TacInstr.PARAM, t));
+		}
 	}
 }
 
@@ -436,8 +745,18 @@ abstract class DeclNode extends ASTnode {
 
     public abstract void codeGen();
 
+    // the line and char number that the declared name starts at
+    abstract public int lineNum();
+    abstract public int charNum();
+
+    // default version of lower for decls that need no code
+    public void lower(TacProgram prog) { }
+
 	// default version of typeCheck for non-function decls
     public void typeCheck() { }
+
+    // default version of constantFold for non-function decls
+    public void constantFold() { }
 }
 
 class VarDeclNode extends DeclNode {
@@ -468,7 +787,7 @@ class VarDeclNode extends DeclNode {
 
     public TSym nameAnalysis(SymTable symTab, SymTable globalTab) {
         boolean badDecl = false;
-        String name = myId.name();
+        int nameId = myId.nameId();
         TSym sym = null;
         IdNode structId = null;
 
@@ -482,7 +801,7 @@ class VarDeclNode extends DeclNode {
             structId = ((StructNode)myType).idNode();
 
             try {
-                sym = globalTab.lookupGlobal(structId.name());
+                sym = globalTab.lookupGlobal(structId.nameId());
             } catch (EmptySymTableException ex) {
                 System.err.println("Unexpected EmptySymTableException " +
                                    " in VarDeclNode.nameAnalysis");
@@ -503,7 +822,7 @@ class VarDeclNode extends DeclNode {
         TSym symCheckMul = null;
 
         try {
-            symCheckMul = symTab.lookupLocal(name);
+            symCheckMul = symTab.lookupLocal(nameId);
         } catch (EmptySymTableException ex) {
                             System.err.println("Unexpected EmptySymTableException " +
                                    " in VarDeclNode.nameAnalysis");
@@ -525,7 +844,7 @@ class VarDeclNode extends DeclNode {
                     sym = new TSym(myType.type());
                     sym.setVarType(VarSymType.NONFORMAL);
                 }
-                symTab.addDecl(name, sym);
+                symTab.addDecl(nameId, sym);
                 myId.link(sym);
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
@@ -571,6 +890,14 @@ class VarDeclNode extends DeclNode {
 
     public static int NOT_STRUCT = -1;
 
+    public int lineNum() {
+        return myId.lineNum();
+    }
+
+    public int charNum() {
+        return myId.charNum();
+    }
+
 	@Override
 	public void codeGen() {
 		VarSymType varType = this.myId.sym().getVarType();
@@ -578,7 +905,7 @@ class VarDeclNode extends DeclNode {
 			case GLOBAL: {
 				Codegen.generate(".data");
 				Codegen.generate(".align 4");
-				Codegen.generateLabeled("_" + myId.name(), ".space 4", this.unparseString());
+				Codegen.generateLabeled("_" + myId.name(), ".space 4", debugComment());
 				break;
 			}
 			case LOCAL: {
@@ -591,6 +918,25 @@ class VarDeclNode extends DeclNode {
 			}
 		}
 	}
+
+	// the declaration itself, as the comment on a global's storage, but
+	// only at Codegen.DEBUG_FULL
+	private String debugComment() {
+		if (Codegen.debugLevel == Codegen.DEBUG_FULL) {
+			return this.unparseString();
+		}
+		return "";
+	}
+
+	@Override
+	public void lower(TacProgram prog) {
+		VarSymType varType = this.myId.sym().getVarType();
+		if (varType == VarSymType.GLOBAL) {
+			prog.addGlobal(myId.name(), debugComment());
+		} else if (varType == VarSymType.STRUCT) {
+			ErrMsg.warn(myId.lineNum(), myId.charNum(), "Struct variables unsupported");
+		}
+	}
 }
 
 class FnDeclNode extends DeclNode {
@@ -604,7 +950,14 @@ class FnDeclNode extends DeclNode {
         myBody = body;
     }
 
-    public static String fnExitLabel = null;
+    // the exit label of the function being generated on this thread
+    private static final ThreadLocal<String> fnExitLabel =
+        new ThreadLocal<String>();
+
+    public static String exitLabel() {
+        return fnExitLabel.get();
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, do:
@@ -619,12 +972,12 @@ class FnDeclNode extends DeclNode {
      *     exit scope
      */
     public TSym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
+        int nameId = myId.nameId();
         FnSym sym = null;
         TSym symCheckMul = null;
 
         try {
-            symCheckMul = symTab.lookupLocal(name);
+            symCheckMul = symTab.lookupLocal(nameId);
         } catch (EmptySymTableException ex) {
                             System.err.println("Unexpected EmptySymTableException " +
                                    " in FnDeclNode.nameAnalysis");
@@ -638,7 +991,7 @@ class FnDeclNode extends DeclNode {
         else { // add function name to local symbol table
             try {
                 sym = new FnSym(myType.type(), myFormalsList.length());
-                symTab.addDecl(name, sym);
+                symTab.addDecl(nameId, sym);
                 myId.link(sym);
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
@@ -657,6 +1010,7 @@ class FnDeclNode extends DeclNode {
 
         symTab.addScope();  // add a new scope for locals and params
         symTab.resetOffsets();
+        symTab.recordGlobalRefs();
 
         // process the formals
         List<Type> typeList = myFormalsList.nameAnalysis(symTab);
@@ -665,6 +1019,7 @@ class FnDeclNode extends DeclNode {
         }
 
         myBody.nameAnalysis(symTab); // process the function body
+        myGlobalRefs = symTab.endGlobalRefs();
         
         sym.setFinalSpOffset(symTab.getNextFpOffset());
 
@@ -686,6 +1041,13 @@ class FnDeclNode extends DeclNode {
         myBody.typeCheck(myType.type());
     }
 
+    /**
+     * constantFold
+     */
+    public void constantFold() {
+        myBody.constantFold();
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         myType.unparse(p, 0);
@@ -705,9 +1067,39 @@ class FnDeclNode extends DeclNode {
     private IdNode myId;
     private FormalsListNode myFormalsList;
     private FnBodyNode myBody;
+
+    // the globals and functions the body refers to, from nameAnalysis
+    private Map<String, TSym> myGlobalRefs;
+
+    public int lineNum() {
+        return myId.lineNum();
+    }
+
+    public int charNum() {
+        return myId.charNum();
+    }
+
+    /**
+     * dependencies
+     * Everything besides its source text (from its name up to the next
+     * decl) that the code generated for this function depends on: its
+     * own name and type, and the type of every global and function it
+     * refers to.  Used as part of its CodeCache key.
+     */
+    public String dependencies() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(myId.name()).append(' ').append(myId.sym()).append('\n');
+        for (Map.Entry<String, TSym> ref : myGlobalRefs.entrySet()) {
+            TSym sym = ref.getValue();
+            sb.append(ref.getKey()).append(' ').append(sym.getVarType())
+              .append(' ').append(sym).append('\n');
+        }
+        return sb.toString();
+    }
     
 	@Override
 	public void codeGen() {
+		Codegen.beginFunction();
 		Codegen.generateWithComment("", "Begin Fn");
 		
 		Codegen.generateWithComment("", "  Begin Preamble");
@@ -723,9 +1115,9 @@ class FnDeclNode extends DeclNode {
 		Codegen.generateWithComment("", "  End Prologue");
 		
 		Codegen.generateWithComment("", "  Begin Body");
-		fnExitLabel = myId.name() + "_exit";
+		fnExitLabel.set(myId.name() + "_exit");
 		myBody.codeGen();
-		fnExitLabel = null;
+		fnExitLabel.remove();
 		Codegen.generateWithComment("", "  End Body");
 		
 		Codegen.generateWithComment("", "  Begin Epilogue");
@@ -743,6 +1135,16 @@ class FnDeclNode extends DeclNode {
 		Codegen.generateWithComment("", "  End Epilogue");
 		
 		Codegen.generateWithComment("", "End Fn");
+		Codegen.endFunction();
+	}
+
+	@Override
+	public void lower(TacProgram prog) {
+		FnSym sym = (FnSym)myId.sym();
+		TacFunction fn = new TacFunction(prog, myId.name(), myFormalsList.length(),
+				Math.abs(sym.getFinalSpOffset()) - 8);
+		myBody.lower(fn);
+		prog.addFunction(fn);
 	}
 }
 
@@ -761,7 +1163,7 @@ class FormalDeclNode extends DeclNode {
      * else add a new entry to the symbol table and return that TSym
      */
     public TSym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
+        int nameId = myId.nameId();
         boolean badDecl = false;
         TSym sym = null;
 
@@ -774,7 +1176,7 @@ class FormalDeclNode extends DeclNode {
         TSym symCheckMul = null;
 
         try {
-            symCheckMul = symTab.lookupLocal(name);
+            symCheckMul = symTab.lookupLocal(nameId);
         } catch (EmptySymTableException ex) {
                             System.err.println("Unexpected EmptySymTableException " +
                                    " in FormalDeclNode.nameAnalysis");
@@ -790,7 +1192,7 @@ class FormalDeclNode extends DeclNode {
             try {
                 sym = new TSym(myType.type());
                 sym.setVarType(VarSymType.FORMAL);
-                symTab.addDecl(name, sym);
+                symTab.addDecl(nameId, sym);
                 myId.link(sym);
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
@@ -830,6 +1232,14 @@ class FormalDeclNode extends DeclNode {
     // 2 kids
     private TypeNode myType;
     private IdNode myId;
+
+    public int lineNum() {
+        return myId.lineNum();
+    }
+
+    public int charNum() {
+        return myId.charNum();
+    }
     
 	@Override
 	public void codeGen() {
@@ -854,13 +1264,13 @@ class StructDeclNode extends DeclNode {
      *     add a new entry to symbol table for this struct
      */
     public TSym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
+        int nameId = myId.nameId();
         boolean badDecl = false;
 
         TSym symCheckMul = null;
 
         try {
-            symCheckMul = symTab.lookupLocal(name);
+            symCheckMul = symTab.lookupLocal(nameId);
         } catch (EmptySymTableException ex) {
             System.err.println("Unexpected EmptySymTableException " +
                            " in StructDeclNode.nameAnalysis");
@@ -875,12 +1285,12 @@ class StructDeclNode extends DeclNode {
 
         if (!badDecl) {
             try {   // add entry to symbol table
-                SymTable structSymTab = new SymTable();
+                SymTable structSymTab = SymTable.forStruct();
                 structSymTab.enterStructDefn();
                 myDeclList.nameAnalysis(structSymTab, symTab);
                 structSymTab.exitStructDefn();
                 StructDefSym sym = new StructDefSym(structSymTab);
-                symTab.addDecl(name, sym);
+                symTab.addDecl(nameId, sym);
                 myId.link(sym);
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
@@ -914,11 +1324,24 @@ class StructDeclNode extends DeclNode {
     // 2 kids
     private IdNode myId;
     private DeclListNode myDeclList;
+
+    public int lineNum() {
+        return myId.lineNum();
+    }
+
+    public int charNum() {
+        return myId.charNum();
+    }
     
 	@Override
 	public void codeGen() {
 		ErrMsg.warn(myId.lineNum(), myId.charNum(), "Struct defns unsupported");
 	}
+
+	@Override
+	public void lower(TacProgram prog) {
+		ErrMsg.warn(myId.lineNum(), myId.charNum(), "Struct defns unsupported");
+	}
 }
 
 // **********************************************************************
@@ -938,7 +1361,7 @@ class IntNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new IntType();
+        return Type.INT;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -954,7 +1377,7 @@ class BoolNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new BoolType();
+        return Type.BOOL;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -970,7 +1393,7 @@ class VoidNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new VoidType();
+        return Type.VOID;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -991,7 +1414,7 @@ class StructNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new StructType(myId);
+        return Type.struct(myId.name());
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -1010,7 +1433,58 @@ class StructNode extends TypeNode {
 abstract class StmtNode extends ASTnode {
     abstract public void nameAnalysis(SymTable symTab);
     public abstract void codeGen();
+    public abstract void lower(TacFunction fn);
 	abstract public void typeCheck(Type retType);
+
+    /**
+     * countStores
+     * Given a map from variables to the number of stores to them seen so
+     * far, add the stores made by this statement.
+     */
+    abstract public void countStores(Map<TSym, Integer> stores);
+
+    /**
+     * constantFold
+     * Given the locals known to be constant (consts), fold the
+     * expressions in this statement, then add whatever is left of the
+     * statement to the end of stmts (nothing, if it can never run).
+     */
+    abstract public void constantFold(Map<TSym, ExpNode> consts,
+                                      List<StmtNode> stmts);
+
+    /**
+     * lineNum
+     * The line this statement starts on, or 0 if it is not known.
+     */
+    abstract public int lineNum();
+
+    /**
+     * sourceText
+     * The statement as echoed at Codegen.DEBUG_FULL.  Compound statements
+     * override this to give only their heading.
+     */
+    public String sourceText() {
+        return unparseString().trim();
+    }
+
+	/**
+	 * codeGenDebugInfo
+	 * Emit a comment line saying where this statement came from, in as
+	 * much detail as Codegen.debugLevel asks for.  Nothing is built at
+	 * DEBUG_NONE, and the source text only at DEBUG_FULL.
+	 */
+	public void codeGenDebugInfo() {
+		if (Codegen.debugLevel == Codegen.DEBUG_NONE) {
+			return;
+		}
+		int line = lineNum();
+		String where = line > 0 ? "line " + line : "line ?";
+		if (Codegen.debugLevel == Codegen.DEBUG_FULL) {
+			Codegen.generateWithComment("", where + ": " + sourceText());
+		} else {
+			Codegen.generateWithComment("", where);
+		}
+	}
 }
 
 class AssignStmtNode extends StmtNode {
@@ -1033,6 +1507,31 @@ class AssignStmtNode extends StmtNode {
         myAssign.typeCheck();
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myAssign.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myAssign.constantFold(consts);
+        stmts.add(this);
+    }
+
+    /**
+     * learnConstant
+     * Called for assignments at the top level of a function body, once
+     * they are folded; see AssignNode.learnConstant.
+     */
+    public void learnConstant(Map<TSym, ExpNode> consts,
+                              Map<TSym, Integer> stores) {
+        myAssign.learnConstant(consts, stores);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         myAssign.unparse(p, -1); // no parentheses
@@ -1042,12 +1541,19 @@ class AssignStmtNode extends StmtNode {
     // 1 kid
     private AssignNode myAssign;
 
+	@Override
+	public int lineNum() {
+		return myAssign.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
-		Codegen.generateWithComment("", this.unparseString());
-		myAssign.codeGenRhs();
-        Codegen.generate("addu", Codegen.SP, Codegen.SP, 4);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		Codegen.freeReg(myAssign.codeGenRhs());
+	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		myAssign.lower(fn);
 	}
 }
 
@@ -1076,6 +1582,21 @@ class PostIncStmtNode extends StmtNode {
         }
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.addStore(stores);
+    }
+
+    /**
+     * constantFold
+     * Nothing to fold: the only child is the location stored to.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         myExp.unparse(p, 0);
@@ -1085,16 +1606,27 @@ class PostIncStmtNode extends StmtNode {
     // 1 kid
     private ExpNode myExp;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
-		Codegen.generateWithComment("", this.unparseString());
-		myExp.codeGenLhs();
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.T0); // Unincremeted value
-		Codegen.genPop(Codegen.T1); // Destination
-		Codegen.generate("addi", Codegen.T0, Codegen.T0, 1);
-		Codegen.generateIndexed("sw", Codegen.T0, Codegen.T1, 0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		String reg = myExp.codeGenRhs();
+		Codegen.generate("addi", reg, reg, 1);
+		myExp.codeGenStore(reg);
+		Codegen.freeReg(reg);
+	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		int t = myExp.lower(fn);
+		int one = fn.newTemp();
+		fn.add(TacInstr.li(one, 1));
+		int result = fn.newTemp();
+		fn.add(TacInstr.binary(TacInstr.ADD, result, t, one));
+		myExp.lowerStore(fn, result);
 	}
 }
 
@@ -1123,6 +1655,21 @@ class PostDecStmtNode extends StmtNode {
         }
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.addStore(stores);
+    }
+
+    /**
+     * constantFold
+     * Nothing to fold: the only child is the location stored to.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         myExp.unparse(p, 0);
@@ -1132,16 +1679,27 @@ class PostDecStmtNode extends StmtNode {
     // 1 kid
     private ExpNode myExp;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
-		Codegen.generateWithComment("", this.unparseString());
-		myExp.codeGenLhs();
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.T0); // Unincremeted value
-		Codegen.genPop(Codegen.T1); // Destination
-		Codegen.generate("addi", Codegen.T0, Codegen.T0, -1);
-		Codegen.generateIndexed("sw", Codegen.T0, Codegen.T1, 0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		String reg = myExp.codeGenRhs();
+		Codegen.generate("addi", reg, reg, -1);
+		myExp.codeGenStore(reg);
+		Codegen.freeReg(reg);
+	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		int t = myExp.lower(fn);
+		int one = fn.newTemp();
+		fn.add(TacInstr.li(one, 1));
+		int result = fn.newTemp();
+		fn.add(TacInstr.binary(TacInstr.SUB, result, t, one));
+		myExp.lowerStore(fn, result);
 	}
 }
 
@@ -1182,6 +1740,21 @@ class ReadStmtNode extends StmtNode {
         }
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.addStore(stores);
+    }
+
+    /**
+     * constantFold
+     * Nothing to fold: the only child is the location stored to.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("cin >> ");
@@ -1192,22 +1765,33 @@ class ReadStmtNode extends StmtNode {
     // 1 kid (actually can only be an IdNode or an ArrayExpNode)
     private ExpNode myExp;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
 		if (type == null || (!type.isIntType() && !type.isBoolType())) {
 			ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Unsupported Read type (" + type + ")");
 		}
-		Codegen.generateWithComment("", this.unparseString());
 		Codegen.generate("li", Codegen.V0, 5);
 		Codegen.generate("syscall");
-		myExp.codeGenLhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generateIndexed("sw", Codegen.V0, Codegen.T0, 0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		myExp.codeGenStore(Codegen.V0);
 	}
-}
 
-class WriteStmtNode extends StmtNode {
+	@Override
+	public void lower(TacFunction fn) {
+		if (type == null || (!type.isIntType() && !type.isBoolType())) {
+			ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Unsupported Read type (" + type + ")");
+		}
+		int t = fn.newTemp();
+		fn.add(TacInstr.unary(TacInstr.READ, t, -1));
+		myExp.lowerStore(fn, t);
+	}
+}
+
+class WriteStmtNode extends StmtNode {
 	Type type;
     public WriteStmtNode(ExpNode exp) {
         myExp = exp;
@@ -1249,6 +1833,21 @@ class WriteStmtNode extends StmtNode {
         }
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myExp = myExp.constantFold(consts);
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("cout << ");
@@ -1259,21 +1858,38 @@ class WriteStmtNode extends StmtNode {
     // 1 kid
     private ExpNode myExp;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
 		if (type == null || (!type.isIntType() && !type.isBoolType() && !type.isStringType())) {
 			ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Unsupported Write type (" + type + ")");
 		}
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.A0);
+		String reg = myExp.codeGenRhs();
+		Codegen.generate("move", Codegen.A0, reg);
+		Codegen.freeReg(reg);
 		if (type.isIntType() || type.isBoolType()) {
 			Codegen.generate("li", Codegen.V0, 1);
 		} else if (type.isStringType()) {
 			Codegen.generate("li", Codegen.V0, 4);
 		}
 		Codegen.generate("syscall");
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		if (type == null || (!type.isIntType() && !type.isBoolType() && !type.isStringType())) {
+			ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Unsupported Write type (" + type + ")");
+		}
+		int t = myExp.lower(fn);
+		if (type != null && type.isStringType()) {
+			fn.add(TacInstr.use(TacInstr.WRITES, t));
+		} else {
+			fn.add(TacInstr.use(TacInstr.WRITEI, t));
+		}
 	}
 }
 
@@ -1320,6 +1936,32 @@ class IfStmtNode extends StmtNode {
         myStmtList.typeCheck(retType);
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.countStores(stores);
+        myStmtList.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     * If the condition folds to true, the body replaces the if; if it
+     * folds to false, the if is dropped.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myExp = myExp.constantFold(consts);
+        if (myExp.isConstant() && myExp.constValue() == 0) {
+            return;
+        }
+        myStmtList.constantFold(consts, null);
+        if (myExp.isConstant()) {
+            myStmtList.addTo(stmts);
+        } else {
+            stmts.add(this);
+        }
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("if (");
@@ -1336,18 +1978,35 @@ class IfStmtNode extends StmtNode {
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
+	@Override
+	public String sourceText() {
+		return "if (" + myExp.unparseString() + ") {";
+	}
+
 	@Override
 	public void codeGen() {
-		Codegen.generateWithComment("", "if (" + myExp.unparseString() + ") {");
-		myExp.codeGenRhs();
 		String exitLabel = Codegen.nextLabel() + "_exit";
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("beq", Codegen.T0, "$zero", exitLabel);
+		myExp.codeGenBranch(null, exitLabel);
 		myDeclList.codeGen();
 		myStmtList.codeGen();
 		Codegen.genLabel(exitLabel);
 		Codegen.generateWithComment("", "} end if");
 	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		String exitLabel = fn.newLabel();
+		int t = myExp.lower(fn);
+		fn.add(TacInstr.branch(TacInstr.BRZ, t, exitLabel));
+		myDeclList.lower(fn.getProgram());
+		myStmtList.lower(fn);
+		fn.add(TacInstr.label(TacInstr.LABEL, exitLabel));
+	}
 }
 
 class IfElseStmtNode extends StmtNode {
@@ -1411,6 +2070,35 @@ class IfElseStmtNode extends StmtNode {
         myElseStmtList.typeCheck(retType);
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.countStores(stores);
+        myThenStmtList.countStores(stores);
+        myElseStmtList.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     * If the condition folds to a constant, the branch that is taken
+     * replaces the if-else.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myExp = myExp.constantFold(consts);
+        if (!myExp.isConstant()) {
+            myThenStmtList.constantFold(consts, null);
+            myElseStmtList.constantFold(consts, null);
+            stmts.add(this);
+        } else if (myExp.constValue() == 0) {
+            myElseStmtList.constantFold(consts, null);
+            myElseStmtList.addTo(stmts);
+        } else {
+            myThenStmtList.constantFold(consts, null);
+            myThenStmtList.addTo(stmts);
+        }
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("if (");
@@ -1435,14 +2123,21 @@ class IfElseStmtNode extends StmtNode {
     private StmtListNode myElseStmtList;
     private DeclListNode myElseDeclList;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
+	@Override
+	public String sourceText() {
+		return "if (" + myExp.unparseString() + ") {";
+	}
+
 	@Override
 	public void codeGen() {
 		String elseLabel = Codegen.nextLabel() + "_else";
 		String exitLabel = Codegen.nextLabel() + "_exit";
-		Codegen.generateWithComment("", "if (" + myExp.unparseString() + ") {");
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("beq", Codegen.T0, "$zero", elseLabel);
+		myExp.codeGenBranch(null, elseLabel);
 		myThenDeclList.codeGen();
 		myThenStmtList.codeGen();
 		Codegen.generate("j", exitLabel);
@@ -1453,6 +2148,21 @@ class IfElseStmtNode extends StmtNode {
 		Codegen.genLabel(exitLabel);
 		Codegen.generateWithComment("", "} end ifelse");
 	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		String elseLabel = fn.newLabel();
+		String exitLabel = fn.newLabel();
+		int t = myExp.lower(fn);
+		fn.add(TacInstr.branch(TacInstr.BRZ, t, elseLabel));
+		myThenDeclList.lower(fn.getProgram());
+		myThenStmtList.lower(fn);
+		fn.add(TacInstr.label(TacInstr.JUMP, exitLabel));
+		fn.add(TacInstr.label(TacInstr.LABEL, elseLabel));
+		myElseDeclList.lower(fn.getProgram());
+		myElseStmtList.lower(fn);
+		fn.add(TacInstr.label(TacInstr.LABEL, exitLabel));
+	}
 }
 
 class WhileStmtNode extends StmtNode {
@@ -1498,6 +2208,27 @@ class WhileStmtNode extends StmtNode {
         myStmtList.typeCheck(retType);
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.countStores(stores);
+        myStmtList.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     * A loop whose condition folds to false is dropped.
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myExp = myExp.constantFold(consts);
+        if (myExp.isConstant() && myExp.constValue() == 0) {
+            return;
+        }
+        myStmtList.constantFold(consts, null);
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("while (");
@@ -1514,21 +2245,43 @@ class WhileStmtNode extends StmtNode {
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
+	@Override
+	public String sourceText() {
+		return "while (" + myExp.unparseString() + ") {";
+	}
+
+	// the test is at the bottom of the loop, so each iteration takes one
+	// conditional branch and no jump
 	@Override
 	public void codeGen() {
 		String startLabel = Codegen.nextLabel() + "_start";
-		String exitLabel = Codegen.nextLabel() + "_exit";
-		Codegen.generateWithComment("", "while (" + myExp.unparseString() + ") {");
+		String condLabel = Codegen.nextLabel() + "_cond";
+		Codegen.generate("j", condLabel);
 		Codegen.genLabel(startLabel);
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("beq", Codegen.T0, "$zero", exitLabel);
 		myDeclList.codeGen();
 		myStmtList.codeGen();
-		Codegen.generate("j", startLabel);
-		Codegen.genLabel(exitLabel);
+		Codegen.genLabel(condLabel);
+		myExp.codeGenBranch(startLabel, null);
 		Codegen.generateWithComment("", "} end while");
 	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		String startLabel = fn.newLabel();
+		String exitLabel = fn.newLabel();
+		fn.add(TacInstr.label(TacInstr.LABEL, startLabel));
+		int t = myExp.lower(fn);
+		fn.add(TacInstr.branch(TacInstr.BRZ, t, exitLabel));
+		myDeclList.lower(fn.getProgram());
+		myStmtList.lower(fn);
+		fn.add(TacInstr.label(TacInstr.JUMP, startLabel));
+		fn.add(TacInstr.label(TacInstr.LABEL, exitLabel));
+	}
 }
 
 class RepeatStmtNode extends StmtNode {
@@ -1574,6 +2327,23 @@ class RepeatStmtNode extends StmtNode {
         myStmtList.typeCheck(retType);
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.countStores(stores);
+        myStmtList.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myExp = myExp.constantFold(consts);
+        myStmtList.constantFold(consts, null);
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("repeat (");
@@ -1590,10 +2360,20 @@ class RepeatStmtNode extends StmtNode {
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
 
+	@Override
+	public int lineNum() {
+		return myExp.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
 		ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Repeat statement unsupported");
 	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Repeat statement unsupported");
+	}
 }
 
 
@@ -1617,6 +2397,21 @@ class CallStmtNode extends StmtNode {
         myCall.typeCheck();
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myCall.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        myCall.constantFold(consts);
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         myCall.unparse(p, indent);
@@ -1626,12 +2421,19 @@ class CallStmtNode extends StmtNode {
     // 1 kid
     private CallExpNode myCall;
 
+	@Override
+	public int lineNum() {
+		return myCall.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myCall.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		Codegen.freeReg(myCall.codeGenRhs());
+	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		myCall.lowerCall(fn, false);
 	}
 }
 
@@ -1677,6 +2479,25 @@ class ReturnStmtNode extends StmtNode {
 
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        if (myExp != null) {
+            myExp.countStores(stores);
+        }
+    }
+
+    /**
+     * constantFold
+     */
+    public void constantFold(Map<TSym, ExpNode> consts, List<StmtNode> stmts) {
+        if (myExp != null) {
+            myExp = myExp.constantFold(consts);
+        }
+        stmts.add(this);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         addIndentation(p, indent);
         p.print("return");
@@ -1690,25 +2511,38 @@ class ReturnStmtNode extends StmtNode {
     // 1 kid
     private ExpNode myExp; // possibly null
 
+	@Override
+	public int lineNum() {
+		return myExp == null ? 0 : myExp.lineNum();
+	}
+
 	@Override
 	public void codeGen() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
 		if (myExp != null) {
-			if (FnDeclNode.fnExitLabel == null) {
+			if (FnDeclNode.exitLabel() == null) {
 				ErrMsg.fatal(myExp.lineNum(), myExp.charNum(), "Return node without fn return label");
 			}
-			myExp.codeGenRhs();
-			Codegen.genPop(Codegen.V0);
-			Codegen.generate("la", Codegen.T0, FnDeclNode.fnExitLabel);
+			String reg = myExp.codeGenRhs();
+			Codegen.generate("move", Codegen.V0, reg);
+			Codegen.freeReg(reg);
+			Codegen.generate("la", Codegen.T0, FnDeclNode.exitLabel());
 			Codegen.generate("jr", Codegen.T0);
 		} else {
-			if (FnDeclNode.fnExitLabel == null) {
+			if (FnDeclNode.exitLabel() == null) {
 				ErrMsg.fatal(0, 0, "Return node without fn return label");
 			}
-			Codegen.generate("la", Codegen.T0, FnDeclNode.fnExitLabel);
+			Codegen.generate("la", Codegen.T0, FnDeclNode.exitLabel());
 			Codegen.generate("jr", Codegen.T0);
 		}
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	}
+
+	@Override
+	public void lower(TacFunction fn) {
+		int t = -1;
+		if (myExp != null) {
+			t = myExp.lower(fn);
+		}
+		fn.add(TacInstr.use(TacInstr.RET, t));
 	}
 }
 
@@ -1722,9 +2556,142 @@ abstract class ExpNode extends ASTnode {
      */
     public void nameAnalysis(SymTable symTab) { }
 
-    public abstract void codeGenRhs();
+    /**
+     * codeGenRhs
+     * Generate code to evaluate this expression into a temporary register
+     * taken from Codegen.getReg, and return that register.  The caller owns
+     * the register and must hand it back with Codegen.freeReg.
+     */
+    public abstract String codeGenRhs();
+
+    /**
+     * codeGenLhs
+     * Generate code to put the address of this location into a temporary
+     * register and return that register (owned by the caller).
+     */
+	public abstract String codeGenLhs();
+
+    /**
+     * lower
+     * Add three-address code to fn that evaluates this expression into a
+     * new temp, and return the temp.
+     */
+	public abstract int lower(TacFunction fn);
+
+    /**
+     * lowerStore
+     * Add three-address code to fn that stores temp t into this
+     * location.  Default version is for expressions that are not
+     * locations.
+     */
+	public void lowerStore(TacFunction fn, int t) {
+		ErrMsg.fatal(lineNum(), charNum(), "Unsupported assignment target");
+	}
+
+    /**
+     * codeGenStore
+     * Generate code to store the value in reg into this location.
+     * Default version goes through the address from codeGenLhs.
+     */
+	public void codeGenStore(String reg) {
+		String addrReg = codeGenLhs();
+		Codegen.generateIndexed("sw", reg, addrReg, 0);
+		Codegen.freeReg(addrReg);
+	}
+
+    /**
+     * codeGenBranch
+     * Generate code for a bool expression used as a condition: jump to
+     * trueLabel if it is true and to falseLabel if it is false.  One of
+     * the labels may be null, meaning fall through in that case.
+     * Default version computes the value and tests it.
+     */
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		String reg = codeGenRhs();
+		if (trueLabel != null) {
+			Codegen.generate("bne", reg, Codegen.ZERO, trueLabel);
+			if (falseLabel != null) {
+				Codegen.generate("j", falseLabel);
+			}
+		} else {
+			Codegen.generate("beq", reg, Codegen.ZERO, falseLabel);
+		}
+		Codegen.freeReg(reg);
+	}
+
+    /**
+     * regNeed
+     * Sethi-Ullman number: how many temporaries it takes to evaluate this
+     * expression without spilling.  Default version is for leaves.
+     */
+	public int regNeed() {
+		return 1;
+	}
+
+    /**
+     * hasSideEffects
+     * Whether evaluating this expression can change memory or produce
+     * output, in which case its operands may not be reordered.
+     */
+	public boolean hasSideEffects() {
+		return false;
+	}
+
+    /**
+     * countStores
+     * Given a map from variables to the number of stores to them seen so
+     * far, add the stores made while evaluating this expression.  Default
+     * version is for expressions with no assignments in them.
+     */
+    public void countStores(Map<TSym, Integer> stores) { }
+
+    /**
+     * addStore
+     * Record one store to this location.  Default version is for
+     * locations that are never constant (struct fields).
+     */
+    public void addStore(Map<TSym, Integer> stores) { }
+
+    /**
+     * constantFold
+     * Given the locals known to be constant, fold the children of this
+     * expression and return the expression that should replace it: a
+     * literal if the value is known, otherwise this node.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        return this;
+    }
+
+    /**
+     * Is this an int or bool literal?
+     */
+    public boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * The value of an int or bool literal (1 for true, 0 for false).
+     */
+    public int constValue() {
+        throw new IllegalStateException("not a constant: " + unparseString());
+    }
+
+    /**
+     * An int literal at the position of this expression.
+     */
+    protected ExpNode intLit(int val) {
+        return new IntLitNode(lineNum(), charNum(), val);
+    }
 
-	public abstract void codeGenLhs();
+    /**
+     * A bool literal at the position of this expression.
+     */
+    protected ExpNode boolLit(boolean val) {
+        if (val) {
+            return new TrueNode(lineNum(), charNum());
+        }
+        return new FalseNode(lineNum(), charNum());
+    }
 
 	abstract public Type typeCheck();
     abstract public int lineNum();
@@ -1756,7 +2723,15 @@ class IntLitNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new IntType();
+        return Type.INT;
+    }
+
+    public boolean isConstant() {
+        return true;
+    }
+
+    public int constValue() {
+        return myIntVal;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -1768,16 +2743,23 @@ class IntLitNode extends ExpNode {
     private int myIntVal;
 
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		Codegen.generate("li", Codegen.T0, myIntVal);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = Codegen.getReg();
+		Codegen.generate("li", reg, myIntVal);
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "IntLitNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t = fn.newTemp();
+		fn.add(TacInstr.li(t, myIntVal));
+		return t;
 	}
 }
 
@@ -1806,7 +2788,7 @@ class StringLitNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new StringType();
+        return Type.STRING;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -1818,20 +2800,23 @@ class StringLitNode extends ExpNode {
     private String myStrVal;
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		Codegen.generate(".data");
-		String strLabel = Codegen.nextLabel();
-		Codegen.generateLabeled(strLabel, ".asciiz " + myStrVal, "");
-		Codegen.generate(".text");
-		Codegen.generate("la", Codegen.T0, strLabel);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = Codegen.getReg();
+		Codegen.generate("la", reg, Codegen.stringLabel(myStrVal));
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "StringLitNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t = fn.newTemp();
+		fn.add(TacInstr.str(t, myStrVal));
+		return t;
 	}
 }
 
@@ -1859,7 +2844,15 @@ class TrueNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new BoolType();
+        return Type.BOOL;
+    }
+
+    public boolean isConstant() {
+        return true;
+    }
+
+    public int constValue() {
+        return 1;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -1870,16 +2863,30 @@ class TrueNode extends ExpNode {
     private int myCharNum;
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		Codegen.generate("li", Codegen.T0, Codegen.TRUE);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = Codegen.getReg();
+		Codegen.generate("li", reg, Codegen.TRUE);
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "TrueNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t = fn.newTemp();
+		fn.add(TacInstr.li(t, 1));
+		return t;
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		if (trueLabel != null) {
+			Codegen.generate("j", trueLabel);
+		}
 	}
 }
 
@@ -1907,7 +2914,15 @@ class FalseNode extends ExpNode {
      * typeCheck
      */
     public Type typeCheck() {
-        return new BoolType();
+        return Type.BOOL;
+    }
+
+    public boolean isConstant() {
+        return true;
+    }
+
+    public int constValue() {
+        return 0;
     }
 
     public void unparse(PrintWriter p, int indent) {
@@ -1918,24 +2933,39 @@ class FalseNode extends ExpNode {
     private int myCharNum;
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		Codegen.generate("li", Codegen.T0, Codegen.FALSE);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = Codegen.getReg();
+		Codegen.generate("li", reg, Codegen.FALSE);
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "FalseNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t = fn.newTemp();
+		fn.add(TacInstr.li(t, 0));
+		return t;
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		if (falseLabel != null) {
+			Codegen.generate("j", falseLabel);
+		}
 	}
 }
 
 class IdNode extends ExpNode {
-    public IdNode(int lineNum, int charNum, String strVal) {
+    public IdNode(int lineNum, int charNum, int nameId) {
         myLineNum = lineNum;
         myCharNum = charNum;
-        myStrVal = strVal;
+        myNameId = nameId;
+        myStrVal = Names.name(nameId);
     }
 
     /**
@@ -1952,6 +2982,13 @@ class IdNode extends ExpNode {
         return myStrVal;
     }
 
+    /**
+     * Return the Names id of this ID's name.
+     */
+    public int nameId() {
+        return myNameId;
+    }
+
     /**
      * Return the symbol associated with this ID.
      */
@@ -1983,7 +3020,7 @@ class IdNode extends ExpNode {
         TSym sym = null;
 
         try {
-          sym = symTab.lookupGlobal(myStrVal);
+          sym = symTab.lookupGlobal(myNameId);
         } catch (EmptySymTableException ex) {
             System.err.println("Unexpected EmptySymTableException " +
                                " in IdNode.nameAnalysis");
@@ -2011,6 +3048,29 @@ class IdNode extends ExpNode {
         return null;
     }
 
+    /**
+     * addStore
+     */
+    public void addStore(Map<TSym, Integer> stores) {
+        Integer count = stores.get(mySym);
+        stores.put(mySym, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * constantFold
+     * A local known to be constant is replaced by its value.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        ExpNode val = consts.get(mySym);
+        if (val == null) {
+            return this;
+        }
+        if (val instanceof IntLitNode) {
+            return intLit(val.constValue());
+        }
+        return boolLit(val.constValue() != 0);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print(myStrVal);
         if (mySym != null) {
@@ -2031,37 +3091,69 @@ class IdNode extends ExpNode {
 
     private int myLineNum;
     private int myCharNum;
+    private int myNameId;
     private String myStrVal;
     private TSym mySym;
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString() + " (rhs)");
+	public String codeGenRhs() {
+		String reg = Codegen.getReg();
 		if (mySym.getVarType() == VarSymType.LOCAL || mySym.getVarType() == VarSymType.FORMAL) {
-			Codegen.generateIndexed("lw", Codegen.T0, Codegen.FP, mySym.getFpOffset());
-			Codegen.genPush(Codegen.T0);
+			Codegen.generateIndexed("lw", reg, Codegen.FP, mySym.getFpOffset());
 		} else if (mySym.getVarType() == VarSymType.GLOBAL) {
-			Codegen.generate("lw", Codegen.T0, "_" + myStrVal);
-			Codegen.genPush(Codegen.T0);
+			Codegen.generate("lw", reg, "_" + myStrVal);
 		} else {
 			ErrMsg.fatal(myLineNum, myCharNum, "Unsuppored var type in IDNode RHS: " + mySym.getVarType());
 		}
-		Codegen.generateWithComment("", "end " + this.unparseString() + " (rhs)");
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString() + " (lhs)");
+	public String codeGenLhs() {
+		String reg = Codegen.getReg();
 		if (mySym.getVarType() == VarSymType.LOCAL || mySym.getVarType() == VarSymType.FORMAL) {
-			Codegen.generateIndexed("la", Codegen.T0, Codegen.FP, mySym.getFpOffset());
-			Codegen.genPush(Codegen.T0);
+			Codegen.generateIndexed("la", reg, Codegen.FP, mySym.getFpOffset());
 		} else if (mySym.getVarType() == VarSymType.GLOBAL) {
-			Codegen.generate("la", Codegen.T0, "_" + myStrVal);
-			Codegen.genPush(Codegen.T0);
+			Codegen.generate("la", reg, "_" + myStrVal);
 		} else {
 			ErrMsg.fatal(myLineNum, myCharNum, "Unsuppored var type in IDNode LHS: " + mySym.getVarType());
 		}
-		Codegen.generateWithComment("", "end " + this.unparseString() + " (lhs)");
+		return reg;
+	}
+
+	@Override
+	public void codeGenStore(String reg) {
+		if (mySym.getVarType() == VarSymType.LOCAL || mySym.getVarType() == VarSymType.FORMAL) {
+			Codegen.generateIndexed("sw", reg, Codegen.FP, mySym.getFpOffset());
+		} else if (mySym.getVarType() == VarSymType.GLOBAL) {
+			Codegen.generate("sw", reg, "_" + myStrVal);
+		} else {
+			ErrMsg.fatal(myLineNum, myCharNum, "Unsuppored var type in IDNode store: " + mySym.getVarType());
+		}
+	}
+
+	/**
+	 * The variable this ID names, for three-address code.
+	 */
+	public TacVar tacVar() {
+		VarSymType varType = mySym.getVarType();
+		if (varType != VarSymType.LOCAL && varType != VarSymType.FORMAL &&
+				varType != VarSymType.GLOBAL) {
+			ErrMsg.fatal(myLineNum, myCharNum, "Unsuppored var type in IDNode: " + varType);
+		}
+		return new TacVar(myStrVal, varType, mySym.getFpOffset());
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t = fn.newTemp();
+		fn.add(TacInstr.load(t, tacVar()));
+		return t;
+	}
+
+	@Override
+	public void lowerStore(TacFunction fn, int t) {
+		fn.add(TacInstr.store(tacVar(), t));
 	}
 }
 
@@ -2173,7 +3265,7 @@ class DotAccessExpNode extends ExpNode {
         if (!badAccess) {
 
             try {
-                sym = structSymTab.lookupGlobal(myId.name()); // lookup
+                sym = structSymTab.lookupGlobal(myId.nameId()); // lookup
             } catch (EmptySymTableException ex) {
                 System.err.println("Unexpected EmptySymTableException " +
                                  " in DotAccessExpNode.nameAnalysis");
@@ -2216,12 +3308,25 @@ class DotAccessExpNode extends ExpNode {
     private boolean badAccess;  // to prevent multiple, cascading errors
     
 	@Override
-	public void codeGenRhs() {
+	public String codeGenRhs() {
+		ErrMsg.fatal(this.lineNum(), this.charNum(), "Struct DotAccess is unsupported");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public String codeGenLhs() {
+		ErrMsg.fatal(this.lineNum(), this.charNum(), "Struct DotAccess is unsupported");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "Struct DotAccess is unsupported");
+		return fn.newTemp();
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public void lowerStore(TacFunction fn, int t) {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "Struct DotAccess is unsupported");
 	}
 }
@@ -2268,31 +3373,68 @@ class AssignNode extends ExpNode {
 
         if (typeLhs.isFnType() && typeExp.isFnType()) {
             ErrMsg.fatal(lineNum(), charNum(), "Function assignment");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (typeLhs.isStructDefType() && typeExp.isStructDefType()) {
             ErrMsg.fatal(lineNum(), charNum(), "Struct name assignment");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (typeLhs.isStructType() && typeExp.isStructType()) {
             ErrMsg.fatal(lineNum(), charNum(), "Struct variable assignment");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (!typeLhs.equals(typeExp) && !typeLhs.isErrorType() && !typeExp.isErrorType()) {
             ErrMsg.fatal(lineNum(), charNum(), "Type mismatch");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (typeLhs.isErrorType() || typeExp.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         return retType;
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myLhs.addStore(stores);
+        myExp.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     * Only the right-hand side is folded; the left-hand side is a
+     * location, not a value.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        myExp = myExp.constantFold(consts);
+        return this;
+    }
+
+    /**
+     * learnConstant
+     * Given the store counts for the function, record in consts that the
+     * local assigned here is constant, if this is the only store to it
+     * and the value assigned is a literal.  Only called for assignments
+     * that are executed exactly once, before any code that follows them.
+     */
+    public void learnConstant(Map<TSym, ExpNode> consts,
+                              Map<TSym, Integer> stores) {
+        if (!(myLhs instanceof IdNode) || !myExp.isConstant()) {
+            return;
+        }
+        TSym sym = ((IdNode)myLhs).sym();
+        if (sym.getVarType() == VarSymType.LOCAL &&
+            stores.get(sym).intValue() == 1) {
+            consts.put(sym, myExp);
+        }
+    }
+
     public void unparse(PrintWriter p, int indent) {
         if (indent != -1)  p.print("(");
         myLhs.unparse(p, 0);
@@ -2306,20 +3448,33 @@ class AssignNode extends ExpNode {
     private ExpNode myExp;
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp.codeGenRhs();
-		myLhs.codeGenLhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.genPop(Codegen.T1);
-		Codegen.generateIndexed("sw", Codegen.T1, Codegen.T0, 0);
-		Codegen.genPush(Codegen.T1);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = myExp.codeGenRhs();
+		myLhs.codeGenStore(reg);
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "AssignNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int regNeed() {
+		return myExp.regNeed();
+	}
+
+	@Override
+	public boolean hasSideEffects() {
+		return true;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t = myExp.lower(fn);
+		myLhs.lowerStore(fn, t);
+		return t;
 	}
 }
 
@@ -2367,7 +3522,7 @@ class CallExpNode extends ExpNode {
         if (!myId.typeCheck().isFnType()) {
             ErrMsg.fatal(myId.lineNum(), myId.charNum(),
                          "Attempt to call a non-function");
-            return new ErrorType();
+            return Type.ERROR;
         }
 
         FnSym fnSym = (FnSym)(myId.sym());
@@ -2387,6 +3542,25 @@ class CallExpNode extends ExpNode {
         return fnSym.getReturnType();
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        if (myExpList != null) {
+            myExpList.countStores(stores);
+        }
+    }
+
+    /**
+     * constantFold
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        if (myExpList != null) {
+            myExpList.constantFold(consts);
+        }
+        return this;
+    }
+
     // ** unparse **
     public void unparse(PrintWriter p, int indent) {
         myId.unparse(p, 0);
@@ -2402,31 +3576,64 @@ class CallExpNode extends ExpNode {
     private ExpListNode myExpList;  // possibly null
     
 	@Override
-	public void codeGenRhs() {
+	public String codeGenRhs() {
         FnSym fnSym = (FnSym)(myId.sym());
         
-		Codegen.generateWithComment("", "begin " + this.unparseString());
+		// temporaries are caller-saved
+		List<String> saved = Codegen.saveRegs();
 		if (myExpList == null) {
 			Codegen.generate("jal", myId.name());
-			if (fnSym.getReturnType().isVoidType()) {
-				Codegen.generate("li", Codegen.V0, 0);
-			}
-			Codegen.genPush(Codegen.V0);
 		} else {
 			myExpList.codeGen();
 			Codegen.generate("jal", myId.name());
 			Codegen.generateWithComment("addu", "tear down params", Codegen.SP, Codegen.SP, String.valueOf(myExpList.size() * 4));
-			if (fnSym.getReturnType().isVoidType()) {
-				Codegen.generate("li", Codegen.V0, 0);
-			}
-			Codegen.genPush(Codegen.V0);
 		}
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		Codegen.restoreRegs(saved);
+		String reg = Codegen.getReg();
+		if (fnSym.getReturnType().isVoidType()) {
+			Codegen.generate("li", reg, 0);
+		} else {
+			Codegen.generate("move", reg, Codegen.V0);
+		}
+		return reg;
 	}
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "CallExpNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public boolean hasSideEffects() {
+		return true;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerCall(fn, true);
+	}
+
+	/**
+	 * lowerCall
+	 * Add the call to fn; if the value is wanted, return the temp holding
+	 * it (0 for a void function), otherwise return -1.
+	 */
+	public int lowerCall(TacFunction fn, boolean wantValue) {
+		FnSym fnSym = (FnSym)(myId.sym());
+		int numArgs = 0;
+		if (myExpList != null) {
+			myExpList.lowerArgs(fn);
+			numArgs = myExpList.size();
+		}
+		boolean isVoid = fnSym.getReturnType().isVoidType();
+		int t = wantValue && !isVoid ? fn.newTemp() : -1;
+		fn.add(TacInstr.call(t, myId.name(), numArgs));
+		if (wantValue && isVoid) {
+			t = fn.newTemp();
+			fn.add(TacInstr.li(t, 0));
+		}
+		return t;
 	}
 }
 
@@ -2459,12 +3666,30 @@ abstract class UnaryExpNode extends ExpNode {
         myExp.nameAnalysis(symTab);
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp.countStores(stores);
+    }
+
     // one child
     protected ExpNode myExp;
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "UnaryExpNode as LHS");
+		return Codegen.getReg();
+	}
+
+	@Override
+	public int regNeed() {
+		return myExp.regNeed();
+	}
+
+	@Override
+	public boolean hasSideEffects() {
+		return myExp.hasSideEffects();
 	}
 }
 
@@ -2500,13 +3725,158 @@ abstract class BinaryExpNode extends ExpNode {
         myExp2.nameAnalysis(symTab);
     }
 
+    /**
+     * countStores
+     */
+    public void countStores(Map<TSym, Integer> stores) {
+        myExp1.countStores(stores);
+        myExp2.countStores(stores);
+    }
+
+    /**
+     * constantFold
+     * Fold both operands; if both are now literals, let the subclass
+     * compute the value.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        myExp1 = myExp1.constantFold(consts);
+        myExp2 = myExp2.constantFold(consts);
+        if (myExp1.isConstant() && myExp2.isConstant()) {
+            ExpNode folded = fold(myExp1.constValue(), myExp2.constValue());
+            if (folded != null) {
+                return folded;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * fold
+     * Given the values of both operands, return a literal for the value
+     * of this expression, or null if it must be left to run time (e.g.
+     * because the operation would trap).
+     */
+    protected ExpNode fold(int val1, int val2) {
+        return null;
+    }
+
     // two kids
     protected ExpNode myExp1;
     protected ExpNode myExp2;
 
 	@Override
-	public void codeGenLhs() {
+	public String codeGenLhs() {
 		ErrMsg.fatal(this.lineNum(), this.charNum(), "BinaryExpNode as LHS");
+		return Codegen.getReg();
+	}
+
+	/**
+	 * Operands can be evaluated in either order only if neither of them
+	 * can observe the other's side effects.
+	 */
+	protected boolean canReorder() {
+		return !myExp1.hasSideEffects() && !myExp2.hasSideEffects();
+	}
+
+	@Override
+	public int regNeed() {
+		int need1 = myExp1.regNeed();
+		int need2 = myExp2.regNeed();
+		if (!canReorder()) {
+			return Math.max(need1, need2 + 1);
+		}
+		return need1 == need2 ? need1 + 1 : Math.max(need1, need2);
+	}
+
+	@Override
+	public boolean hasSideEffects() {
+		return myExp1.hasSideEffects() || myExp2.hasSideEffects();
+	}
+
+	/**
+	 * codeGenOperands
+	 * Evaluate both operands into registers, returned as {left, right}.
+	 * The operand with the larger Sethi-Ullman number goes first (when
+	 * that is allowed), and if there are not enough free registers left
+	 * for the second operand the first one is spilled to the stack.
+	 */
+	protected String[] codeGenOperands() {
+		boolean swap = canReorder() && myExp2.regNeed() > myExp1.regNeed();
+		ExpNode first = swap ? myExp2 : myExp1;
+		ExpNode second = swap ? myExp1 : myExp2;
+
+		String firstReg = first.codeGenRhs();
+		String secondReg;
+		if (Codegen.numFreeRegs() < second.regNeed()) {
+			Codegen.genPush(firstReg); // spill
+			Codegen.freeReg(firstReg);
+			secondReg = second.codeGenRhs();
+			firstReg = Codegen.getReg();
+			Codegen.genPop(firstReg);
+		} else {
+			secondReg = second.codeGenRhs();
+		}
+
+		if (swap) {
+			return new String[] { secondReg, firstReg };
+		}
+		return new String[] { firstReg, secondReg };
+	}
+
+	/**
+	 * codeGenBinary
+	 * Evaluate both operands and combine them with a three-register
+	 * instruction; the result ends up in the left operand's register.
+	 */
+	protected String codeGenBinary(String opcode) {
+		String[] regs = codeGenOperands();
+		Codegen.generate(opcode, regs[0], regs[0], regs[1]);
+		Codegen.freeReg(regs[1]);
+		return regs[0];
+	}
+
+	/**
+	 * lowerBinary
+	 * Evaluate both operands, left first, and combine them with op.
+	 */
+	protected int lowerBinary(TacFunction fn, int op) {
+		int t1 = myExp1.lower(fn);
+		int t2 = myExp2.lower(fn);
+		int t = fn.newTemp();
+		fn.add(TacInstr.binary(op, t, t1, t2));
+		return t;
+	}
+
+	/**
+	 * codeGenCompareBranch
+	 * Compare the operands with a conditional branch: branchOp jumps when
+	 * the comparison holds, negOp when it does not.  A comparison with a
+	 * literal 0 uses $zero instead of evaluating the literal.
+	 */
+	protected void codeGenCompareBranch(String branchOp, String negOp,
+			String trueLabel, String falseLabel) {
+		String reg1, reg2;
+		if (myExp2.isConstant() && myExp2.constValue() == 0) {
+			reg1 = myExp1.codeGenRhs();
+			reg2 = Codegen.ZERO;
+		} else {
+			String[] regs = codeGenOperands();
+			reg1 = regs[0];
+			reg2 = regs[1];
+		}
+
+		if (trueLabel != null) {
+			Codegen.generate(branchOp, reg1, reg2, trueLabel);
+			if (falseLabel != null) {
+				Codegen.generate("j", falseLabel);
+			}
+		} else {
+			Codegen.generate(negOp, reg1, reg2, falseLabel);
+		}
+		Codegen.freeReg(reg1);
+		if (!reg2.equals(Codegen.ZERO)) {
+			Codegen.freeReg(reg2);
+		}
 	}
 }
 
@@ -2524,21 +3894,34 @@ class UnaryMinusNode extends UnaryExpNode {
      */
     public Type typeCheck() {
         Type type = myExp.typeCheck();
-        Type retType = new IntType();
+        Type retType = Type.INT;
 
         if (!type.isErrorType() && !type.isIntType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Arithmetic operator applied to non-numeric operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         return retType;
     }
 
+    /**
+     * constantFold
+     * Negating the most negative int traps at run time, so it is left
+     * alone.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        myExp = myExp.constantFold(consts);
+        if (myExp.isConstant() && myExp.constValue() != Integer.MIN_VALUE) {
+            return intLit(-myExp.constValue());
+        }
+        return this;
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(-");
         myExp.unparse(p, 0);
@@ -2546,14 +3929,18 @@ class UnaryMinusNode extends UnaryExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("li", Codegen.T1, 0);
-		Codegen.generate("sub", Codegen.T0, Codegen.T1, Codegen.T0);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = myExp.codeGenRhs();
+		Codegen.generate("sub", reg, Codegen.ZERO, reg);
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t1 = myExp.lower(fn);
+		int t = fn.newTemp();
+		fn.add(TacInstr.unary(TacInstr.NEG, t, t1));
+		return t;
 	}
 }
 
@@ -2567,21 +3954,32 @@ class NotNode extends UnaryExpNode {
      */
     public Type typeCheck() {
         Type type = myExp.typeCheck();
-        Type retType = new BoolType();
+        Type retType = Type.BOOL;
 
         if (!type.isErrorType() && !type.isBoolType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Logical operator applied to non-bool operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         return retType;
     }
 
+    /**
+     * constantFold
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        myExp = myExp.constantFold(consts);
+        if (myExp.isConstant()) {
+            return boolLit(myExp.constValue() == 0);
+        }
+        return this;
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(!");
         myExp.unparse(p, 0);
@@ -2589,14 +3987,23 @@ class NotNode extends UnaryExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("li", Codegen.T1, 1);
-		Codegen.generate("subu", Codegen.T0, Codegen.T1, Codegen.T0);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = myExp.codeGenRhs();
+		Codegen.generate("xori", reg, reg, 1);
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		int t1 = myExp.lower(fn);
+		int t = fn.newTemp();
+		fn.add(TacInstr.unary(TacInstr.NOT, t, t1));
+		return t;
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		myExp.codeGenBranch(falseLabel, trueLabel);
 	}
 }
 
@@ -2615,22 +4022,22 @@ abstract class ArithmeticExpNode extends BinaryExpNode {
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
         Type type2 = myExp2.typeCheck();
-        Type retType = new IntType();
+        Type retType = Type.INT;
 
         if (!type1.isErrorType() && !type1.isIntType()) {
             ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(),
                          "Arithmetic operator applied to non-numeric operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (!type2.isErrorType() && !type2.isIntType()) {
             ErrMsg.fatal(myExp2.lineNum(), myExp2.charNum(),
                          "Arithmetic operator applied to non-numeric operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         return retType;
@@ -2642,28 +4049,50 @@ abstract class LogicalExpNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
+	// the left operand's register is free again by the time the right
+	// operand is evaluated, and the operands are never reordered
+	@Override
+	public int regNeed() {
+		return Math.max(myExp1.regNeed(), myExp2.regNeed());
+	}
+
+	/**
+	 * codeGenSecond
+	 * Evaluate the right operand (once the left one, held in reg, did not
+	 * short-circuit) and leave its value in reg as well.
+	 */
+	protected void codeGenSecond(String reg) {
+		Codegen.freeReg(reg);
+		String reg2 = myExp2.codeGenRhs();
+		if (!reg2.equals(reg)) {
+			Codegen.claimReg(reg);
+			Codegen.generate("move", reg, reg2);
+			Codegen.freeReg(reg2);
+		}
+	}
+
     /**
      * typeCheck
      */
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
         Type type2 = myExp2.typeCheck();
-        Type retType = new BoolType();
+        Type retType = Type.BOOL;
 
         if (!type1.isErrorType() && !type1.isBoolType()) {
             ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(),
                          "Logical operator applied to non-bool operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (!type2.isErrorType() && !type2.isBoolType()) {
             ErrMsg.fatal(myExp2.lineNum(), myExp2.charNum(),
                          "Logical operator applied to non-bool operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         return retType;
@@ -2683,40 +4112,40 @@ abstract class EqualityExpNode extends BinaryExpNode {
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
         Type type2 = myExp2.typeCheck();
-        Type retType = new BoolType();
+        Type retType = Type.BOOL;
 
         if (type1.isVoidType() && type2.isVoidType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Equality operator applied to void functions");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isFnType() && type2.isFnType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Equality operator applied to functions");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isStructDefType() && type2.isStructDefType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Equality operator applied to struct names");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isStructType() && type2.isStructType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Equality operator applied to struct variables");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (!type1.equals(type2) && !type1.isErrorType() && !type2.isErrorType()) {
             ErrMsg.fatal(lineNum(), charNum(),
                          "Type mismatch");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (retType.isBoolType()) {
@@ -2738,22 +4167,22 @@ abstract class RelationalExpNode extends BinaryExpNode {
     public Type typeCheck() {
         Type type1 = myExp1.typeCheck();
         Type type2 = myExp2.typeCheck();
-        Type retType = new BoolType();
+        Type retType = Type.BOOL;
 
         if (!type1.isErrorType() && !type1.isIntType()) {
             ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(),
                          "Relational operator applied to non-numeric operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (!type2.isErrorType() && !type2.isIntType()) {
             ErrMsg.fatal(myExp2.lineNum(), myExp2.charNum(),
                          "Relational operator applied to non-numeric operand");
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         if (type1.isErrorType() || type2.isErrorType()) {
-            retType = new ErrorType();
+            retType = Type.ERROR;
         }
 
         return retType;
@@ -2765,6 +4194,14 @@ class PlusNode extends ArithmeticExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        long sum = (long)val1 + val2;
+        if (sum != (int)sum) {
+            return null;  // add traps on overflow
+        }
+        return intLit((int)sum);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2774,15 +4211,14 @@ class PlusNode extends ArithmeticExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.genPop(Codegen.T1);
-		Codegen.generate("add", Codegen.T0, Codegen.T0, Codegen.T1);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("add");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.ADD);
 	}
 }
 
@@ -2791,6 +4227,14 @@ class MinusNode extends ArithmeticExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        long diff = (long)val1 - val2;
+        if (diff != (int)diff) {
+            return null;  // sub traps on overflow
+        }
+        return intLit((int)diff);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2800,15 +4244,14 @@ class MinusNode extends ArithmeticExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T1);
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("sub", Codegen.T0, Codegen.T0, Codegen.T1);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("sub");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.SUB);
 	}
 }
 
@@ -2818,6 +4261,10 @@ class TimesNode extends ArithmeticExpNode {
     }
 
 
+    protected ExpNode fold(int val1, int val2) {
+        return intLit(val1 * val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2827,15 +4274,14 @@ class TimesNode extends ArithmeticExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.genPop(Codegen.T1);
-		Codegen.generate("mul", Codegen.T0, Codegen.T0, Codegen.T1);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("mul");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.MUL);
 	}
 }
 
@@ -2844,6 +4290,13 @@ class DivideNode extends ArithmeticExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        if (val2 == 0 || (val1 == Integer.MIN_VALUE && val2 == -1)) {
+            return null;  // leave the run-time behavior as it is
+        }
+        return intLit(val1 / val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2853,16 +4306,17 @@ class DivideNode extends ArithmeticExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.genPop(Codegen.T1);
-		Codegen.generate("div", Codegen.T1, Codegen.T0);
-		Codegen.generate("mflo", Codegen.T0);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String[] regs = codeGenOperands();
+		Codegen.generate("div", regs[0], regs[1]);
+		Codegen.generate("mflo", regs[0]);
+		Codegen.freeReg(regs[1]);
+		return regs[0];
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.DIV);
 	}
 }
 
@@ -2871,6 +4325,28 @@ class AndNode extends LogicalExpNode {
         super(exp1, exp2);
     }
 
+    /**
+     * constantFold
+     * true && e is e, false && e is false; e && true is e, and e && false
+     * is false when evaluating e has no side effects.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        myExp1 = myExp1.constantFold(consts);
+        myExp2 = myExp2.constantFold(consts);
+        if (myExp1.isConstant()) {
+            return myExp1.constValue() == 0 ? myExp1 : myExp2;
+        }
+        if (myExp2.isConstant()) {
+            if (myExp2.constValue() != 0) {
+                return myExp1;
+            }
+            if (!myExp1.hasSideEffects()) {
+                return myExp2;
+            }
+        }
+        return this;
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2880,17 +4356,39 @@ class AndNode extends LogicalExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
+	public String codeGenRhs() {
 		String scLabel = Codegen.nextLabel();
-		myExp1.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("beq", Codegen.T0, "$zero", scLabel);
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
+		String reg = myExp1.codeGenRhs();
+		Codegen.generate("beq", reg, Codegen.ZERO, scLabel);
+		codeGenSecond(reg);
 		Codegen.genLabel(scLabel);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		String scLabel = fn.newLabel();
+		int t = myExp1.lower(fn);
+		fn.add(TacInstr.branch(TacInstr.BRZ, t, scLabel));
+		int t2 = myExp2.lower(fn);
+		fn.add(TacInstr.unary(TacInstr.MOVE, t, t2));
+		fn.add(TacInstr.label(TacInstr.LABEL, scLabel));
+		return t;
+	}
+
+	// no value is computed: a false left operand jumps straight to
+	// falseLabel
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		if (falseLabel == null) {
+			String skipLabel = Codegen.nextLabel();
+			myExp1.codeGenBranch(null, skipLabel);
+			myExp2.codeGenBranch(trueLabel, null);
+			Codegen.genLabel(skipLabel);
+		} else {
+			myExp1.codeGenBranch(null, falseLabel);
+			myExp2.codeGenBranch(trueLabel, falseLabel);
+		}
 	}
 }
 
@@ -2899,6 +4397,28 @@ class OrNode extends LogicalExpNode {
         super(exp1, exp2);
     }
 
+    /**
+     * constantFold
+     * true || e is true, false || e is e; e || false is e, and e || true
+     * is true when evaluating e has no side effects.
+     */
+    public ExpNode constantFold(Map<TSym, ExpNode> consts) {
+        myExp1 = myExp1.constantFold(consts);
+        myExp2 = myExp2.constantFold(consts);
+        if (myExp1.isConstant()) {
+            return myExp1.constValue() != 0 ? myExp1 : myExp2;
+        }
+        if (myExp2.isConstant()) {
+            if (myExp2.constValue() == 0) {
+                return myExp1;
+            }
+            if (!myExp1.hasSideEffects()) {
+                return myExp2;
+            }
+        }
+        return this;
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2908,17 +4428,39 @@ class OrNode extends LogicalExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
+	public String codeGenRhs() {
 		String scLabel = Codegen.nextLabel();
-		myExp1.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("bne", Codegen.T0, "$zero", scLabel);
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
+		String reg = myExp1.codeGenRhs();
+		Codegen.generate("bne", reg, Codegen.ZERO, scLabel);
+		codeGenSecond(reg);
 		Codegen.genLabel(scLabel);
-		Codegen.genPush(Codegen.T0);
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		String scLabel = fn.newLabel();
+		int t = myExp1.lower(fn);
+		fn.add(TacInstr.branch(TacInstr.BNZ, t, scLabel));
+		int t2 = myExp2.lower(fn);
+		fn.add(TacInstr.unary(TacInstr.MOVE, t, t2));
+		fn.add(TacInstr.label(TacInstr.LABEL, scLabel));
+		return t;
+	}
+
+	// no value is computed: a true left operand jumps straight to
+	// trueLabel
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		if (trueLabel == null) {
+			String skipLabel = Codegen.nextLabel();
+			myExp1.codeGenBranch(skipLabel, null);
+			myExp2.codeGenBranch(null, falseLabel);
+			Codegen.genLabel(skipLabel);
+		} else {
+			myExp1.codeGenBranch(trueLabel, null);
+			myExp2.codeGenBranch(trueLabel, falseLabel);
+		}
 	}
 }
 
@@ -2927,6 +4469,10 @@ class EqualsNode extends EqualityExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        return boolLit(val1 == val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2936,46 +4482,53 @@ class EqualsNode extends EqualityExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
+	public String codeGenRhs() {
+		String reg;
 		if (cmpTypes.isBoolType() || cmpTypes.isIntType()) {
-			myExp1.codeGenRhs();
-			myExp2.codeGenRhs();
-			Codegen.genPop(Codegen.T0);
-			Codegen.genPop(Codegen.T1);
-			Codegen.generate("li", "$t2", 0);
-			String skipLabel = Codegen.nextLabel();
-			Codegen.generate("bne", Codegen.T0, Codegen.T1, skipLabel);
-			Codegen.generate("addu", "$t2", 1);
-			Codegen.genLabel(skipLabel);
-			Codegen.genPush("$t2");
+			reg = codeGenBinary("seq");
 		} else if (cmpTypes.isStringType()) {
 			String loopStart = Codegen.nextLabel();
 			String exitLoop = Codegen.nextLabel();
-			myExp1.codeGenRhs();
-			myExp2.codeGenRhs();
-			Codegen.genPop(Codegen.T0);
-			Codegen.genPop(Codegen.T1);
+			String[] regs = codeGenOperands();
+			// $v0/$v1 are never live during expression evaluation, so
+			// they can hold the characters being compared
 			Codegen.genLabel(loopStart);
-			Codegen.generateIndexed("lb", "$t2", Codegen.T0, 0);
-			Codegen.generateIndexed("lb", "$t3", Codegen.T1, 0);
-			Codegen.generate("bne", "$t2", "$t3", exitLoop);
-			Codegen.generate("beq", "$t2", "$zero", exitLoop);
-			Codegen.generate("addi", Codegen.T0, Codegen.T0, 1);
-			Codegen.generate("addi", Codegen.T1, Codegen.T1, 1);
+			Codegen.generateIndexed("lb", Codegen.V0, regs[1], 0);
+			Codegen.generateIndexed("lb", Codegen.V1, regs[0], 0);
+			Codegen.generate("bne", Codegen.V0, Codegen.V1, exitLoop);
+			Codegen.generate("beq", Codegen.V0, Codegen.ZERO, exitLoop);
+			Codegen.generate("addi", regs[1], regs[1], 1);
+			Codegen.generate("addi", regs[0], regs[0], 1);
 			Codegen.generate("j", loopStart);
 			Codegen.genLabel(exitLoop);
-			String falseEnding = Codegen.nextLabel();
-			Codegen.generate("li", "$t4", 0);
-			Codegen.generate("bne", "$t2", "$zero", falseEnding);
-			Codegen.generate("addi", "$t4", "$t4", 1);
-			Codegen.genLabel(falseEnding);
-			Codegen.genPush("$t4");
-			
+			Codegen.generate("seq", regs[0], Codegen.V0, Codegen.ZERO);
+			Codegen.freeReg(regs[1]);
+			reg = regs[0];
 		} else {
 			ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(), "Unsupported type in EqualsNode");
+			reg = Codegen.getReg();
+		}
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		if (cmpTypes.isStringType()) {
+			return lowerBinary(fn, TacInstr.STREQ);
+		}
+		if (!cmpTypes.isBoolType() && !cmpTypes.isIntType()) {
+			ErrMsg.fatal(myExp1.lineNum(), myExp1.charNum(), "Unsupported type in EqualsNode");
+		}
+		return lowerBinary(fn, TacInstr.SEQ);
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		if (cmpTypes.isStringType()) {
+			super.codeGenBranch(trueLabel, falseLabel);
+			return;
 		}
-		Codegen.generateWithComment("", "end " + this.unparseString());
+		codeGenCompareBranch("beq", "bne", trueLabel, falseLabel);
 	}
 }
 
@@ -2984,6 +4537,10 @@ class NotEqualsNode extends EqualityExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        return boolLit(val1 != val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2993,19 +4550,19 @@ class NotEqualsNode extends EqualityExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T0);
-		Codegen.genPop(Codegen.T1);
-		Codegen.generate("li", "$t2", 0);
-		String skipLabel = Codegen.nextLabel();
-		Codegen.generate("beq", Codegen.T0, Codegen.T1, skipLabel);
-		Codegen.generate("addu", "$t2", 1);
-		Codegen.genLabel(skipLabel);
-		Codegen.genPush("$t2");
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("sne");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.SNE);
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		codeGenCompareBranch("bne", "beq", trueLabel, falseLabel);
 	}
 }
 
@@ -3014,6 +4571,10 @@ class LessNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        return boolLit(val1 < val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -3023,19 +4584,19 @@ class LessNode extends RelationalExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T1);
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("li", "$t2", 0);
-		String skipLabel = Codegen.nextLabel();
-		Codegen.generate("bge", Codegen.T0, Codegen.T1, skipLabel);
-		Codegen.generate("addu", "$t2", 1);
-		Codegen.genLabel(skipLabel);
-		Codegen.genPush("$t2");
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("slt");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.SLT);
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		codeGenCompareBranch("blt", "bge", trueLabel, falseLabel);
 	}
 }
 
@@ -3044,6 +4605,10 @@ class GreaterNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        return boolLit(val1 > val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -3053,19 +4618,19 @@ class GreaterNode extends RelationalExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T1);
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("li", "$t2", 0);
-		String skipLabel = Codegen.nextLabel();
-		Codegen.generate("ble", Codegen.T0, Codegen.T1, skipLabel);
-		Codegen.generate("addu", "$t2", 1);
-		Codegen.genLabel(skipLabel);
-		Codegen.genPush("$t2");
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("sgt");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.SGT);
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		codeGenCompareBranch("bgt", "ble", trueLabel, falseLabel);
 	}
 }
 
@@ -3074,6 +4639,10 @@ class LessEqNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        return boolLit(val1 <= val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -3083,19 +4652,19 @@ class LessEqNode extends RelationalExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T1);
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("li", "$t2", 0);
-		String skipLabel = Codegen.nextLabel();
-		Codegen.generate("bgt", Codegen.T0, Codegen.T1, skipLabel);
-		Codegen.generate("addu", "$t2", 1);
-		Codegen.genLabel(skipLabel);
-		Codegen.genPush("$t2");
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("sle");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.SLE);
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		codeGenCompareBranch("ble", "bgt", trueLabel, falseLabel);
 	}
 }
 
@@ -3104,6 +4673,10 @@ class GreaterEqNode extends RelationalExpNode {
         super(exp1, exp2);
     }
 
+    protected ExpNode fold(int val1, int val2) {
+        return boolLit(val1 >= val2);
+    }
+
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -3113,18 +4686,18 @@ class GreaterEqNode extends RelationalExpNode {
     }
     
 	@Override
-	public void codeGenRhs() {
-		Codegen.generateWithComment("", "begin " + this.unparseString());
-		myExp1.codeGenRhs();
-		myExp2.codeGenRhs();
-		Codegen.genPop(Codegen.T1);
-		Codegen.genPop(Codegen.T0);
-		Codegen.generate("li", "$t2", 0);
-		String skipLabel = Codegen.nextLabel();
-		Codegen.generate("blt", Codegen.T0, Codegen.T1, skipLabel);
-		Codegen.generate("addu", "$t2", 1);
-		Codegen.genLabel(skipLabel);
-		Codegen.genPush("$t2");
-		Codegen.generateWithComment("", "end " + this.unparseString());
+	public String codeGenRhs() {
+		String reg = codeGenBinary("sge");
+		return reg;
+	}
+
+	@Override
+	public int lower(TacFunction fn) {
+		return lowerBinary(fn, TacInstr.SGE);
+	}
+
+	@Override
+	public void codeGenBranch(String trueLabel, String falseLabel) {
+		codeGenCompareBranch("bge", "blt", trueLabel, falseLabel);
 	}
 }
@@ -1,6 +1,7 @@
-import java_cup.runtime.*; // defines the Symbol class
-// The generated scanner will return a Symbol for each token that it finds.
-// A Symbol contains an Object field named value; that field will be of type
+// The generated scanner adds each token that it finds to a TokenBuffer
+// (scanAll), which the parser reads, or to a TokenPipe (scanInto), which
+// passes it to the parser on another thread.  The parser gets a Symbol
+// for each token; the value of an ID, literal, true or false token is a
 // TokenVal, defined below.
 //
 // A TokenVal object contains the line number on which the token occurs as
@@ -26,12 +27,14 @@ class IntLitTokenVal extends TokenVal {
     }
 }
 class IdTokenVal extends TokenVal {
-  // new field: the value of the identifier
+  // new fields: the Names id of the identifier, and its (shared) value
+    int id;
     String idVal;
   // constructor
-    IdTokenVal(int line, int ch, String val) {
+    IdTokenVal(int line, int ch, int id) {
         super(line, ch);
-    idVal = val;
+        this.id = id;
+        idVal = Names.name(id);
     }
 }
 class StrLitTokenVal extends TokenVal {
@@ -43,14 +46,9 @@ class StrLitTokenVal extends TokenVal {
         strVal = val;
     }
 }
-// The following class is used to keep track of the character number at which
-// the current token starts on its line.
-class CharNum {
-    static int num=1;
-}
 
 
-class Yylex implements java_cup.runtime.Scanner {
+class Yylex {
 	private final int YY_BUFFER_SIZE = 512;
 	private final int YY_F = -1;
 	private final int YY_NO_STATE = -1;
@@ -60,7 +58,73 @@ class Yylex implements java_cup.runtime.Scanner {
 	private final int YY_NO_ANCHOR = 4;
 	private final int YY_BOL = 128;
 	private final int YY_EOF = 129;
-	private java.io.BufferedReader yy_reader;
+	public final int YYEOF = -1;
+
+    private TokenSink tokens;
+    // the character number at which the current token starts on its line;
+    // like yyline, it belongs to this scanner, so that several scanners
+    // can run at once
+    private int charNum = 1;
+    // the pool that identifiers are interned in
+    private Names names = Names.program();
+    /**
+     * Scan all of the input into a new TokenBuffer.
+     */
+    public TokenBuffer scanAll() throws java.io.IOException {
+        // about one token for every four chars of the input
+        TokenBuffer buffer =
+            new TokenBuffer((yy_buffer_read - yy_buffer_start) / 4);
+        scanInto(buffer);
+        return buffer;
+    }
+    /**
+     * Scan all of the input into sink.
+     */
+    public void scanInto(TokenSink sink) throws java.io.IOException {
+        if (yy_reader != null) {
+            yy_read_all();
+        }
+        tokens = sink;
+        tokens.setText(yy_buffer);
+        while (next_kind() != YYEOF) {
+            // each action adds its token
+        }
+    }
+    /**
+     * As scanAll(), but scanning up to chunks pieces of the input at
+     * once on pool; see ChunkedScan.
+     */
+    public TokenBuffer scanAll(java.util.concurrent.ExecutorService pool,
+                               int chunks) throws java.io.IOException {
+        if (yy_reader != null) {
+            yy_read_all();
+        }
+        return ChunkedScan.scan(yy_buffer, yy_buffer_read, pool, chunks);
+    }
+    /**
+     * Scan text[from] through text[to - 1], as if they were a file of
+     * their own, into a new TokenBuffer, interning identifiers in names;
+     * from must be the start of a line.
+     */
+    public static TokenBuffer scanRange(char[] text, int from, int to,
+                                        Names names)
+            throws java.io.IOException {
+        Yylex scanner = new Yylex(text, to);
+        scanner.names = names;
+        scanner.yy_buffer_index = from;
+        scanner.yy_buffer_start = from;
+        scanner.yy_buffer_end = from;
+        return scanner.scanAll();
+    }
+    // add the token just matched, of the given kind and value, and
+    // move the char number past it
+    private int token(int kind, int value) {
+        tokens.add(kind, yyline+1, charNum, yy_buffer_start,
+                   yylength(), value);
+        charNum += yylength();
+        return kind;
+    }
+	private java.io.Reader yy_reader;
 	private int yy_buffer_index;
 	private int yy_buffer_read;
 	private int yy_buffer_start;
@@ -75,7 +139,7 @@ class Yylex implements java_cup.runtime.Scanner {
 		if (null == reader) {
 			throw (new Error("Error: Bad input stream initializer."));
 		}
-		yy_reader = new java.io.BufferedReader(reader);
+		yy_reader = reader;
 	}
 
 	Yylex (java.io.InputStream instream) {
@@ -83,7 +147,35 @@ class Yylex implements java_cup.runtime.Scanner {
 		if (null == instream) {
 			throw (new Error("Error: Bad input stream initializer."));
 		}
-		yy_reader = new java.io.BufferedReader(new java.io.InputStreamReader(instream));
+		yy_reader = new java.io.InputStreamReader(instream);
+	}
+
+	Yylex (char text[], int length) {
+		this ();
+		if (null == text) {
+			throw (new Error("Error: Bad input stream initializer."));
+		}
+		yy_buffer = text;
+		yy_buffer_read = length;
+	}
+
+	Yylex (java.nio.channels.FileChannel channel)
+		throws java.io.IOException {
+		this ();
+		java.nio.CharBuffer text = java.nio.charset.Charset.defaultCharset()
+			.newDecoder()
+			.onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE)
+			.decode(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY,
+				0, channel.size()));
+		if (text.hasArray() && 0 == text.arrayOffset()) {
+			yy_buffer = text.array();
+			yy_buffer_read = text.limit();
+		} else {
+			yy_buffer = new char[text.remaining()];
+			text.get(yy_buffer);
+			yy_buffer_read = yy_buffer.length;
+		}
 	}
 
 	private Yylex () {
@@ -107,48 +199,34 @@ class Yylex implements java_cup.runtime.Scanner {
 	}
 	private int yy_advance ()
 		throws java.io.IOException {
-		int next_read;
-		int i;
-		int j;
-
 		if (yy_buffer_index < yy_buffer_read) {
 			return yy_buffer[yy_buffer_index++];
 		}
-
-		if (0 != yy_buffer_start) {
-			i = yy_buffer_start;
-			j = 0;
-			while (i < yy_buffer_read) {
-				yy_buffer[j] = yy_buffer[i];
-				++i;
-				++j;
-			}
-			yy_buffer_end = yy_buffer_end - yy_buffer_start;
-			yy_buffer_start = 0;
-			yy_buffer_read = j;
-			yy_buffer_index = j;
-			next_read = yy_reader.read(yy_buffer,
-					yy_buffer_read,
-					yy_buffer.length - yy_buffer_read);
-			if (-1 == next_read) {
-				return YY_EOF;
+		if (null != yy_reader) {
+			yy_read_all();
+			if (yy_buffer_index < yy_buffer_read) {
+				return yy_buffer[yy_buffer_index++];
 			}
-			yy_buffer_read = yy_buffer_read + next_read;
 		}
+		return YY_EOF;
+	}
+	private void yy_read_all ()
+		throws java.io.IOException {
+		int next_read;
 
-		while (yy_buffer_index >= yy_buffer_read) {
-			if (yy_buffer_index >= yy_buffer.length) {
+		while (true) {
+			if (yy_buffer_read == yy_buffer.length) {
 				yy_buffer = yy_double(yy_buffer);
 			}
 			next_read = yy_reader.read(yy_buffer,
 					yy_buffer_read,
 					yy_buffer.length - yy_buffer_read);
 			if (-1 == next_read) {
-				return YY_EOF;
+				break;
 			}
 			yy_buffer_read = yy_buffer_read + next_read;
 		}
-		return yy_buffer[yy_buffer_index++];
+		yy_reader = null;
 	}
 	private void yy_move_end () {
 		if (yy_buffer_end > yy_buffer_start &&
@@ -301,7 +379,7 @@ class Yylex implements java_cup.runtime.Scanner {
 		/* 47 */ YY_NO_ANCHOR,
 		/* 48 */ YY_NO_ANCHOR,
 		/* 49 */ YY_NO_ANCHOR,
-		/* 50 */ YY_NOT_ACCEPT,
+		/* 50 */ YY_NO_ANCHOR,
 		/* 51 */ YY_NO_ANCHOR,
 		/* 52 */ YY_NO_ANCHOR,
 		/* 53 */ YY_NO_ANCHOR,
@@ -341,48 +419,44 @@ class Yylex implements java_cup.runtime.Scanner {
 		/* 87 */ YY_NO_ANCHOR,
 		/* 88 */ YY_NO_ANCHOR,
 		/* 89 */ YY_NO_ANCHOR,
-		/* 90 */ YY_NO_ANCHOR,
+		/* 90 */ YY_NOT_ACCEPT,
 		/* 91 */ YY_NO_ANCHOR,
 		/* 92 */ YY_NO_ANCHOR,
 		/* 93 */ YY_NO_ANCHOR,
 		/* 94 */ YY_NO_ANCHOR,
 		/* 95 */ YY_NO_ANCHOR,
-		/* 96 */ YY_NO_ANCHOR,
-		/* 97 */ YY_NO_ANCHOR
+		/* 96 */ YY_NO_ANCHOR
 	};
 	private int yy_cmap[] = unpackFromString(1,130,
-"46:9,27,26,46:2,23,46:18,27,42,22,29,46:2,43,25,32,33,41,39,35,40,36,28,21:" +
-"10,46,34,37,45,38,25,46,19:26,46,24,46:2,20,46,13,1,15,8,11,12,19,17,4,19:2" +
-",3,19,5,2,18,19,9,14,6,10,7,16,19:3,30,44,31,46:2,0:2")[0];
+"45:9,26,25,45:2,22,45:18,26,41,21,28,45:2,42,24,31,32,40,38,34,39,35,27,20:" +
+"10,45,33,36,44,37,24,45,19:26,45,23,45:2,19,45,13,1,15,8,11,12,19,17,4,19:2" +
+",3,19,5,2,18,19,9,14,6,10,7,16,19:3,29,43,30,45:2,0:2")[0];
 
-	private int yy_rmap[] = unpackFromString(1,98,
-"0,1,2,3,4,1:2,5,6,7,1:7,8,9,10,11,1,12,13,14,1,15,1:10,14:7,1,14:5,16,17,18" +
-",19,20,21,22,23,24,20,25,26,27,28,29,30,31,32,33,34,35,36,37,14,38,39,40,41" +
-",42,43,44,45,46,47,48,49,50,51,52,14,53,54,55,56,57,58,59,60")[0];
+	private int yy_rmap[] = unpackFromString(1,97,
+"0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,1:2,15,16,17,1:7,18,19,20,21,1,22,23,24," +
+"25,26,27,3,28,29,30,31,32,33,34,35,36,1,37,1:10,38,3,39,40,41,42,43,44,45,4" +
+"6,3,47,48,3:3,49,50,3,51,52,3,53,1,54,55,56,3,57,3,58,59,3:3,59,60")[0];
 
-	private int yy_nxt[][] = unpackFromString(61,47,
-"1,2,89:2,51,89,91,92,89,93,89,94,95,89,96,71,97,89:4,3,4,-1,5:2,6,7,8,9,10," +
-"11,12,13,14,15,16,17,18,19,20,21,22,52,56,23,5,-1:48,89,72,89:17,73:2,-1:46" +
-",3,-1:26,4:21,25,4,26,4,-1,4:20,-1:27,7,-1:47,9,-1:19,9:25,-1,9:20,-1:37,27" +
-",-1:7,28,-1:39,29,-1:6,30,-1:40,31,-1:47,32,-1:51,33,-1:46,36,-1:2,89:19,73" +
-":2,-1:26,53:4,4:2,53:15,4,53,4:2,-1,53:20,-1,50:21,44,50:3,-1,50:20,-1,89:4" +
-",55,89:6,24,89:7,73:2,-1:68,34,-1:4,53:21,44,53,57,53,-1,53:20,-1,59:21,-1," +
-"59,61,59,-1,59:20,-1,89:5,37,89:13,73:2,-1:69,35,-1:3,50:4,53:2,50:15,54,50" +
-",53:2,-1,50:20,-1,89:4,38,89:14,73:2,-1:26,89:2,39,89:16,73:2,-1:30,59:2,-1" +
-":15,59,-1,59:2,-1:22,89:10,40,89:8,73:2,-1:26,89:7,41,89:11,73:2,-1:26,89:1" +
-"0,42,89:8,73:2,-1:26,89:5,43,89:13,73:2,-1:26,89:10,45,89:8,73:2,-1:26,89:1" +
-"0,46,89:8,73:2,-1:26,89:4,47,89:14,73:2,-1:26,89:5,48,89:13,73:2,-1:26,89:5" +
-",49,89:13,73:2,-1:26,89,80,89,58,89:15,73:2,-1:26,89,60,89:17,73:2,-1:26,89" +
-":9,62,89:9,73:2,-1:26,89:3,63,89:15,73:2,-1:26,89:5,82,89:11,83,89,73:2,-1:" +
-"26,89:13,64,89:5,73:2,-1:26,89:2,84,89:16,73:2,-1:26,89:8,90,89:10,73:2,-1:" +
-"26,89:9,65,89:9,73:2,-1:26,89:3,85,89:15,73:2,-1:26,89:9,86,89:9,73:2,-1:26" +
-",89:10,87,89:8,73:2,-1:26,89:13,66,89:5,73:2,-1:26,89:2,67,89:16,73:2,-1:26" +
-",89:8,68,89:10,73:2,-1:26,89:12,69,89:6,73:2,-1:26,89:14,70,89:4,73:2,-1:26" +
-",89:9,88,89:9,73:2,-1:26,89:8,74,89:10,73:2,-1:26,89,75,89:17,73:2,-1:26,89" +
-":10,76,89:8,73:2,-1:26,89:2,77,89:16,73:2,-1:26,89:12,78,89:6,73:2,-1:26,89" +
-":5,79,89:13,73:2,-1:26,89:16,81,89:2,73:2,-1:25");
+	private int yy_nxt[][] = unpackFromString(61,46,
+"1,2,3:2,4,3,5,6,3,7,3,8,9,3,10,11,12,3:3,13,14,-1,15:2,16,17,18,19,20,21,22" +
+",23,24,25,26,27,28,29,30,31,32,33,34,35,15,-1:47,3,36,3:18,-1:26,3:20,-1:26" +
+",3:4,37,3:6,38,3:8,-1:26,3:8,39,3:11,-1:26,3,40,3:18,-1:26,3:10,41,3:9,-1:2" +
+"6,3:2,42,3:17,-1:26,3:12,43,3:7,-1:26,3:5,44,3:14,-1:26,3,45,3,46,3:16,-1:2" +
+"6,3:16,47,3:3,-1:45,13,-1:26,14:20,48,14,49,14,-1,14:20,-1:26,17,-1:46,19,-" +
+"1:19,19:24,-1,19:20,-1:36,50,-1:7,51,-1:38,52,-1:6,53,-1:39,54,-1:46,55,-1:" +
+"50,56,-1:43,57,-1:46,58,-1:46,59,-1:2,3,60,3:18,-1:26,3:5,61,3:14,-1:26,3:9" +
+",62,3:10,-1:26,3:3,63,3:16,-1:26,3:5,64,3:11,65,3:2,-1:26,3:13,66,3:6,-1:26" +
+",3:2,67,3:17,-1:26,3:8,68,3:11,-1:26,3:9,69,3:10,-1:26,3:4,70,3:15,-1:26,3:" +
+"3,71,3:16,-1:26,72:4,14:2,72:14,14,72,14:2,-1,72:20,-1,3:2,73,3:17,-1:26,3:" +
+"10,74,3:9,-1:26,3:7,75,3:12,-1:26,3:9,76,3:10,-1:26,3:10,77,3:9,-1:26,3:10," +
+"78,3:9,-1:26,3:13,79,3:6,-1:26,3:9,80,3:10,-1:26,3:5,81,3:14,-1:26,3:2,82,3" +
+":17,-1:26,72:20,83,72,84,72,-1,72:20,-1,3:8,85,3:11,-1:26,3:12,86,3:7,-1:26" +
+",3:10,87,3:9,-1:26,3:14,88,3:5,-1:26,3:10,89,3:9,-1:26,90:4,72:2,90:14,91,9" +
+"0,72:2,-1,90:20,-1,3:4,92,3:15,-1:26,3:5,93,3:14,-1:26,3:5,94,3:14,-1:26,90" +
+":20,83,90:3,-1,90:20,-1,95:20,-1,95,96,95,-1,95:20,-1:5,95:2,-1:14,95,-1,95" +
+":2,-1:21");
 
-	public java_cup.runtime.Symbol next_token ()
+	public int next_kind ()
 		throws java.io.IOException {
 		int yy_lookahead;
 		int yy_anchor = YY_NO_ANCHOR;
@@ -404,8 +478,7 @@ class Yylex implements java_cup.runtime.Scanner {
 			yy_next_state = YY_F;
 			yy_next_state = yy_nxt[yy_rmap[yy_state]][yy_cmap[yy_lookahead]];
 			if (YY_EOF == yy_lookahead && true == yy_initial) {
-
-return new Symbol(sym.EOF);
+				return YYEOF;
 			}
 			if (YY_F != yy_next_state) {
 				yy_state = yy_next_state;
@@ -433,767 +506,606 @@ return new Symbol(sym.EOF);
 						break;
 					case 2:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -3:
 						break;
 					case 3:
-						{ double val = Double.parseDouble(yytext());
-            int intVal;
-            if (val > Integer.MAX_VALUE) {
-                ErrMsg.warn(yyline+1, CharNum.num,
-                            "integer literal too large; using max value");
-                intVal = Integer.MAX_VALUE;
-            } else {
-                intVal = Integer.parseInt(yytext());
-            }
-            Symbol S = new Symbol(sym.INTLITERAL,
-                             new IntLitTokenVal(yyline+1, CharNum.num, intVal));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -4:
 						break;
 					case 4:
 						{
-            // unterminated string
-            ErrMsg.fatal(yyline+1, CharNum.num,
-                         "unterminated string literal ignored");
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -5:
 						break;
 					case 5:
-						{ ErrMsg.fatal(yyline+1, CharNum.num,
-                         "illegal character ignored: " + yytext());
-            CharNum.num++;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -6:
 						break;
 					case 6:
-						{ CharNum.num = 1; }
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
+          }
 					case -7:
 						break;
 					case 7:
-						{ CharNum.num += yytext().length(); }
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
+          }
 					case -8:
 						break;
 					case 8:
-						{ Symbol S = new Symbol(sym.DIVIDE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -9:
 						break;
 					case 9:
-						{ // comment - ignore. Note: don't need to update char num
-            // since everything to end of line will be ignored
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -10:
 						break;
 					case 10:
-						{ Symbol S = new Symbol(sym.LCURLY, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -11:
 						break;
 					case 11:
-						{ Symbol S = new Symbol(sym.RCURLY, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -12:
 						break;
 					case 12:
-						{ Symbol S = new Symbol(sym.LPAREN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -13:
 						break;
 					case 13:
-						{ Symbol S = new Symbol(sym.RPAREN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{ // the value straight from the buffer, without making a String
+            long val = 0;
+            int end = yy_buffer_start + yylength();
+            for (int k = yy_buffer_start; k < end; k++) {
+                val = 10 * val + (yy_buffer[k] - '0');
+                if (val > Integer.MAX_VALUE) {
+                    break;
+                }
+            }
+            int intVal;
+            if (val > Integer.MAX_VALUE) {
+                tokens.warn(yyline+1, charNum,
+                            "integer literal too large; using max value");
+                intVal = Integer.MAX_VALUE;
+            } else {
+                intVal = (int)val;
+            }
+            return token(sym.INTLITERAL, intVal);
           }
 					case -14:
 						break;
 					case 14:
-						{ Symbol S = new Symbol(sym.SEMICOLON, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{
+            // unterminated string
+            tokens.fatal(yyline+1, charNum,
+                         "unterminated string literal ignored");
           }
 					case -15:
 						break;
 					case 15:
-						{ Symbol S = new Symbol(sym.COMMA, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{ tokens.fatal(yyline+1, charNum,
+                         "illegal character ignored: " + yytext());
+            charNum++;
           }
 					case -16:
 						break;
 					case 16:
-						{ Symbol S = new Symbol(sym.DOT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ charNum = 1; }
 					case -17:
 						break;
 					case 17:
-						{ Symbol S = new Symbol(sym.LESS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ charNum += yylength(); }
 					case -18:
 						break;
 					case 18:
-						{ Symbol S = new Symbol(sym.GREATER, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ return token(sym.DIVIDE, 0); }
 					case -19:
 						break;
 					case 19:
-						{ Symbol S = new Symbol(sym.PLUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
+						{ // comment - ignore. Note: don't need to update char num
+            // since everything to end of line will be ignored
           }
 					case -20:
 						break;
 					case 20:
-						{ Symbol S = new Symbol(sym.MINUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ return token(sym.LCURLY, 0); }
 					case -21:
 						break;
 					case 21:
-						{ Symbol S = new Symbol(sym.TIMES, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ return token(sym.RCURLY, 0); }
 					case -22:
 						break;
 					case 22:
-						{ Symbol S = new Symbol(sym.NOT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ return token(sym.LPAREN, 0); }
 					case -23:
 						break;
 					case 23:
-						{ Symbol S = new Symbol(sym.ASSIGN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
-            return S;
-          }
+						{ return token(sym.RPAREN, 0); }
 					case -24:
 						break;
 					case 24:
-						{ Symbol S = new Symbol(sym.IF, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
-          }
+						{ return token(sym.SEMICOLON, 0); }
 					case -25:
 						break;
 					case 25:
-						{
-            String strVal = yytext();
-            Symbol S = new Symbol(sym.STRINGLITERAL,
-                             new StrLitTokenVal(yyline+1, CharNum.num, strVal));
-            CharNum.num += yytext().length();
-            return S;
-          }
+						{ return token(sym.COMMA, 0); }
 					case -26:
 						break;
 					case 26:
-						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-             "unterminated string literal with bad escaped character ignored");
-          }
+						{ return token(sym.DOT, 0); }
 					case -27:
 						break;
 					case 27:
-						{ Symbol S = new Symbol(sym.WRITE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.LESS, 0); }
 					case -28:
 						break;
 					case 28:
-						{ Symbol S = new Symbol(sym.LESSEQ, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.GREATER, 0); }
 					case -29:
 						break;
 					case 29:
-						{ Symbol S = new Symbol(sym.READ, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.PLUS, 0); }
 					case -30:
 						break;
 					case 30:
-						{ Symbol S = new Symbol(sym.GREATEREQ, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.MINUS, 0); }
 					case -31:
 						break;
 					case 31:
-						{ Symbol S = new Symbol(sym.PLUSPLUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.TIMES, 0); }
 					case -32:
 						break;
 					case 32:
-						{ Symbol S = new Symbol(sym.MINUSMINUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.NOT, 0); }
 					case -33:
 						break;
 					case 33:
-						{ Symbol S = new Symbol(sym.NOTEQUALS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
+						{ tokens.fatal(yyline+1, charNum,
+                         "illegal character ignored: " + yytext());
+            charNum++;
           }
 					case -34:
 						break;
 					case 34:
-						{ Symbol S = new Symbol(sym.AND, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
+						{ tokens.fatal(yyline+1, charNum,
+                         "illegal character ignored: " + yytext());
+            charNum++;
           }
 					case -35:
 						break;
 					case 35:
-						{ Symbol S = new Symbol(sym.OR, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
-          }
+						{ return token(sym.ASSIGN, 0); }
 					case -36:
 						break;
 					case 36:
-						{ Symbol S = new Symbol(sym.EQUALS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -37:
 						break;
 					case 37:
-						{ Symbol S = new Symbol(sym.INT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -38:
 						break;
 					case 38:
-						{ Symbol S = new Symbol(sym.CIN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
-          }
+						{ return token(sym.IF, 0); }
 					case -39:
 						break;
 					case 39:
-						{ Symbol S = new Symbol(sym.BOOL, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -40:
 						break;
 					case 40:
-						{ Symbol S = new Symbol(sym.TRUE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -41:
 						break;
 					case 41:
-						{ Symbol S = new Symbol(sym.VOID, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -42:
 						break;
 					case 42:
-						{ Symbol S = new Symbol(sym.ELSE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -43:
 						break;
 					case 43:
-						{ Symbol S = new Symbol(sym.COUT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -44:
 						break;
 					case 44:
 						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-                         "string literal with bad escaped character ignored");
-            CharNum.num += yytext().length();
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -45:
 						break;
 					case 45:
-						{ Symbol S = new Symbol(sym.FALSE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -46:
 						break;
 					case 46:
-						{ Symbol S = new Symbol(sym.WHILE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -47:
 						break;
 					case 47:
-						{ Symbol S = new Symbol(sym.RETURN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -48:
 						break;
 					case 48:
-						{ Symbol S = new Symbol(sym.REPEAT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // the parser makes the String from the token's offsets
+            return token(sym.STRINGLITERAL, 0);
           }
 					case -49:
 						break;
 					case 49:
-						{ Symbol S = new Symbol(sym.STRUCT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
-            return S;
+						{
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+             "unterminated string literal with bad escaped character ignored");
           }
 					case -50:
 						break;
-					case 51:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 50:
+						{ return token(sym.WRITE, 0); }
 					case -51:
 						break;
-					case 52:
-						{ ErrMsg.fatal(yyline+1, CharNum.num,
-                         "illegal character ignored: " + yytext());
-            CharNum.num++;
-          }
+					case 51:
+						{ return token(sym.LESSEQ, 0); }
 					case -52:
 						break;
-					case 53:
-						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-             "unterminated string literal with bad escaped character ignored");
-          }
+					case 52:
+						{ return token(sym.READ, 0); }
 					case -53:
 						break;
-					case 54:
-						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-                         "string literal with bad escaped character ignored");
-            CharNum.num += yytext().length();
-          }
+					case 53:
+						{ return token(sym.GREATEREQ, 0); }
 					case -54:
 						break;
-					case 55:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 54:
+						{ return token(sym.PLUSPLUS, 0); }
 					case -55:
 						break;
-					case 56:
-						{ ErrMsg.fatal(yyline+1, CharNum.num,
-                         "illegal character ignored: " + yytext());
-            CharNum.num++;
-          }
+					case 55:
+						{ return token(sym.MINUSMINUS, 0); }
 					case -56:
 						break;
-					case 57:
-						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-             "unterminated string literal with bad escaped character ignored");
-          }
+					case 56:
+						{ return token(sym.NOTEQUALS, 0); }
 					case -57:
 						break;
-					case 58:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 57:
+						{ return token(sym.AND, 0); }
 					case -58:
 						break;
-					case 59:
-						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-             "unterminated string literal with bad escaped character ignored");
-          }
+					case 58:
+						{ return token(sym.OR, 0); }
 					case -59:
 						break;
-					case 60:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 59:
+						{ return token(sym.EQUALS, 0); }
 					case -60:
 						break;
-					case 61:
+					case 60:
 						{
-            // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
-             "unterminated string literal with bad escaped character ignored");
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -61:
 						break;
-					case 62:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 61:
+						{ return token(sym.INT, 0); }
 					case -62:
 						break;
-					case 63:
+					case 62:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -63:
 						break;
-					case 64:
+					case 63:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -64:
 						break;
-					case 65:
+					case 64:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -65:
 						break;
-					case 66:
+					case 65:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -66:
 						break;
-					case 67:
+					case 66:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -67:
 						break;
-					case 68:
+					case 67:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -68:
 						break;
-					case 69:
+					case 68:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -69:
 						break;
-					case 70:
+					case 69:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -70:
 						break;
-					case 71:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 70:
+						{ return token(sym.CIN, 0); }
 					case -71:
 						break;
-					case 72:
+					case 71:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -72:
 						break;
-					case 73:
+					case 72:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+             "unterminated string literal with bad escaped character ignored");
           }
 					case -73:
 						break;
-					case 74:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 73:
+						{ return token(sym.BOOL, 0); }
 					case -74:
 						break;
-					case 75:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 74:
+						{ return token(sym.TRUE, 0); }
 					case -75:
 						break;
-					case 76:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 75:
+						{ return token(sym.VOID, 0); }
 					case -76:
 						break;
-					case 77:
+					case 76:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -77:
 						break;
-					case 78:
+					case 77:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -78:
 						break;
-					case 79:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 78:
+						{ return token(sym.ELSE, 0); }
 					case -79:
 						break;
-					case 80:
+					case 79:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -80:
 						break;
-					case 81:
+					case 80:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -81:
 						break;
-					case 82:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 81:
+						{ return token(sym.COUT, 0); }
 					case -82:
 						break;
-					case 83:
+					case 82:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -83:
 						break;
-					case 84:
+					case 83:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+                         "string literal with bad escaped character ignored");
+            charNum += yylength();
           }
 					case -84:
 						break;
-					case 85:
+					case 84:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+             "unterminated string literal with bad escaped character ignored");
           }
 					case -85:
 						break;
-					case 86:
+					case 85:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -86:
 						break;
-					case 87:
+					case 86:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -87:
 						break;
-					case 88:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 87:
+						{ return token(sym.FALSE, 0); }
 					case -88:
 						break;
-					case 89:
+					case 88:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // intern straight from the buffer, without making a String
+            return token(sym.ID,
+                         names.id(yy_buffer, yy_buffer_start, yylength()));
           }
 					case -89:
 						break;
-					case 90:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+					case 89:
+						{ return token(sym.WHILE, 0); }
 					case -90:
 						break;
 					case 91:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+                         "string literal with bad escaped character ignored");
+            charNum += yylength();
           }
 					case -91:
 						break;
 					case 92:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+						{ return token(sym.RETURN, 0); }
 					case -92:
 						break;
 					case 93:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+						{ return token(sym.REPEAT, 0); }
 					case -93:
 						break;
 					case 94:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
+						{ return token(sym.STRUCT, 0); }
 					case -94:
 						break;
 					case 95:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+             "unterminated string literal with bad escaped character ignored");
           }
 					case -95:
 						break;
 					case 96:
 						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
+            // bad escape character
+            tokens.fatal(yyline+1, charNum,
+             "unterminated string literal with bad escaped character ignored");
           }
 					case -96:
 						break;
-					case 97:
-						{
-            Symbol S = new Symbol(sym.ID,
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
-            return S;
-          }
-					case -97:
-						break;
 					default:
 						yy_error(YY_E_INTERNAL,false);
 					case -1:
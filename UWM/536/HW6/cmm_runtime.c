@@ -0,0 +1,73 @@
+/*
+ * cmm_runtime.c
+ *
+ * The runtime library for C-- programs compiled to x86-64 by X86Selector
+ * (P6 -x86).  It starts the program and provides console input and
+ * output; output is buffered by stdio and flushed before each read, at
+ * exit, and when the program is killed by a signal (SIGFPE or SIGSEGV).
+ * Input is one integer per line, as for syscall 5 under SPIM.  It also
+ * ends the program, with a runtime error as the VM and JVM code report
+ * one, when an add, subtract or negate overflows or a division is by
+ * zero.
+ *
+ *     gcc -o prog prog.s cmm_runtime.c
+ */
+
+#include <signal.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+extern int cmm_main(void);
+
+void cmm_write_int(int value) {
+    printf("%d", value);
+}
+
+void cmm_write_string(const char *s) {
+    fputs(s, stdout);
+}
+
+int cmm_read_int(void) {
+    char line[256];
+    fflush(stdout);
+    if (fgets(line, sizeof line, stdin) == NULL) {
+        return 0;
+    }
+    return (int)strtol(line, NULL, 10);
+}
+
+int cmm_str_eq(const char *s1, const char *s2) {
+    return strcmp(s1, s2) == 0;
+}
+
+void cmm_overflow(void) {
+    fflush(stdout);
+    fputs("runtime error: arithmetic overflow\n", stderr);
+    exit(EXIT_FAILURE);
+}
+
+void cmm_divzero(void) {
+    fflush(stdout);
+    fputs("runtime error: division by zero\n", stderr);
+    exit(EXIT_FAILURE);
+}
+
+/*
+ * Flush what the program wrote before the fault, then die of the signal
+ * as before.  fflush is not async-signal-safe, but these signals come
+ * from the C-- code itself, never from inside stdio.
+ */
+static void flush_and_die(int sig) {
+    fflush(stdout);
+    signal(sig, SIG_DFL);
+    raise(sig);
+}
+
+int main(void) {
+    signal(SIGFPE, flush_and_die);
+    signal(SIGSEGV, flush_and_die);
+    cmm_main();
+    fflush(stdout);
+    return 0;
+}
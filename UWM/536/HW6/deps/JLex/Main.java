@@ -291,6 +291,8 @@ class CSpec
   boolean m_unix;
   boolean m_public;
   boolean m_ignorecase;
+  boolean m_whole_file;
+  boolean m_hopcroft;
 
   char m_init_code[];
   int m_init_read;
@@ -373,6 +375,8 @@ class CSpec
         m_public = false;
 	m_yyeof = false;
 	m_ignorecase = false;
+	m_whole_file = false;
+	m_hopcroft = false;
 
 	/* Initialize variables for JLex runtime options. */
 	m_verbose = true;
@@ -668,7 +672,14 @@ class CEmit
 	    }
 
 	  /* Member Variables */
-	  m_outstream.println("\tprivate java.io.BufferedReader yy_reader;");
+	  if (m_spec.m_whole_file)
+	    {
+	      m_outstream.println("\tprivate java.io.Reader yy_reader;");
+	    }
+	  else
+	    {
+	      m_outstream.println("\tprivate java.io.BufferedReader yy_reader;");
+	    }
 	  m_outstream.println("\tprivate int yy_buffer_index;");
 	  m_outstream.println("\tprivate int yy_buffer_read;");
 	  m_outstream.println("\tprivate int yy_buffer_start;");
@@ -718,7 +729,15 @@ class CEmit
 	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
 				 + "stream initializer.\"));");
 	  m_outstream.println("\t\t}");
-	  m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(reader);");
+	  if (m_spec.m_whole_file)
+	    {
+	      /* Read all of it on the first yy_advance. */
+	      m_outstream.println("\t\tyy_reader = reader;");
+	    }
+	  else
+	    {
+	      m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(reader);");
+	    }
 	  m_outstream.println("\t}");
 	  m_outstream.println();
 
@@ -749,11 +768,23 @@ class CEmit
 	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
 				 + "stream initializer.\"));");
 	  m_outstream.println("\t\t}");
-	  m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(new java.io.InputStreamReader(instream));");
+	  if (m_spec.m_whole_file)
+	    {
+	      m_outstream.println("\t\tyy_reader = new java.io.InputStreamReader(instream);");
+	    }
+	  else
+	    {
+	      m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(new java.io.InputStreamReader(instream));");
+	    }
 	  m_outstream.println("\t}");
 	  m_outstream.println();
 
 
+	  if (m_spec.m_whole_file)
+	    {
+	      emit_whole_file_construct();
+	    }
+
 	  /* Function: third, private constructor - only for internal use */
 	  m_outstream.print("\tprivate ");
           m_outstream.print(new String(m_spec.m_class_name));
@@ -804,6 +835,82 @@ class CEmit
 
 	}
 
+  /***************************************************************
+    Function: emit_whole_file_construct
+    Description: Emits the constructors of a %wholefile scanner
+    that scan a char array in place, and a mapped file.
+    **************************************************************/
+  private void emit_whole_file_construct
+    (
+     )
+      throws java.io.IOException
+	{
+	  /* Function: char array constructor */
+	  m_outstream.print("\t");
+	  if (true == m_spec.m_public) {
+	    m_outstream.print("public ");
+	  }
+          m_outstream.print(new String(m_spec.m_class_name));
+	  m_outstream.print(" (char text[], int length)");
+	  
+	  if (null != m_spec.m_init_throw_code)
+	    {
+	      m_outstream.println(); 
+	      m_outstream.print("\t\tthrows "); 
+	      m_outstream.println(new String(m_spec.m_init_throw_code,0,
+						m_spec.m_init_throw_read));
+	      m_outstream.println("\t\t{");
+	    }
+	  else
+	    {
+	      m_outstream.println(" {");
+	    }
+
+	  m_outstream.println("\t\tthis ();");	  
+	  m_outstream.println("\t\tif (null == text) {");
+	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
+				 + "stream initializer.\"));");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tyy_buffer = text;");
+	  m_outstream.println("\t\tyy_buffer_read = length;");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  /* Function: mapped file constructor */
+	  m_outstream.print("\t");
+	  if (true == m_spec.m_public) {
+	    m_outstream.print("public ");
+	  }
+          m_outstream.print(new String(m_spec.m_class_name));
+	  m_outstream.println(" (java.nio.channels.FileChannel channel)");
+	  m_outstream.print("\t\tthrows java.io.IOException");
+	  if (null != m_spec.m_init_throw_code)
+	    {
+	      m_outstream.print(", "); 
+	      m_outstream.print(new String(m_spec.m_init_throw_code,0,
+						m_spec.m_init_throw_read));
+	    }
+	  m_outstream.println(" {");
+
+	  m_outstream.println("\t\tthis ();");	  
+	  m_outstream.println("\t\tjava.nio.CharBuffer text = java.nio.charset.Charset.defaultCharset()");
+	  m_outstream.println("\t\t\t.newDecoder()");
+	  m_outstream.println("\t\t\t.onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)");
+	  m_outstream.println("\t\t\t.onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE)");
+	  m_outstream.println("\t\t\t.decode(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY,");
+	  m_outstream.println("\t\t\t\t0, channel.size()));");
+	  m_outstream.println("\t\tif (text.hasArray() && 0 == text.arrayOffset()) {");
+	  m_outstream.println("\t\t\tyy_buffer = text.array();");
+	  m_outstream.println("\t\t\tyy_buffer_read = text.limit();");
+	  m_outstream.println("\t\t} else {");
+	  m_outstream.println("\t\t\tyy_buffer = new char[text.remaining()];");
+	  m_outstream.println("\t\t\ttext.get(yy_buffer);");
+	  m_outstream.println("\t\t\tyy_buffer_read = yy_buffer.length;");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+	}
+
   /***************************************************************
     Function: emit_states
     Description: Emits constants that serve as lexical states,
@@ -908,58 +1015,14 @@ class CEmit
 	m_outstream.println("\t\treturn yy_state_dtrans[state];");
 	m_outstream.println("\t}");*/
 
-	/* Function: yy_advance */
-	m_outstream.println("\tprivate int yy_advance ()");
-	m_outstream.println("\t\tthrows java.io.IOException {");
-	/*m_outstream.println("\t\t{");*/
-	m_outstream.println("\t\tint next_read;");
-	m_outstream.println("\t\tint i;");
-	m_outstream.println("\t\tint j;");
-	m_outstream.println();
-
-	m_outstream.println("\t\tif (yy_buffer_index < yy_buffer_read) {");
-	m_outstream.println("\t\t\treturn yy_buffer[yy_buffer_index++];");
-	/*m_outstream.println("\t\t\t++yy_buffer_index;");*/
-	m_outstream.println("\t\t}");
-	m_outstream.println();
-
-	m_outstream.println("\t\tif (0 != yy_buffer_start) {");
-	m_outstream.println("\t\t\ti = yy_buffer_start;");
-	m_outstream.println("\t\t\tj = 0;");
-	m_outstream.println("\t\t\twhile (i < yy_buffer_read) {");
-	m_outstream.println("\t\t\t\tyy_buffer[j] = yy_buffer[i];");
-	m_outstream.println("\t\t\t\t++i;");
-	m_outstream.println("\t\t\t\t++j;");
-	m_outstream.println("\t\t\t}");
-	m_outstream.println("\t\t\tyy_buffer_end = yy_buffer_end - yy_buffer_start;");
-	m_outstream.println("\t\t\tyy_buffer_start = 0;");
-	m_outstream.println("\t\t\tyy_buffer_read = j;");
-	m_outstream.println("\t\t\tyy_buffer_index = j;");
-	m_outstream.println("\t\t\tnext_read = yy_reader.read(yy_buffer,");
-	m_outstream.println("\t\t\t\t\tyy_buffer_read,");
-	m_outstream.println("\t\t\t\t\tyy_buffer.length - yy_buffer_read);");
-	m_outstream.println("\t\t\tif (-1 == next_read) {");
-	m_outstream.println("\t\t\t\treturn YY_EOF;");
-	m_outstream.println("\t\t\t}");
-	m_outstream.println("\t\t\tyy_buffer_read = yy_buffer_read + next_read;");
-	m_outstream.println("\t\t}");
-	m_outstream.println();
-
-	m_outstream.println("\t\twhile (yy_buffer_index >= yy_buffer_read) {");
-	m_outstream.println("\t\t\tif (yy_buffer_index >= yy_buffer.length) {");
-	m_outstream.println("\t\t\t\tyy_buffer = yy_double(yy_buffer);");
-	m_outstream.println("\t\t\t}");
-	m_outstream.println("\t\t\tnext_read = yy_reader.read(yy_buffer,");
-	m_outstream.println("\t\t\t\t\tyy_buffer_read,");
-	m_outstream.println("\t\t\t\t\tyy_buffer.length - yy_buffer_read);");
-	m_outstream.println("\t\t\tif (-1 == next_read) {");
-	m_outstream.println("\t\t\t\treturn YY_EOF;");
-	m_outstream.println("\t\t\t}");
-	m_outstream.println("\t\t\tyy_buffer_read = yy_buffer_read + next_read;");
-	m_outstream.println("\t\t}");
-
-	m_outstream.println("\t\treturn yy_buffer[yy_buffer_index++];");
-	m_outstream.println("\t}");
+	if (m_spec.m_whole_file)
+	  {
+	    emit_whole_file_advance();
+	  }
+	else
+	  {
+	    emit_advance();
+	  }
 	
 	/* Function: yy_move_end */
 	m_outstream.println("\tprivate void yy_move_end () {");
@@ -1115,6 +1178,119 @@ class CEmit
 	m_outstream.println("\t}");
       }
 
+  /***************************************************************
+    Function: emit_advance
+    Description: Emits yy_advance, which refills the buffer from
+    yy_reader as it runs out.
+    **************************************************************/
+  private void emit_advance
+    (
+     )
+      throws java.io.IOException
+      {
+	/* Function: yy_advance */
+	m_outstream.println("\tprivate int yy_advance ()");
+	m_outstream.println("\t\tthrows java.io.IOException {");
+	/*m_outstream.println("\t\t{");*/
+	m_outstream.println("\t\tint next_read;");
+	m_outstream.println("\t\tint i;");
+	m_outstream.println("\t\tint j;");
+	m_outstream.println();
+
+	m_outstream.println("\t\tif (yy_buffer_index < yy_buffer_read) {");
+	m_outstream.println("\t\t\treturn yy_buffer[yy_buffer_index++];");
+	/*m_outstream.println("\t\t\t++yy_buffer_index;");*/
+	m_outstream.println("\t\t}");
+	m_outstream.println();
+
+	m_outstream.println("\t\tif (0 != yy_buffer_start) {");
+	m_outstream.println("\t\t\ti = yy_buffer_start;");
+	m_outstream.println("\t\t\tj = 0;");
+	m_outstream.println("\t\t\twhile (i < yy_buffer_read) {");
+	m_outstream.println("\t\t\t\tyy_buffer[j] = yy_buffer[i];");
+	m_outstream.println("\t\t\t\t++i;");
+	m_outstream.println("\t\t\t\t++j;");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tyy_buffer_end = yy_buffer_end - yy_buffer_start;");
+	m_outstream.println("\t\t\tyy_buffer_start = 0;");
+	m_outstream.println("\t\t\tyy_buffer_read = j;");
+	m_outstream.println("\t\t\tyy_buffer_index = j;");
+	m_outstream.println("\t\t\tnext_read = yy_reader.read(yy_buffer,");
+	m_outstream.println("\t\t\t\t\tyy_buffer_read,");
+	m_outstream.println("\t\t\t\t\tyy_buffer.length - yy_buffer_read);");
+	m_outstream.println("\t\t\tif (-1 == next_read) {");
+	m_outstream.println("\t\t\t\treturn YY_EOF;");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tyy_buffer_read = yy_buffer_read + next_read;");
+	m_outstream.println("\t\t}");
+	m_outstream.println();
+
+	m_outstream.println("\t\twhile (yy_buffer_index >= yy_buffer_read) {");
+	m_outstream.println("\t\t\tif (yy_buffer_index >= yy_buffer.length) {");
+	m_outstream.println("\t\t\t\tyy_buffer = yy_double(yy_buffer);");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tnext_read = yy_reader.read(yy_buffer,");
+	m_outstream.println("\t\t\t\t\tyy_buffer_read,");
+	m_outstream.println("\t\t\t\t\tyy_buffer.length - yy_buffer_read);");
+	m_outstream.println("\t\t\tif (-1 == next_read) {");
+	m_outstream.println("\t\t\t\treturn YY_EOF;");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tyy_buffer_read = yy_buffer_read + next_read;");
+	m_outstream.println("\t\t}");
+
+	m_outstream.println("\t\treturn yy_buffer[yy_buffer_index++];");
+	m_outstream.println("\t}");
+      }
+
+  /***************************************************************
+    Function: emit_whole_file_advance
+    Description: Emits yy_advance for a %wholefile scanner, whose
+    buffer holds all of the input: nothing is ever shifted or
+    refilled, so token text is at the same offsets for as long as
+    the scanner lives.  A scanner made from a Reader or InputStream
+    reads all of it on the first call.
+    **************************************************************/
+  private void emit_whole_file_advance
+    (
+     )
+      throws java.io.IOException
+      {
+	/* Function: yy_advance */
+	m_outstream.println("\tprivate int yy_advance ()");
+	m_outstream.println("\t\tthrows java.io.IOException {");
+	m_outstream.println("\t\tif (yy_buffer_index < yy_buffer_read) {");
+	m_outstream.println("\t\t\treturn yy_buffer[yy_buffer_index++];");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tif (null != yy_reader) {");
+	m_outstream.println("\t\t\tyy_read_all();");
+	m_outstream.println("\t\t\tif (yy_buffer_index < yy_buffer_read) {");
+	m_outstream.println("\t\t\t\treturn yy_buffer[yy_buffer_index++];");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\treturn YY_EOF;");
+	m_outstream.println("\t}");
+
+	/* Function: yy_read_all */
+	m_outstream.println("\tprivate void yy_read_all ()");
+	m_outstream.println("\t\tthrows java.io.IOException {");
+	m_outstream.println("\t\tint next_read;");
+	m_outstream.println();
+	m_outstream.println("\t\twhile (true) {");
+	m_outstream.println("\t\t\tif (yy_buffer_read == yy_buffer.length) {");
+	m_outstream.println("\t\t\t\tyy_buffer = yy_double(yy_buffer);");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tnext_read = yy_reader.read(yy_buffer,");
+	m_outstream.println("\t\t\t\t\tyy_buffer_read,");
+	m_outstream.println("\t\t\t\t\tyy_buffer.length - yy_buffer_read);");
+	m_outstream.println("\t\t\tif (-1 == next_read) {");
+	m_outstream.println("\t\t\t\tbreak;");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tyy_buffer_read = yy_buffer_read + next_read;");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tyy_reader = null;");
+	m_outstream.println("\t}");
+      }
+
   /***************************************************************
     Function: emit_header
     Description: Emits class header.
@@ -2841,6 +3017,41 @@ class CMinimize
     Description: Removes redundant transition table states.
     **************************************************************/
   private void minimize
+    (
+     )
+      {
+	if (m_spec.m_hopcroft)
+	  {
+	    hopcroft();
+	  }
+	else
+	  {
+	    refine();
+	  }
+
+	System.out.println(m_group.size() + " states after removal of redundant states.");
+
+	if (m_spec.m_verbose
+	    && true == CUtility.OLD_DUMP_DEBUG)
+	  {
+	    System.out.println();
+	    System.out.println("States grouped as follows after minimization");
+	    pgroups();
+	  }
+
+	fix_dtrans();
+      }
+
+  /***************************************************************
+    Function: refine
+    Description: Groups equivalent states by splitting groups
+    until no group splits, comparing each state of a group with
+    its first.  Groups are renumbered as they split, in the
+    middle of a pass, so states with the same transitions can
+    end up in different groups: the result is not always
+    minimal.
+    **************************************************************/
+  private void refine
     (
      )
       {
@@ -2943,18 +3154,280 @@ class CMinimize
 		  }
 	      }
 	  }
+      }
 
-	System.out.println(m_group.size() + " states after removal of redundant states.");
+  /***************************************************************
+    Function: hopcroft
+    Description: Groups equivalent states, for %hopcroft, by
+    Hopcroft's algorithm, in O(n k log n) time for n states and
+    k columns; unlike refine, it always finds the fewest groups
+    (the minimal DFA).  Blocks of states start out grouped by
+    accept action, with CDTrans.F as a state of its own, and
+    each waiting block splits every block with states that go
+    into it on some column and states that do not.  The states
+    of each block are kept together in one array, the marked
+    ones first, so a split only relabels the smaller half; and
+    a block that is not waiting only has its smaller half added.
+    **************************************************************/
+  private void hopcroft
+    (
+     )
+      {
+	int size;
+	int ncols;
+	int nstates;
+	int dead;
+	int head[];
+	int next[];
+	int elems[];
+	int loc[];
+	int block[];
+	int first[];
+	int end[];
+	int marked[];
+	boolean waiting[];
+	int work[];
+	int nwork;
+	int touched[];
+	int ntouched;
+	int splitter[];
+	int nsplitter;
+	int nblocks;
+	Hashtable accept_block;
+	Integer b_obj;
+	int null_block;
+	CDTrans dtrans;
+	int b;
+	int c;
+	int i;
+	int j;
+	int s;
+	int t;
+	int y;
+	int z;
+	int pos;
+	int other;
 
-	if (m_spec.m_verbose
-	    && true == CUtility.OLD_DUMP_DEBUG)
+	size = m_spec.m_dtrans_vector.size();
+	ncols = m_spec.m_dtrans_ncols;
+	dead = size;
+	nstates = size + 1;
+
+	/* head[c * nstates + t] is the first state that goes to t on
+	   c, and next[s * ncols + c] the next one after s. */
+	head = new int[ncols * nstates];
+	next = new int[nstates * ncols];
+	for (i = 0; i < head.length; ++i)
 	  {
-	    System.out.println();
-	    System.out.println("States grouped as follows after minimization");
-	    pgroups();
+	    head[i] = -1;
+	  }
+	for (s = 0; s < nstates; ++s)
+	  {
+	    if (s < size)
+	      {
+		dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(s);
+	      }
+	    else
+	      {
+		dtrans = null;
+	      }
+	    for (c = 0; c < ncols; ++c)
+	      {
+		t = dead;
+		if (null != dtrans && CDTrans.F != dtrans.m_dtrans[c])
+		  {
+		    t = dtrans.m_dtrans[c];
+		  }
+		next[s * ncols + c] = head[c * nstates + t];
+		head[c * nstates + t] = s;
+	      }
 	  }
 
-	fix_dtrans();
+	/* Initial blocks: one for each accept action, in the
+	   order of their first states, then CDTrans.F. */
+	block = new int[nstates];
+	first = new int[nstates];
+	end = new int[nstates];
+	marked = new int[nstates];
+	waiting = new boolean[nstates];
+	accept_block = new Hashtable();
+	null_block = -1;
+	nblocks = 0;
+	for (s = 0; s < size; ++s)
+	  {
+	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(s);
+	    if (null == dtrans.m_accept)
+	      {
+		if (-1 == null_block)
+		  {
+		    null_block = nblocks++;
+		  }
+		block[s] = null_block;
+	      }
+	    else
+	      {
+		b_obj = (Integer) accept_block.get(dtrans.m_accept);
+		if (null == b_obj)
+		  {
+		    b_obj = new Integer(nblocks++);
+		    accept_block.put(dtrans.m_accept, b_obj);
+		  }
+		block[s] = b_obj.intValue();
+	      }
+	  }
+	block[dead] = nblocks++;
+
+	/* Lay the blocks out in elems, by counting sort. */
+	for (s = 0; s < nstates; ++s)
+	  {
+	    ++end[block[s]];
+	  }
+	pos = 0;
+	for (b = 0; b < nblocks; ++b)
+	  {
+	    first[b] = pos;
+	    pos += end[b];
+	    end[b] = first[b];
+	  }
+	elems = new int[nstates];
+	loc = new int[nstates];
+	for (s = 0; s < nstates; ++s)
+	  {
+	    loc[s] = end[block[s]]++;
+	    elems[loc[s]] = s;
+	  }
+
+	work = new int[nstates];
+	nwork = 0;
+	for (b = 0; b < nblocks; ++b)
+	  {
+	    waiting[b] = true;
+	    work[nwork++] = b;
+	  }
+	touched = new int[nstates];
+	splitter = new int[nstates];
+
+	while (0 < nwork)
+	  {
+	    b = work[--nwork];
+	    waiting[b] = false;
+
+	    /* b may itself be split below; split by its states now. */
+	    nsplitter = end[b] - first[b];
+	    System.arraycopy(elems, first[b], splitter, 0, nsplitter);
+
+	    for (c = 0; c < ncols; ++c)
+	      {
+		/* Mark each state that goes into b on c, moving it
+		   to the front of its block. */
+		ntouched = 0;
+		for (i = 0; i < nsplitter; ++i)
+		  {
+		    for (s = head[c * nstates + splitter[i]];
+			 -1 != s;
+			 s = next[s * ncols + c])
+		      {
+			y = block[s];
+			pos = first[y] + marked[y];
+			other = elems[pos];
+			elems[loc[s]] = other;
+			loc[other] = loc[s];
+			elems[pos] = s;
+			loc[s] = pos;
+			if (0 == marked[y])
+			  {
+			    touched[ntouched++] = y;
+			  }
+			++marked[y];
+		      }
+		  }
+
+		/* Split each block that was only partly marked; the
+		   smaller part becomes the new block. */
+		for (j = 0; j < ntouched; ++j)
+		  {
+		    y = touched[j];
+		    pos = first[y] + marked[y];
+		    marked[y] = 0;
+		    if (pos == end[y])
+		      {
+			continue;
+		      }
+
+		    z = nblocks++;
+		    if (pos - first[y] <= end[y] - pos)
+		      {
+			first[z] = first[y];
+			end[z] = pos;
+			first[y] = pos;
+		      }
+		    else
+		      {
+			first[z] = pos;
+			end[z] = end[y];
+			end[y] = pos;
+		      }
+		    for (i = first[z]; i < end[z]; ++i)
+		      {
+			block[elems[i]] = z;
+		      }
+
+		    if (waiting[y]
+			|| end[z] - first[z] <= end[y] - first[y])
+		      {
+			waiting[z] = true;
+			work[nwork++] = z;
+		      }
+		    else
+		      {
+			waiting[y] = true;
+			work[nwork++] = y;
+		      }
+		  }
+	      }
+	  }
+
+	regroup(block);
+      }
+
+  /***************************************************************
+    Function: regroup
+    Description: Sets m_group and m_ingroup from the group of each
+    state in group_of, numbering the groups in the order of their
+    first states, with the states of each group in order.
+    **************************************************************/
+  private void regroup
+    (
+     int group_of[]
+     )
+      {
+	int size;
+	int number[];
+	int i;
+	int g;
+	Vector dtrans_group;
+
+	size = m_spec.m_dtrans_vector.size();
+	number = new int[group_of.length];
+	for (i = 0; i < number.length; ++i)
+	  {
+	    number[i] = -1;
+	  }
+
+	m_group = new Vector();
+	m_ingroup = new int[size];
+	for (i = 0; i < size; ++i)
+	  {
+	    g = group_of[i];
+	    if (-1 == number[g])
+	      {
+		number[g] = m_group.size();
+		m_group.addElement(new Vector());
+	      }
+	    m_ingroup[i] = number[g];
+	    dtrans_group = (Vector) m_group.elementAt(number[g]);
+	    dtrans_group.addElement(m_spec.m_dtrans_vector.elementAt(i));
+	  }
       }
 
   /***************************************************************
@@ -5410,6 +5883,20 @@ class CLexGen
     'c', '\0'
     };
   
+  private char m_wholefile_dir[] = { 
+    '%', 'w', 'h',
+    'o', 'l', 'e', 
+    'f', 'i', 'l',
+    'e', '\0'
+    };
+  
+  private char m_hopcroft_dir[] = { 
+    '%', 'h', 'o',
+    'p', 'c', 'r', 
+    'o', 'f', 't',
+    '\0'
+    };
+  
   /***************************************************************
     Function: userDeclare
     Description:
@@ -5711,6 +6198,24 @@ class CLexGen
 					 m_input.m_line_number);
 		      break;
 
+		    case 'h':
+		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_hopcroft_dir,
+						 0,
+						 m_hopcroft_dir.length - 1))
+			{
+			  /* Minimize the DFA by Hopcroft's algorithm. */
+			  m_input.m_line_index = m_hopcroft_dir.length;
+			  m_spec.m_hopcroft = true;
+			  break;
+			}
+
+		      /* Bad directive. */
+		      CError.parse_error(CError.E_DIRECT,
+					 m_input.m_line_number);
+		      break;
+
 		    case 'n':
 		      if (0 == CUtility.charncmp(m_input.m_line,
 						 0,
@@ -5800,6 +6305,24 @@ class CLexGen
 					 m_input.m_line_number);
 		      break;
 
+		    case 'w':
+		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_wholefile_dir,
+						 0,
+						 m_wholefile_dir.length - 1))
+			{
+			  /* Scan all of the input in one buffer. */
+			  m_input.m_line_index = m_wholefile_dir.length;
+			  m_spec.m_whole_file = true;
+			  break;
+			}
+
+		      /* Bad directive. */
+		      CError.parse_error(CError.E_DIRECT,
+					 m_input.m_line_number);
+		      break;
+
 		    case 'y':
 		      if (0 == CUtility.charncmp(m_input.m_line,
 						 0,
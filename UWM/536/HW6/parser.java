@@ -405,16 +405,20 @@ public class parser extends java_cup.runtime.lr_parser {
 
 
 
+// if not null, each top-level decl is put here as soon as it is reduced,
+// for Pipeline, instead of in the program's DeclListNode
+Ring<DeclNode> decls = null;
+
 public void syntax_error(Symbol currToken) {
-    if (currToken.value == null) {
+    // TokenBuffer puts the line and char number in left and right
+    if (currToken.sym == sym.EOF) {
         ErrMsg.fatal(0,0, "Syntax error at end of file");
     }
     else {
-        ErrMsg.fatal(((TokenVal)currToken.value).linenum,
-                     ((TokenVal)currToken.value).charnum,
-                     "Syntax error");
+        ErrMsg.fatal(currToken.left, currToken.right, "Syntax error");
     }
-    System.exit(-1);
+    // stop parsing; P6 reports the error once parse returns
+    throw new IllegalStateException("Syntax error");
 }
 
 
@@ -479,7 +483,11 @@ class CUP$parser$actions {
 		int dleft = ((java_cup.runtime.Symbol)CUP$parser$stack.peek()).left;
 		int dright = ((java_cup.runtime.Symbol)CUP$parser$stack.peek()).right;
 		DeclNode d = (DeclNode)((java_cup.runtime.Symbol) CUP$parser$stack.peek()).value;
-		 dl.addLast(d);
+		 if (parser.decls != null) {
+                       parser.decls.put(d);
+                   } else {
+                       dl.addLast(d);
+                   }
                    RESULT = dl;
                 
               CUP$parser$result = parser.getSymbolFactory().newSymbol("declList",1, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)), ((java_cup.runtime.Symbol)CUP$parser$stack.peek()), RESULT);
@@ -1448,7 +1456,7 @@ class CUP$parser$actions {
 		int ileft = ((java_cup.runtime.Symbol)CUP$parser$stack.peek()).left;
 		int iright = ((java_cup.runtime.Symbol)CUP$parser$stack.peek()).right;
 		IdTokenVal i = (IdTokenVal)((java_cup.runtime.Symbol) CUP$parser$stack.peek()).value;
-		 RESULT = new IdNode(i.linenum, i.charnum, i.idVal);
+		 RESULT = new IdNode(i.linenum, i.charnum, i.id);
                 
               CUP$parser$result = parser.getSymbolFactory().newSymbol("id",21, ((java_cup.runtime.Symbol)CUP$parser$stack.peek()), ((java_cup.runtime.Symbol)CUP$parser$stack.peek()), RESULT);
             }